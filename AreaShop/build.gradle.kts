@@ -81,6 +81,10 @@ tasks {
         archiveClassifier.set("original")
     }
 
+    test {
+        useJUnitPlatform()
+    }
+
     java {
         withSourcesJar()
     }
@@ -9,8 +9,10 @@ import com.sk89q.worldguard.protection.managers.RegionManager;
 import io.papermc.lib.PaperLib;
 import me.wiefferink.areashop.adapters.platform.MinecraftPlatform;
 import me.wiefferink.areashop.adapters.platform.paper.PaperPlatform;
+import me.wiefferink.areashop.features.signs.RegionSign;
 import me.wiefferink.areashop.features.signs.SignManager;
 import me.wiefferink.areashop.interfaces.AreaShopInterface;
+import me.wiefferink.areashop.interfaces.SchematicStore;
 import me.wiefferink.areashop.interfaces.WorldEditInterface;
 import me.wiefferink.areashop.interfaces.WorldGuardInterface;
 import me.wiefferink.areashop.listeners.PlayerLoginLogoutListener;
@@ -19,6 +21,7 @@ import me.wiefferink.areashop.managers.FeatureManager;
 import me.wiefferink.areashop.managers.IFileManager;
 import me.wiefferink.areashop.managers.FileManager;
 import me.wiefferink.areashop.managers.Manager;
+import me.wiefferink.areashop.managers.SchematicJobQueue;
 import me.wiefferink.areashop.managers.SignErrorLogger;
 import me.wiefferink.areashop.managers.SignLinkerManager;
 import me.wiefferink.areashop.modules.AreaShopModule;
@@ -26,6 +29,7 @@ import me.wiefferink.areashop.modules.BukkitModule;
 import me.wiefferink.areashop.modules.DependencyModule;
 import me.wiefferink.areashop.modules.PlatformModule;
 import me.wiefferink.areashop.nms.NMS;
+import me.wiefferink.areashop.regions.RegionSettingsCache;
 import me.wiefferink.areashop.tools.GithubUpdateCheck;
 import me.wiefferink.areashop.tools.SimpleMessageBridge;
 import me.wiefferink.areashop.tools.SpigotPlatform;
@@ -55,6 +59,7 @@ import java.util.List;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
+import java.util.logging.Logger;
 
 /**
  * Main class for the AreaShop plugin.
@@ -76,6 +81,7 @@ public final class AreaShop extends JavaPlugin implements AreaShopApi {
 	private LanguageManager languageManager = null;
 	private CommandManager commandManager = null;
 	private SignLinkerManager signLinkerManager = null;
+	private SchematicJobQueue schematicJobQueue = null;
 	private FeatureManager featureManager = null;
 	private SignManager signManager;
 	private SignErrorLogger signErrorLogger;
@@ -90,6 +96,9 @@ public final class AreaShop extends JavaPlugin implements AreaShopApi {
 	public static final String schematicFolder = "schem";
 	public static final String regionsFolder = "regions";
 	public static final String groupsFile = "groups.yml";
+	public static final String groupMembersFile = "group-members.txt";
+	public static final String databaseFile = "regions.db";
+	public static final String journalFile = "journal.dat";
 	public static final String defaultFile = "default.yml";
 	public static final String configFile = "config.yml";
 	public static final String configFileHidden = "hiddenConfig.yml";
@@ -257,6 +266,9 @@ public final class AreaShop extends JavaPlugin implements AreaShopApi {
 		AreaShopModule asModule = new AreaShopModule(this, messageBridge, nms, worldEditInterface, worldGuardInterface, signErrorLogger, platformModule, dependencyModule);
 		injector = Guice.createInjector(Stage.PRODUCTION, new BukkitModule(getServer()), asModule);
 
+		schematicJobQueue = injector.getInstance(SchematicJobQueue.class);
+		managers.add(schematicJobQueue);
+
 		// Load all data from files and check versions
 		fileManager = injector.getInstance(IFileManager.class);
 		managers.add((FileManager) fileManager);
@@ -265,7 +277,7 @@ public final class AreaShop extends JavaPlugin implements AreaShopApi {
 			shutdownOnError();
 			return;
 		}
-
+		setupSchematicStore();
 		setupLanguageManager();
 
 		featureManager = injector.getInstance(FeatureManager.class);
@@ -355,6 +367,10 @@ public final class AreaShop extends JavaPlugin implements AreaShopApi {
 	public void onDisable() {
 
 		Bukkit.getServer().getScheduler().cancelTasks(this);
+		// Finish restores that are spread over multiple ticks
+		if(worldEditInterface != null) {
+			worldEditInterface.shutdown();
+		}
 
 		// Cleanup managers
 		for(Manager manager : managers) {
@@ -397,6 +413,17 @@ public final class AreaShop extends JavaPlugin implements AreaShopApi {
 		this.debug = debug;
 	}
 
+	/**
+	 * Start or stop using the schematic store, depending on the config.
+	 */
+	private void setupSchematicStore() {
+		if(!getConfig().getBoolean("schematics.store")) {
+			worldEditInterface.setSchematicStore(null);
+		} else if(worldEditInterface.getSchematicStore() == null) {
+			worldEditInterface.setSchematicStore(new SchematicStore(new File(fileManager.getSchematicFolder()), getLogger()));
+		}
+	}
+
 	/**
 	 * Setup a new LanguageManager.
 	 */
@@ -510,6 +537,15 @@ public final class AreaShop extends JavaPlugin implements AreaShopApi {
 		return signLinkerManager;
 	}
 
+	/**
+	 * Get the SchematicJobQueue.
+	 * Runs the schematic saves and restores of regions.
+	 * @return The SchematicJobQueue
+	 */
+	public SchematicJobQueue getSchematicJobQueue() {
+		return schematicJobQueue;
+	}
+
 	/**
 	 * Get the FeatureManager.
 	 * Manages region specific features.
@@ -658,7 +694,7 @@ public final class AreaShop extends JavaPlugin implements AreaShopApi {
 			Do.syncTimer(saveFiles, () -> {
 				if(isReady()) {
 					finalPlugin.getFileManager().saveRequiredFiles();
-					AreaShop.debugTask("Saving required files...");
+					AreaShop.debugTask("Saving required files... (" + finalPlugin.getFileManager().getDirtyRegionCount() + " changed regions, " + finalPlugin.getFileManager().getPendingRegionWrites() + " regions being written)");
 				} else {
 					AreaShop.debugTask("Skipped saving required files, plugin not ready");
 				}
@@ -727,7 +763,7 @@ public final class AreaShop extends JavaPlugin implements AreaShopApi {
 	 * @param message The message to print
 	 */
 	public static void info(Object... message) {
-		AreaShop.getInstance().getLogger().info(() -> StringUtils.join(message, " "));
+		logger().info(() -> StringUtils.join(message, " "));
 	}
 
 	/**
@@ -735,7 +771,7 @@ public final class AreaShop extends JavaPlugin implements AreaShopApi {
 	 * @param message The message to print
 	 */
 	public static void warn(Object... message) {
-		AreaShop.getInstance().getLogger().warning(() -> StringUtils.join(message, " "));
+		logger().warning(() -> StringUtils.join(message, " "));
 	}
 
 	/**
@@ -743,7 +779,16 @@ public final class AreaShop extends JavaPlugin implements AreaShopApi {
 	 * @param message The message to print
 	 */
 	public static void error(Object... message) {
-		AreaShop.getInstance().getLogger().severe(() -> StringUtils.join(message, " "));
+		logger().severe(() -> StringUtils.join(message, " "));
+	}
+
+	/**
+	 * Get the logger for the static log methods.
+	 * @return The logger of the plugin, or a standalone logger when the plugin is not enabled (for example in tests)
+	 */
+	private static Logger logger() {
+		AreaShop plugin = AreaShop.getInstance();
+		return plugin == null ? Logger.getLogger("AreaShop") : plugin.getLogger();
 	}
 
 	/**
@@ -762,8 +807,11 @@ public final class AreaShop extends JavaPlugin implements AreaShopApi {
 	 */
 	public void reload(final CommandSender confirmationReceiver) {
 		setReady(false);
+		AreaShop.debug("Region settings cache before reload: hits=" + RegionSettingsCache.getHits() + ", misses=" + RegionSettingsCache.getMisses());
+		AreaShop.debug("Sign writes before reload: applied=" + RegionSign.getAppliedWrites() + ", skipped=" + RegionSign.getSkippedWrites());
 		fileManager.saveRequiredFilesAtOnce();
 		fileManager.loadFiles(true);
+		setupSchematicStore();
 		setupLanguageManager();
 		messageBridge.message(confirmationReceiver, "reload-reloading");
 		fileManager.checkRents();
@@ -265,9 +265,7 @@ public class InfoCommand extends CommandAreaShop {
 			// List of regions without a group
 			else if(args[1].equalsIgnoreCase("nogroup")) {
 				List<GeneralRegion> regions = new ArrayList<>(fileManager.getRegionsRef());
-				for(RegionGroup group : fileManager.getGroups()) {
-					regions.removeAll(group.getMemberRegions());
-				}
+				regions.removeIf(region -> !fileManager.getGroupsOf(region).isEmpty());
 				if(regions.isEmpty()) {
 					messageBridge.message(sender, "info-nogroupNone");
 				} else {
@@ -78,15 +78,12 @@ public class MeCommand extends CommandAreaShop {
 	private void sendMessageAboutRegions(CommandSender sender, OfflinePlayer target) {
 		// Get the regions owned by the player
 		Set<RentRegion> rentRegions = new HashSet<>();
-		for(RentRegion region : fileManager.getRentsRef()) {
-			if(region.isOwner(target)) {
-				rentRegions.add(region);
-			}
-		}
 		Set<BuyRegion> buyRegions = new HashSet<>();
-		for(BuyRegion region : fileManager.getBuysRef()) {
-			if(region.isOwner(target)) {
-				buyRegions.add(region);
+		for(GeneralRegion region : fileManager.getRegionsOwnedBy(target.getUniqueId())) {
+			if(region instanceof RentRegion rentRegion) {
+				rentRegions.add(rentRegion);
+			} else if(region instanceof BuyRegion buyRegion) {
+				buyRegions.add(buyRegion);
 			}
 		}
 		// Get the regions the player is added as friend
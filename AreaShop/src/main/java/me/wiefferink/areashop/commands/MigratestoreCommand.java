@@ -0,0 +1,82 @@
+package me.wiefferink.areashop.commands;
+
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import me.wiefferink.areashop.MessageBridge;
+import me.wiefferink.areashop.managers.IFileManager;
+import me.wiefferink.areashop.managers.SqliteRegionStore;
+import me.wiefferink.areashop.managers.YamlRegionStore;
+import me.wiefferink.interactivemessenger.processing.Message;
+import org.bukkit.command.CommandSender;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Singleton
+public class MigratestoreCommand extends CommandAreaShop {
+
+	@Inject
+	private MessageBridge messageBridge;
+	@Inject
+	private IFileManager fileManager;
+
+	@Override
+	public String getCommandStart() {
+		return "areashop migratestore";
+	}
+
+	@Override
+	public String getHelp(CommandSender target) {
+		if(target.hasPermission("areashop.migratestore")) {
+			return "help-migratestore";
+		}
+		return null;
+	}
+
+	@Override
+	public void execute(CommandSender sender, String[] args) {
+		if(!sender.hasPermission("areashop.migratestore")) {
+			messageBridge.message(sender, "migratestore-noPermission");
+			return;
+		}
+
+		if(args.length < 2) {
+			messageBridge.message(sender, "migratestore-help");
+			return;
+		}
+
+		String type = args[1].toLowerCase();
+		if(!YamlRegionStore.TYPE.equals(type) && !SqliteRegionStore.TYPE.equals(type)) {
+			messageBridge.message(sender, "migratestore-wrongType", args[1]);
+			return;
+		}
+		if(type.equals(fileManager.getRegionStoreType())) {
+			messageBridge.message(sender, "migratestore-sameStore", type);
+			return;
+		}
+
+		if(!confirm(sender, args, Message.fromKey("migratestore-confirm").replacements(fileManager.getRegionStoreType(), type))) {
+			return;
+		}
+
+		// Write pending changes first so the copy is complete
+		fileManager.saveRequiredFilesAtOnce();
+		int copied = fileManager.migrateRegionStore(type);
+		if(copied < 0) {
+			messageBridge.message(sender, "migratestore-failed", type);
+			return;
+		}
+		messageBridge.message(sender, "migratestore-success", copied, type);
+	}
+
+	@Override
+	public List<String> getTabCompleteList(int toComplete, String[] start, CommandSender sender) {
+		List<String> result = new ArrayList<>();
+		if(toComplete == 2) {
+			result.add(YamlRegionStore.TYPE);
+			result.add(SqliteRegionStore.TYPE);
+		}
+		return result;
+	}
+
+}
@@ -28,6 +28,7 @@ import org.bukkit.entity.Player;
 
 import javax.annotation.Nonnull;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -35,22 +36,31 @@ import java.util.List;
  */
 public class RegionSign {
 
+	private static long appliedWrites = 0;
+	private static long skippedWrites = 0;
+
 	private final BlockBehaviourHelper blockHelper;
 	private final SignErrorLogger errorLogger;
+	private final SignManager globalSignManager;
 
 	private final SignsFeature signsFeature;
 	private final String key;
+	// Lines last written to the sign block and the lines the block showed after that, only kept in memory
+	private String[] writtenLines;
+	private String[] shownLines;
 
 
 	@AssistedInject
 	RegionSign(
 			@Nonnull BlockBehaviourHelper blockBehaviourHelper,
 			@Nonnull SignErrorLogger signErrorLogger,
+			@Nonnull SignManager signManager,
 			@Assisted @Nonnull SignsFeature signsFeature,
 			@Assisted @Nonnull String key
 	) {
 		this.blockHelper = blockBehaviourHelper;
 		this.errorLogger = signErrorLogger;
+		this.globalSignManager = signManager;
 		this.signsFeature = signsFeature;
 		this.key = key;
 	}
@@ -100,6 +110,7 @@ public class RegionSign {
 			location.getBlock().setType(Material.AIR);
 			this.signsFeature.signManager().removeSign(this);
 		}
+		globalSignManager.setPeriodicSign(this, false);
 		getRegion().setSetting("general.signs." + key, null);
 		// Remove the sign from the region's sign manager
 	}
@@ -144,37 +155,31 @@ public class RegionSign {
 		if(signLocation == null
 				|| signLocation.getWorld() == null
 				|| !signLocation.getWorld().isChunkLoaded(signLocation.getBlockX() >> 4, signLocation.getBlockZ() >> 4)) {
+			globalSignManager.setPeriodicSign(this, false);
 			return false;
 		}
 
 		if(getRegion().isDeleted()) {
+			globalSignManager.setPeriodicSign(this, false);
 			return false;
 		}
 
 		YamlConfiguration regionConfig = getRegion().getConfig();
-		ConfigurationSection signConfig = getProfile();
+		SignTemplate template = getTemplate();
 		Block block = signLocation.getBlock();
-		if(signConfig == null || !signConfig.isSet(getRegion().getState().getValue())) {
-			block.setType(Material.AIR);
-			return true;
-		}
-
-		ConfigurationSection stateConfig = signConfig.getConfigurationSection(getRegion().getState().getValue());
-
-		// Get the lines
-		String[] signLines = new String[4];
-		boolean signEmpty = true;
-		for(int i = 0; i < 4; i++) {
-			signLines[i] = stateConfig.getString("line" + (i + 1));
-			signEmpty &= (signLines[i] == null || signLines[i].isEmpty());
-		}
-		if(signEmpty) {
+		if(template == null || template.isEmpty()) {
+			globalSignManager.setPeriodicSign(this, false);
 			block.setType(Material.AIR);
+			writtenLines = null;
+			shownLines = null;
 			return true;
 		}
+		globalSignManager.setPeriodicSign(this, template.isTimeDependent());
 
 		// Place the sign back (with proper rotation and type) after it has been hidden or (indirectly) destroyed
+		boolean placed = false;
 		if(!Materials.isSign(block.getType())) {
+			placed = true;
 			Material signType = getMaterial();
 			if (!blockHelper.canPlace(block.getLocation(), Bukkit.createBlockData(signType))) {
 				errorLogger.submitWarning("Setting sign" +  key +  "of region" + getRegion().getName() +  "failed, could not set sign block back");
@@ -212,44 +217,97 @@ public class RegionSign {
 			getRegion().setSetting("general.signs." + key + ".facing", signFacing == null ? null : signFacing.toString());
 		}
 
-		// Apply replacements and color and then set it on the sign
-		Sign signState = (Sign) PaperLib.getBlockState(block, false).getState();
+		// Fill in the compiled lines and then set them on the sign, unless the sign already shows them
+		String[] signLines = template.render(getRegion());
 		for(int i = 0; i < signLines.length; i++) {
 			if(signLines[i] == null) {
-				signState.setLine(i, "");
-				continue;
+				signLines[i] = "";
 			}
-			signLines[i] = Message.fromString(signLines[i]).replacements(getRegion()).getSingle();
-			signLines[i] = Utils.applyColors(signLines[i]);
+		}
+		Sign signState = (Sign) PaperLib.getBlockState(block, false).getState();
+		// Compare with the lines of the block itself, so changes by players, plugins or restores are repaired.
+		// The server might store written lines slightly differently, so the lines shown after the last write also count.
+		String[] currentLines = signState.getLines();
+		if(!placed && (showsLines(currentLines, signLines) || (Arrays.equals(signLines, writtenLines) && Arrays.equals(currentLines, shownLines)))) {
+			skippedWrites++;
+			return true;
+		}
+		for(int i = 0; i < signLines.length; i++) {
 			signState.setLine(i, signLines[i]);
 		}
 		signState.update(false, false);
+		appliedWrites++;
+		writtenLines = signLines;
+		shownLines = ((Sign) PaperLib.getBlockState(block, false).getState()).getLines();
+		return true;
+	}
+
+	/**
+	 * Check if the lines of a sign block start with the given lines.
+	 * @param current The lines of the sign block
+	 * @param lines   The lines to check for
+	 * @return true if the sign block shows the lines exactly, otherwise false
+	 */
+	private static boolean showsLines(String[] current, String[] lines) {
+		if(current.length < lines.length) {
+			return false;
+		}
+		for(int i = 0; i < lines.length; i++) {
+			if(!lines[i].equals(current[i])) {
+				return false;
+			}
+		}
 		return true;
 	}
 
+	/**
+	 * Get the number of sign updates that wrote to the sign block.
+	 * @return The number of applied writes over all signs
+	 */
+	public static long getAppliedWrites() {
+		return appliedWrites;
+	}
+
+	/**
+	 * Get the number of sign updates that skipped writing because the sign already showed the right content.
+	 * @return The number of skipped writes over all signs
+	 */
+	public static long getSkippedWrites() {
+		return skippedWrites;
+	}
+
 	/**
 	 * Check if the sign needs to update periodically.
 	 * @return true if it needs periodic updates, otherwise false
 	 */
 	public boolean needsPeriodicUpdate() {
-		ConfigurationSection signConfig = getProfile();
-		if(signConfig == null || !signConfig.isSet(getRegion().getState().getValue().toLowerCase())) {
-			return false;
-		}
+		SignTemplate template = getTemplate();
+		return template != null && template.isTimeDependent();
+	}
 
-		ConfigurationSection stateConfig = signConfig.getConfigurationSection(getRegion().getState().getValue().toLowerCase());
-		if(stateConfig == null) {
-			return false;
+	/**
+	 * Get the compiled template for the current state of the region from the sign profile.
+	 * @return The compiled template, or null if the profile does not specify the current state
+	 */
+	public SignTemplate getTemplate() {
+		ConfigurationSection signConfig = getProfile();
+		if(signConfig == null) {
+			return null;
 		}
+		return globalSignManager.getTemplate(signConfig, getRegion().getState().getValue(), getRegion().getFileManager().getSettingsGeneration());
+	}
 
-		// Check the lines for the timeleft tag
-		for(int i = 1; i <= 4; i++) {
-			String line = stateConfig.getString("line" + i);
-			if(line != null && line.contains(Message.VARIABLE_START + AreaShop.tagTimeLeft + Message.VARIABLE_END)) {
-				return true;
-			}
-		}
-		return false;
+	/**
+	 * Check if this sign needs periodic updating and register or unregister it for periodic updates.
+	 */
+	public void refreshPeriodicUpdate() {
+		Location signLocation = getLocation();
+		boolean periodic = signLocation != null
+				&& signLocation.getWorld() != null
+				&& signLocation.getWorld().isChunkLoaded(signLocation.getBlockX() >> 4, signLocation.getBlockZ() >> 4)
+				&& !getRegion().isDeleted()
+				&& needsPeriodicUpdate();
+		globalSignManager.setPeriodicSign(this, periodic);
 	}
 
 	/**
@@ -2,75 +2,142 @@ package me.wiefferink.areashop.features.signs;
 
 import io.github.bakedlibs.dough.blocks.BlockPosition;
 import io.github.bakedlibs.dough.blocks.ChunkPosition;
+import me.wiefferink.areashop.tools.LongObjectHashMap;
 import org.bukkit.Location;
 
-import java.util.ArrayList;
+import java.util.AbstractCollection;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
+import java.util.Iterator;
 import java.util.Optional;
 
 public class SignCache {
 
-    private final Map<Long, RegionSign> allSigns = new HashMap<>();
-    private final Map<Long, Collection<RegionSign>> signsByChunk = new HashMap<>();
+    private static final RegionSign[] NO_SIGNS = new RegionSign[0];
+
+    private final LongObjectHashMap<RegionSign> allSigns = new LongObjectHashMap<>();
+    // Signs per chunk, the arrays are replaced instead of modified so they can be handed out as snapshots
+    private final LongObjectHashMap<RegionSign[]> signsByChunk = new LongObjectHashMap<>();
+    private final Collection<RegionSign> allSignsView = Collections.unmodifiableCollection(this.allSigns.values());
+    private final Collection<BlockPosition> allSignLocationsView = new AbstractCollection<BlockPosition>() {
+        @Override
+        public Iterator<BlockPosition> iterator() {
+            Iterator<RegionSign> signs = allSigns.values().iterator();
+            return new Iterator<BlockPosition>() {
+                @Override
+                public boolean hasNext() {
+                    return signs.hasNext();
+                }
+
+                @Override
+                public BlockPosition next() {
+                    return signs.next().getPosition();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return allSigns.size();
+        }
+    };
+
+    /**
+     * Check if a chunk contains signs, does not allocate.
+     * @param chunkPosition The packed chunk position
+     * @return true if there is at least one sign in the chunk, otherwise false
+     */
+    public boolean hasSignsInChunk(long chunkPosition) {
+        return this.signsByChunk.containsKey(chunkPosition);
+    }
 
     public Optional<RegionSign> signAtLocation(long position) {
         return Optional.ofNullable(this.allSigns.get(position));
     }
 
+    /**
+     * Get the signs in a chunk.
+     * @param position The packed chunk position
+     * @return Unmodifiable snapshot of the signs in the chunk, later changes to the cache are not reflected
+     */
     public Collection<RegionSign> signsAtChunk(long position) {
-        return Collections.unmodifiableCollection(this.signsByChunk.getOrDefault(position, Collections.emptyList()));
+        RegionSign[] signs = this.signsByChunk.get(position);
+        if (signs == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(Arrays.asList(signs));
     }
 
+    /**
+     * Get all signs in the cache.
+     * Iterating throws a ConcurrentModificationException when a sign is added or removed meanwhile,
+     * copy the view when the loop changes blocks or signs.
+     * @return Unmodifiable view of the signs, changes to the cache are visible in the view
+     */
     public Collection<RegionSign> allSigns() {
-        return Collections.unmodifiableCollection(this.allSigns.values());
+        return this.allSignsView;
     }
 
+    /**
+     * Get the locations of all signs in the cache.
+     * Iterating throws a ConcurrentModificationException when a sign is added or removed meanwhile,
+     * copy the view when the loop changes blocks or signs.
+     * @return Unmodifiable view of the sign locations, changes to the cache are visible in the view
+     */
     public Collection<BlockPosition> allSignLocations() {
-        Collection<BlockPosition> positions = new ArrayList<>(this.signsByChunk.size());
-        for (RegionSign sign : this.allSigns.values()) {
-            positions.add(sign.getPosition());
-        }
-        return positions;
+        return this.allSignLocationsView;
     }
 
-    public void addSign(RegionSign regionSign) {
-        BlockPosition blockPosition = regionSign.getPosition();
-        this.allSigns.put(blockPosition.getPosition(), regionSign);
-        ChunkPosition chunkPosition = new ChunkPosition(blockPosition.getChunk());
-        Collection<RegionSign> signs = this.signsByChunk.computeIfAbsent(chunkPosition.getPosition(), x -> new HashSet<>());
-        signs.add(regionSign);
+    /**
+     * Get the number of signs in the cache.
+     * @return The number of signs
+     */
+    public int size() {
+        return this.allSigns.size();
     }
 
-    public Optional<RegionSign> removeSign(Location location) {
-        return removeSign(new BlockPosition(location));
+    public void addSign(RegionSign regionSign) {
+        Location location = regionSign.getLocation();
+        RegionSign previous = this.allSigns.put(BlockPosition.getAsLong(location), regionSign);
+        long packedChunkPos = chunkKey(location);
+        if (previous != null) {
+            removeFromChunk(packedChunkPos, previous);
+        }
+        RegionSign[] signs = this.signsByChunk.get(packedChunkPos);
+        if (signs == null) {
+            signs = NO_SIGNS;
+        }
+        for (RegionSign sign : signs) {
+            if (sign.equals(regionSign)) {
+                return;
+            }
+        }
+        RegionSign[] newSigns = Arrays.copyOf(signs, signs.length + 1);
+        newSigns[signs.length] = regionSign;
+        this.signsByChunk.put(packedChunkPos, newSigns);
     }
 
-    public Optional<RegionSign> removeSign(BlockPosition position) {
-        RegionSign removed = this.allSigns.remove(position.getPosition());
+    public Optional<RegionSign> removeSign(Location location) {
+        RegionSign removed = this.allSigns.remove(BlockPosition.getAsLong(location));
         if (removed != null) {
-            Location location = position.toLocation();
-            this.signsByChunk.remove(new ChunkPosition(location).getPosition());
-            // Remove the sign from the region
+            // Only remove this sign from its chunk, other signs in the chunk stay
+            removeFromChunk(chunkKey(location), removed);
         }
         return Optional.ofNullable(removed);
     }
 
+    public Optional<RegionSign> removeSign(BlockPosition position) {
+        return removeSign(position.toLocation());
+    }
+
     public void removeSign(RegionSign regionSign) {
-        BlockPosition blockPosition = regionSign.getPosition();
-        this.allSigns.remove(blockPosition.getPosition());
-        ChunkPosition chunkPosition = new ChunkPosition(blockPosition.getChunk());
-        long packedChunkPos = chunkPosition.getPosition();
-        Collection<RegionSign> signs = this.signsByChunk.get(packedChunkPos);
-        if (signs != null) {
-            signs.remove(regionSign);
-            if (signs.isEmpty()) {
-                this.signsByChunk.remove(packedChunkPos);
-            }
+        Location location = regionSign.getLocation();
+        long packedPos = BlockPosition.getAsLong(location);
+        if (regionSign.equals(this.allSigns.get(packedPos))) {
+            this.allSigns.remove(packedPos);
         }
+        removeFromChunk(chunkKey(location), regionSign);
     }
 
     public void clear() {
@@ -78,4 +145,38 @@ public class SignCache {
         this.signsByChunk.clear();
     }
 
+    /**
+     * Remove a sign from the signs of a chunk.
+     * @param packedChunkPos The packed chunk position
+     * @param regionSign     The sign to remove
+     */
+    private void removeFromChunk(long packedChunkPos, RegionSign regionSign) {
+        RegionSign[] signs = this.signsByChunk.get(packedChunkPos);
+        if (signs == null) {
+            return;
+        }
+        for (int i = 0; i < signs.length; i++) {
+            if (signs[i].equals(regionSign)) {
+                if (signs.length == 1) {
+                    this.signsByChunk.remove(packedChunkPos);
+                    return;
+                }
+                RegionSign[] newSigns = new RegionSign[signs.length - 1];
+                System.arraycopy(signs, 0, newSigns, 0, i);
+                System.arraycopy(signs, i + 1, newSigns, i, signs.length - i - 1);
+                this.signsByChunk.put(packedChunkPos, newSigns);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Get the packed position of the chunk of a location.
+     * @param location The location
+     * @return The packed chunk position
+     */
+    private static long chunkKey(Location location) {
+        return ChunkPosition.getAsLong(location.getBlockX() >> 4, location.getBlockZ() >> 4);
+    }
+
 }
@@ -32,9 +32,9 @@ import org.bukkit.event.block.BlockPhysicsEvent;
 import org.bukkit.event.block.SignChangeEvent;
 import org.bukkit.event.player.PlayerInteractEvent;
 import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
 
 import javax.annotation.Nonnull;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
@@ -81,22 +81,37 @@ public class SignListener implements Listener {
     @EventHandler(priority = EventPriority.MONITOR)
     public void onChunkLoad(ChunkLoadEvent event) {
         Chunk chunk = event.getChunk();
+        if (!this.signManager.hasSignsInChunk(chunk.getWorld(), chunk.getX(), chunk.getZ())) {
+            return;
+        }
         Optional<SignCache> optional = this.signManager.getCacheForWorld(chunk.getWorld());
         if (optional.isEmpty()) {
             return;
         }
         final SignCache signCache = optional.get();
-        Collection<RegionSign> chunkSigns = new ArrayList<>(signCache.signsAtChunk(ChunkPosition.getAsLong(chunk.getX(), chunk.getZ())));
+        // Snapshot of the signs in the chunk, not affected by signs being removed while updating
+        Collection<RegionSign> chunkSigns = signCache.signsAtChunk(ChunkPosition.getAsLong(chunk.getX(), chunk.getZ()));
         if(chunkSigns.isEmpty()) {
             return;
         }
         Do.forAll(chunkSigns, RegionSign::update);
     }
 
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkUnload(ChunkUnloadEvent event) {
+        Chunk chunk = event.getChunk();
+        this.signManager.chunkUnloaded(chunk.getWorld(), chunk.getX(), chunk.getZ());
+    }
+
     @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
     public void onIndirectSignBreak(BlockPhysicsEvent event) {
+        // Skip chunks without signs before doing anything else, this event fires very often
+        Block block = event.getBlock();
+        if(!this.signManager.hasSignsInChunk(block.getWorld(), block.getX() >> 4, block.getZ() >> 4)) {
+            return;
+        }
         // Check if the block is a sign
-        if(!Materials.isSign(event.getBlock().getType()) || behaviourHelper.isBlockValid(event.getBlock())) {
+        if(!Materials.isSign(block.getType()) || behaviourHelper.isBlockValid(block)) {
             return;
         }
 
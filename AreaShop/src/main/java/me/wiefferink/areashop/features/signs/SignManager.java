@@ -1,14 +1,21 @@
 package me.wiefferink.areashop.features.signs;
 
 import io.github.bakedlibs.dough.blocks.BlockPosition;
+import io.github.bakedlibs.dough.blocks.ChunkPosition;
 import me.wiefferink.areashop.AreaShop;
 import me.wiefferink.areashop.managers.Manager;
 import org.bukkit.Location;
 import org.bukkit.World;
+import org.bukkit.configuration.ConfigurationSection;
 
+import java.util.AbstractCollection;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
@@ -16,21 +23,63 @@ import java.util.Set;
 public class SignManager extends Manager {
 
     private final Map<World, SignCache> signCacheMap = new HashMap<>();
+    // Signs in loaded chunks that display time dependent information in their current state
+    private final Set<RegionSign> periodicSigns = new LinkedHashSet<>();
+    // Compiled templates by sign profile section and state, valid for one settings generation
+    private final Map<ConfigurationSection, Map<String, Optional<SignTemplate>>> templates = new IdentityHashMap<>();
+    private long templatesGeneration = -1;
+
+    private final Collection<BlockPosition> allSignLocationsView = new AbstractCollection<BlockPosition>() {
+        @Override
+        public Iterator<BlockPosition> iterator() {
+            return signCacheMap.values().stream().flatMap(cache -> cache.allSignLocations().stream()).iterator();
+        }
 
-    public Collection<BlockPosition> allSignLocations() {
-        final Set<BlockPosition> set = new HashSet<>(signCacheMap.size());
-        for (SignCache signCache : signCacheMap.values()) {
-            set.addAll(signCache.allSignLocations());
+        @Override
+        public int size() {
+            return signCount();
         }
-        return set;
+    };
+    private final Collection<RegionSign> allSignsView = new AbstractCollection<RegionSign>() {
+        @Override
+        public Iterator<RegionSign> iterator() {
+            return signCacheMap.values().stream().flatMap(cache -> cache.allSigns().stream()).iterator();
+        }
+
+        @Override
+        public int size() {
+            return signCount();
+        }
+    };
+
+    /**
+     * Get the locations of all signs.
+     * The view fails when signs are added or removed while iterating, copy it when the loop changes blocks or signs.
+     * @return Unmodifiable view of the sign locations of all worlds
+     */
+    public Collection<BlockPosition> allSignLocations() {
+        return this.allSignLocationsView;
     }
 
+    /**
+     * Get all signs.
+     * The view fails when signs are added or removed while iterating, copy it when the loop changes blocks or signs.
+     * @return Unmodifiable view of the signs of all worlds
+     */
     public Collection<RegionSign> allSigns() {
-        final Set<RegionSign> signs = new HashSet<>(signCacheMap.size());
-        for (SignCache signCache : signCacheMap.values()) {
-            signs.addAll(signCache.allSigns());
+        return this.allSignsView;
+    }
+
+    /**
+     * Get the number of signs.
+     * @return The number of signs in all worlds
+     */
+    private int signCount() {
+        int count = 0;
+        for (SignCache signCache : this.signCacheMap.values()) {
+            count += signCache.size();
         }
-        return signs;
+        return count;
     }
 
     public SignCache cacheForWorld(World world) {
@@ -41,6 +90,18 @@ public class SignManager extends Manager {
         return Optional.ofNullable(this.signCacheMap.get(world));
     }
 
+    /**
+     * Check if a chunk contains signs, does not allocate so it can be used to filter frequent events.
+     * @param world  The world of the chunk
+     * @param chunkX The x coordinate of the chunk
+     * @param chunkZ The z coordinate of the chunk
+     * @return true if there is at least one sign in the chunk, otherwise false
+     */
+    public boolean hasSignsInChunk(World world, int chunkX, int chunkZ) {
+        SignCache signCache = this.signCacheMap.get(world);
+        return signCache != null && signCache.hasSignsInChunk(ChunkPosition.getAsLong(chunkX, chunkZ));
+    }
+
     public Optional<RegionSign> signFromLocation(Location location) {
         final World world = location.getWorld();
         return getCacheForWorld(world)
@@ -58,13 +119,86 @@ public class SignManager extends Manager {
             return;
         }
         cacheForWorld(location.getWorld()).removeSign(regionSign);
+        this.periodicSigns.remove(regionSign);
     }
 
     public Optional<RegionSign> removeSign(Location location) {
         if (location == null || location.getWorld() == null) {
             return Optional.empty();
         }
-        return getCacheForWorld(location.getWorld()).flatMap(cache -> cache.removeSign(location));
+        Optional<RegionSign> removed = getCacheForWorld(location.getWorld()).flatMap(cache -> cache.removeSign(location));
+        removed.ifPresent(this.periodicSigns::remove);
+        return removed;
+    }
+
+    /**
+     * Get the signs that need periodic updating.
+     * Only contains signs that are in a loaded chunk and display a time dependent tag in the current state of their region.
+     * @return Unmodifiable view of the signs that need periodic updating
+     */
+    public Collection<RegionSign> periodicSigns() {
+        return Collections.unmodifiableCollection(this.periodicSigns);
+    }
+
+    /**
+     * Set if a sign needs periodic updating, called when the sign has been rendered.
+     * @param regionSign The sign to update
+     * @param periodic   true if the sign needs periodic updating, otherwise false
+     */
+    public void setPeriodicSign(RegionSign regionSign, boolean periodic) {
+        if (periodic) {
+            this.periodicSigns.add(regionSign);
+        } else {
+            this.periodicSigns.remove(regionSign);
+        }
+    }
+
+    /**
+     * Get the compiled template of a state of a sign profile, compiling it the first time it is requested.
+     * @param profile    The sign profile section
+     * @param state      The state to get the template for
+     * @param generation The current settings generation, templates of older generations are discarded
+     * @return The compiled template, or null if the profile does not specify the state
+     */
+    public SignTemplate getTemplate(ConfigurationSection profile, String state, long generation) {
+        if (generation != this.templatesGeneration) {
+            this.templates.clear();
+            this.templatesGeneration = generation;
+        }
+        return this.templates.computeIfAbsent(profile, x -> new HashMap<>())
+                .computeIfAbsent(state, x -> Optional.ofNullable(profile.getConfigurationSection(state)).map(SignTemplate::compile))
+                .orElse(null);
+    }
+
+    /**
+     * Discard all compiled templates, used when a sign profile of a region or group changed.
+     */
+    public void clearTemplates() {
+        this.templates.clear();
+    }
+
+    /**
+     * Remove all signs from the set of signs that need periodic updating.
+     */
+    public void clearPeriodicSigns() {
+        this.periodicSigns.clear();
+    }
+
+    /**
+     * Stop periodic updates of the signs in a chunk, used when the chunk unloads.
+     * @param world  The world of the chunk
+     * @param chunkX The x coordinate of the chunk
+     * @param chunkZ The z coordinate of the chunk
+     */
+    public void chunkUnloaded(World world, int chunkX, int chunkZ) {
+        if (this.periodicSigns.isEmpty() || !hasSignsInChunk(world, chunkX, chunkZ)) {
+            return;
+        }
+        getCacheForWorld(world).ifPresent(cache -> {
+            for (RegionSign sign : cache.signsAtChunk(ChunkPosition.getAsLong(chunkX, chunkZ))) {
+                this.periodicSigns.remove(sign);
+            }
+        });
     }
 
     /**
@@ -73,8 +207,8 @@ public class SignManager extends Manager {
      */
     public boolean update() {
         boolean result = true;
-        for (SignCache signCache : this.signCacheMap.values())
-        for(RegionSign sign : signCache.allSigns()) {
+        // Updating can remove signs, so iterate over a copy
+        for (RegionSign sign : new ArrayList<>(allSigns())) {
             result &= sign.update();
         }
         return result;
@@ -105,6 +239,8 @@ public class SignManager extends Manager {
         update();
         this.signCacheMap.values().forEach(SignCache::clear);
         this.signCacheMap.clear();
+        this.periodicSigns.clear();
+        this.templates.clear();
     }
 
 }
@@ -0,0 +1,208 @@
+package me.wiefferink.areashop.features.signs;
+
+import me.wiefferink.areashop.AreaShop;
+import me.wiefferink.areashop.tools.Utils;
+import me.wiefferink.interactivemessenger.processing.Message;
+import me.wiefferink.interactivemessenger.processing.ReplacementProvider;
+import org.bukkit.configuration.ConfigurationSection;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lines of a state of a sign profile, compiled once so that rendering does not need to read the config or parse the lines.
+ * Lines with language variables, arguments or escapes are not compiled and are rendered through Message instead.
+ */
+public class SignTemplate {
+
+	private static final int LINES = 4;
+
+	private final Line[] lines = new Line[LINES];
+	private final boolean empty;
+	private final boolean timeDependent;
+
+	/**
+	 * Constructor.
+	 * @param stateConfig The section of the sign profile state with the lines
+	 */
+	private SignTemplate(ConfigurationSection stateConfig) {
+		boolean signEmpty = true;
+		boolean hasTimeLeft = false;
+		String timeLeftTag = Message.VARIABLE_START + AreaShop.tagTimeLeft + Message.VARIABLE_END;
+		for(int i = 0; i < LINES; i++) {
+			String line = stateConfig.getString("line" + (i + 1));
+			if(line != null) {
+				lines[i] = new Line(line);
+				hasTimeLeft |= line.contains(timeLeftTag);
+			}
+			signEmpty &= (line == null || line.isEmpty());
+		}
+		this.empty = signEmpty;
+		this.timeDependent = hasTimeLeft;
+	}
+
+	/**
+	 * Compile the lines of a sign profile state.
+	 * @param stateConfig The section of the sign profile state
+	 * @return The compiled template
+	 */
+	@Nonnull
+	public static SignTemplate compile(@Nonnull ConfigurationSection stateConfig) {
+		return new SignTemplate(stateConfig);
+	}
+
+	/**
+	 * Check if all lines of the template are empty, in which case the sign should be hidden.
+	 * @return true if all lines are empty or missing, otherwise false
+	 */
+	public boolean isEmpty() {
+		return empty;
+	}
+
+	/**
+	 * Check if the template contains a tag that changes over time.
+	 * @return true if one of the lines contains the timeleft tag, otherwise false
+	 */
+	public boolean isTimeDependent() {
+		return timeDependent;
+	}
+
+	/**
+	 * Render the lines of the template for a region.
+	 * @param provider The provider of the variable values (the region)
+	 * @return Array with the 4 colored lines, null for lines that are not set in the profile
+	 */
+	public String[] render(ReplacementProvider provider) {
+		String[] result = new String[LINES];
+		for(int i = 0; i < LINES; i++) {
+			if(lines[i] != null) {
+				result[i] = lines[i].render(provider);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Single line of a template, split into static text and variables.
+	 */
+	private static class Line {
+		private final String raw;
+		// Static text before, between and after the variables, already processed and colored (null if the line is not compiled)
+		private final String[] segments;
+		private final String[] variables;
+
+		Line(String raw) {
+			this.raw = raw;
+			List<String> foundSegments = new ArrayList<>();
+			List<String> foundVariables = new ArrayList<>();
+			boolean compiled = !raw.contains("\\");
+			int position = 0;
+			while(compiled) {
+				int start = raw.indexOf(Message.VARIABLE_START, position);
+				if(start == -1) {
+					foundSegments.add(raw.substring(position));
+					break;
+				}
+				int end = raw.indexOf(Message.VARIABLE_END, start + Message.VARIABLE_START.length());
+				if(end == -1) {
+					compiled = false;
+					break;
+				}
+				String variable = raw.substring(start + Message.VARIABLE_START.length(), end);
+				if(!isSimpleVariable(variable)) {
+					compiled = false;
+					break;
+				}
+				foundSegments.add(raw.substring(position, start));
+				foundVariables.add(variable);
+				position = end + Message.VARIABLE_END.length();
+			}
+			// Color codes should not be split between static text and a variable value
+			for(int i = 0; compiled && i < foundSegments.size() - 1; i++) {
+				compiled = !foundSegments.get(i).endsWith("&");
+			}
+			if(compiled) {
+				this.segments = new String[foundSegments.size()];
+				for(int i = 0; i < segments.length; i++) {
+					// Process static text with Message once, so formatting is handled the same as for a complete line
+					segments[i] = Utils.applyColors(Message.fromString(foundSegments.get(i)).getSingle());
+				}
+				this.variables = foundVariables.toArray(new String[0]);
+			} else {
+				this.segments = null;
+				this.variables = null;
+			}
+		}
+
+		/**
+		 * Render the line for a region.
+		 * @param provider The provider of the variable values
+		 * @return The colored line
+		 */
+		String render(ReplacementProvider provider) {
+			if(segments == null) {
+				return renderMessage(provider);
+			}
+			if(variables.length == 0) {
+				return segments[0];
+			}
+			StringBuilder result = new StringBuilder(segments[0]);
+			for(int i = 0; i < variables.length; i++) {
+				Object value = provider.provideReplacement(variables[i]);
+				// Values that Message would process further are left to Message
+				if(value == null || value instanceof Message) {
+					return renderMessage(provider);
+				}
+				String valueString = value.toString();
+				if(!isPlainValue(valueString)) {
+					return renderMessage(provider);
+				}
+				result.append(Utils.applyColors(valueString)).append(segments[i + 1]);
+			}
+			return result.toString();
+		}
+
+		/**
+		 * Render the line by processing it with Message.
+		 * @param provider The provider of the variable values
+		 * @return The colored line
+		 */
+		private String renderMessage(ReplacementProvider provider) {
+			return Utils.applyColors(Message.fromString(raw).replacements(provider).getSingle());
+		}
+
+		/**
+		 * Check if a variable name can be bound directly to a replacement provider.
+		 * @param variable The name of the variable
+		 * @return true if the variable is a plain tag, false for language variables, arguments and invalid names
+		 */
+		private static boolean isSimpleVariable(String variable) {
+			if(variable.isEmpty()) {
+				return false;
+			}
+			boolean numeric = true;
+			for(int i = 0; i < variable.length(); i++) {
+				char character = variable.charAt(i);
+				if(!Character.isLetterOrDigit(character)) {
+					return false;
+				}
+				numeric &= Character.isDigit(character);
+			}
+			return !numeric;
+		}
+
+		/**
+		 * Check if a variable value can be inserted without further processing.
+		 * @param value The value to check
+		 * @return true if the value does not contain characters that Message or color translation would treat specially
+		 */
+		private static boolean isPlainValue(String value) {
+			return value.indexOf('%') == -1
+					&& value.indexOf('[') == -1
+					&& value.indexOf(']') == -1
+					&& value.indexOf('\\') == -1
+					&& !value.endsWith("&");
+		}
+	}
+}
@@ -58,8 +58,8 @@ public final class PlayerLoginLogoutListener implements Listener {
 				return false;
 			}
 			// Notify for rents that almost run out
-			for(RentRegion region : plugin.getFileManager().getRentsRef()) {
-				if(region.isRenter(player)) {
+			for(GeneralRegion ownedRegion : plugin.getFileManager().getRegionsOwnedBy(player.getUniqueId())) {
+				if(ownedRegion instanceof RentRegion region) {
 					String warningSetting = region.getStringSetting("rent.warningOnLoginTime");
 					if(warningSetting == null || warningSetting.isEmpty()) {
 						continue;
@@ -83,12 +83,7 @@ public final class PlayerLoginLogoutListener implements Listener {
 				return true;
 			}
 
-			List<GeneralRegion> regions = new ArrayList<>();
-			for(GeneralRegion region : plugin.getFileManager().getRegionsRef()) {
-				if(region.isOwner(player)) {
-					regions.add(region);
-				}
-			}
+			List<GeneralRegion> regions = new ArrayList<>(plugin.getFileManager().getRegionsOwnedBy(player.getUniqueId()));
 
 			Do.forAll(
 				plugin.getConfig().getInt("nameupdate.regionsPerTick"),
@@ -127,10 +122,8 @@ public final class PlayerLoginLogoutListener implements Listener {
 	 * @param player The player to update the active times for
 	 */
 	private void updateLastActive(Player player) {
-		for(GeneralRegion region : plugin.getFileManager().getRegionsRef()) {
-			if(region.isOwner(player)) {
-				region.updateLastActiveTime();
-			}
+		for(GeneralRegion region : plugin.getFileManager().getRegionsOwnedBy(player.getUniqueId())) {
+			region.updateLastActiveTime();
 		}
 	}
 }
@@ -24,6 +24,7 @@ import me.wiefferink.areashop.commands.InfoCommand;
 import me.wiefferink.areashop.commands.LinksignsCommand;
 import me.wiefferink.areashop.commands.MeCommand;
 import me.wiefferink.areashop.commands.MessageCommand;
+import me.wiefferink.areashop.commands.MigratestoreCommand;
 import me.wiefferink.areashop.commands.ReloadCommand;
 import me.wiefferink.areashop.commands.RentCommand;
 import me.wiefferink.areashop.commands.ResellCommand;
@@ -98,6 +99,7 @@ public class CommandManager extends Manager implements CommandExecutor, TabCompl
 		commands.add(injector.getInstance(SetlandlordCommand.class));
 		commands.add(injector.getInstance(MessageCommand.class));
 		commands.add(injector.getInstance(ImportCommand.class));
+		commands.add(injector.getInstance(MigratestoreCommand.class));
 
 		// Register commands in bukkit
 		plugin.getCommand("AreaShop").setExecutor(this);
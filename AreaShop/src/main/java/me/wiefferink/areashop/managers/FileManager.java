@@ -12,14 +12,22 @@ import me.wiefferink.areashop.events.ask.AddingRegionEvent;
 import me.wiefferink.areashop.events.ask.DeletingRegionEvent;
 import me.wiefferink.areashop.events.notify.AddedRegionEvent;
 import me.wiefferink.areashop.events.notify.DeletedRegionEvent;
+import me.wiefferink.areashop.features.signs.RegionSign;
+import me.wiefferink.areashop.features.signs.SignManager;
 import me.wiefferink.areashop.interfaces.WorldGuardInterface;
 import me.wiefferink.areashop.regions.BuyRegion;
 import me.wiefferink.areashop.regions.GeneralRegion;
 import me.wiefferink.areashop.regions.GeneralRegion.RegionEvent;
 import me.wiefferink.areashop.regions.GeneralRegion.RegionType;
+import me.wiefferink.areashop.regions.LimitGroup;
 import me.wiefferink.areashop.regions.RegionFactory;
 import me.wiefferink.areashop.regions.RegionGroup;
+import me.wiefferink.areashop.regions.RegionGroupIndex;
+import me.wiefferink.areashop.regions.RegionOwnerIndex;
+import me.wiefferink.areashop.regions.RegionSettingsCache;
+import me.wiefferink.areashop.regions.RegionSpatialIndex;
 import me.wiefferink.areashop.regions.RentRegion;
+import me.wiefferink.areashop.tools.DeadlineQueue;
 import me.wiefferink.areashop.tools.Utils;
 import me.wiefferink.bukkitdo.Do;
 import org.bukkit.Bukkit;
@@ -30,6 +38,7 @@ import org.bukkit.command.CommandSender;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
+import org.bukkit.util.Vector;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -43,15 +52,20 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -72,7 +86,18 @@ public class FileManager extends Manager implements IFileManager {
 	private YamlConfiguration defaultConfig = null;
 	private YamlConfiguration defaultConfigFallback = null;
 	private boolean saveGroupsRequired = false;
+	private long settingsGeneration = 0;
 	private final Set<String> worldRegionsRequireSaving;
+	private final RegionGroupIndex groupIndex = new RegionGroupIndex();
+	private final RegionOwnerIndex ownerIndex = new RegionOwnerIndex();
+	private final RegionSpatialIndex spatialIndex = new RegionSpatialIndex();
+	private final DeadlineQueue<RentRegion> rentExpirations = new DeadlineQueue<>();
+	private final DeadlineQueue<ExpirationWarning> expirationWarnings = new DeadlineQueue<>();
+	private final Map<RentRegion, List<ExpirationWarning>> scheduledWarnings = new HashMap<>();
+	private long warningsSentUntil = System.currentTimeMillis();
+	private final DeadlineQueue<GeneralRegion> inactiveDeadlines = new DeadlineQueue<>();
+	private List<LimitGroup> limitGroups = Collections.emptyList();
+	private final Map<UUID, int[]> limitCounts = new HashMap<>();
 
 	private HashMap<String, Integer> versions = null;
 	private final String versionPath;
@@ -80,6 +105,29 @@ public class FileManager extends Manager implements IFileManager {
 	private final WorldGuardInterface worldGuardInterface;
 	private final MessageBridge messageBridge;
 	private final RegionFactory regionFactory;
+	private final SignManager signManager;
+	// Maximum time to wait for region files that are written in the background when saving everything at once
+	private static final long SAVE_DRAIN_TIMEOUT = 10000;
+	// Setting that selects the expiration warnings of a rent region
+	private static final String EXPIRATION_WARNING_PROFILE = "rent.expirationWarningProfile";
+	// Settings with the time after which the region of an inactive player is unrented or sold
+	private static final String INACTIVE_TIME_UNTIL_UNRENT = "rent.inactiveTimeUntilUnrent";
+	private static final String INACTIVE_TIME_UNTIL_SELL = "buy.inactiveTimeUntilSell";
+	// Setting that decides if a region counts for the limits of its owner
+	private static final String COUNT_FOR_LIMITS = "general.countForLimits";
+	private RegionStore regionStore = null;
+	// Journal of changes, null if disabled
+	private RegionJournal journal = null;
+	// Changes left behind in the journal files that still need to be applied while loading
+	private RegionJournal.Replay journalReplay = null;
+	// Set while the compacted journal file waits for the saved regions to be written, cleared by the store writer
+	private volatile boolean compactionFinishing = false;
+	// Members of the groups read from the region store, only set while loading the groups
+	private Map<String, Set<String>> loadedGroupMembers = null;
+	// Regions that changed since they have been saved, in the order they changed
+	private final Set<GeneralRegion> dirtyRegions = new LinkedHashSet<>();
+	private boolean savingDirtyRegions = false;
+	private final WorldGuardRegionSaver worldGuardSaver = new WorldGuardRegionSaver();
 
 	/**
 	 * Constructor, initialize variabeles.
@@ -89,12 +137,14 @@ public class FileManager extends Manager implements IFileManager {
 			@Nonnull AreaShop plugin,
 			@Nonnull WorldGuardInterface worldGuardInterface,
 			@Nonnull MessageBridge messageBridge,
-			@Nonnull RegionFactory regionFactory
+			@Nonnull RegionFactory regionFactory,
+			@Nonnull SignManager signManager
 	) {
 		this.plugin = plugin;
 		this.worldGuardInterface = worldGuardInterface;
 		this.messageBridge = messageBridge;
 		this.regionFactory = regionFactory;
+		this.signManager = signManager;
 		regions = new HashMap<>();
 		buys = new HashMap<>();
 		rents = new HashMap<>();
@@ -128,6 +178,13 @@ public class FileManager extends Manager implements IFileManager {
 		}
 		// Save files that need to be saved
 		saveRequiredFilesAtOnce();
+		if(journal != null) {
+			journal.close();
+		}
+		if(regionStore != null) {
+			regionStore.close(SAVE_DRAIN_TIMEOUT);
+		}
+		worldGuardSaver.shutdown(SAVE_DRAIN_TIMEOUT);
 	}
 
 
@@ -335,7 +392,9 @@ public class FileManager extends Manager implements IFileManager {
 			return event;
 		}
 		region.saveRequired();
-		markGroupsAutoDirty();
+		if(journal != null) {
+			journal.regionSnapshot(region.getLowerCaseName(), region.getConfig().saveToString());
+		}
 		return event;
 	}
 
@@ -363,6 +422,21 @@ public class FileManager extends Manager implements IFileManager {
 		} else if (region instanceof RentRegion rentRegion) {
 			rents.put(key, rentRegion);
 		}
+		for(RegionGroup group : getGroups()) {
+			group.regionAdded(region);
+		}
+		groupIndex.addRegion(region, getGroups());
+		ownerIndex.update(region);
+		limitCounts.remove(region.getOwner());
+		spatialIndex.update(region);
+		scheduleInactiveDeadline(region);
+		if(region instanceof RentRegion rentRegion) {
+			scheduleRentExpiration(rentRegion);
+		}
+		// Changes made before the region was added have not been queued for saving yet
+		if(region.isSaveRequired()) {
+			dirtyRegions.add(region);
+		}
 		Bukkit.getPluginManager().callEvent(new AddedRegionEvent(region));
 		return event;
 	}
@@ -375,6 +449,315 @@ public class FileManager extends Manager implements IFileManager {
 		for(RegionGroup group : getGroups()) {
 			group.autoDirty();
 		}
+		for(RegionGroup group : getGroups()) {
+			updateGroupMembership(group);
+		}
+	}
+
+	/**
+	 * Get the groups a region is member of.
+	 * @param region The region to get the groups for
+	 * @return Unmodifiable list of groups, sorted by priority (highest first)
+	 */
+	@Override
+	public List<RegionGroup> getGroupsOf(GeneralRegion region) {
+		return groupIndex.getGroups(region.getName());
+	}
+
+	/**
+	 * Get the regions a player owns (rented or bought).
+	 * @param player The UUID of the player
+	 * @return Unmodifiable set with the regions owned by the player
+	 */
+	@Override
+	public Set<GeneralRegion> getRegionsOwnedBy(UUID player) {
+		return ownerIndex.getOwnedRegions(player);
+	}
+
+	/**
+	 * Get the regions a player is landlord of.
+	 * @param player The UUID of the player
+	 * @return Unmodifiable set with the regions the player is landlord of
+	 */
+	@Override
+	public Set<GeneralRegion> getRegionsWithLandlord(UUID player) {
+		return ownerIndex.getLandlordRegions(player);
+	}
+
+	/**
+	 * Update the owner index after the owner or landlord of a region changed.
+	 * @param region The region that changed
+	 */
+	@Override
+	public void updateOwnerIndex(GeneralRegion region) {
+		// Regions that are not (or no longer) registered are added to the index by addRegion
+		if(regions.get(region.getLowerCaseName()) == region) {
+			limitCounts.remove(ownerIndex.getOwner(region));
+			ownerIndex.update(region);
+			limitCounts.remove(region.getOwner());
+			scheduleInactiveDeadline(region);
+		}
+	}
+
+	/**
+	 * Update the inactivity index after the last active time of a region changed.
+	 * @param region The region that changed
+	 */
+	@Override
+	public void updateInactiveDeadline(GeneralRegion region) {
+		if(regions.get(region.getLowerCaseName()) == region) {
+			scheduleInactiveDeadline(region);
+		}
+	}
+
+	/**
+	 * Put a region in the inactivity index if it can become inactive, otherwise remove it.
+	 * @param region The region to schedule
+	 */
+	private void scheduleInactiveDeadline(GeneralRegion region) {
+		long deadline = region.getInactiveDeadline();
+		if(deadline < 0) {
+			inactiveDeadlines.remove(region);
+		} else {
+			inactiveDeadlines.schedule(region, deadline);
+		}
+	}
+
+	/**
+	 * Update the expiration queue after the renter or rented until time of a region changed.
+	 * @param region The region that changed
+	 */
+	@Override
+	public void updateRentExpiration(RentRegion region) {
+		if(regions.get(region.getLowerCaseName()) == region) {
+			scheduleRentExpiration(region);
+		}
+	}
+
+	/**
+	 * Put a region in the expiration queue if it is rented, otherwise remove it.
+	 * @param region The region to schedule
+	 */
+	private void scheduleRentExpiration(RentRegion region) {
+		if(region.isRented()) {
+			rentExpirations.schedule(region, region.getRentedUntil());
+		} else {
+			rentExpirations.remove(region);
+		}
+		scheduleExpirationWarnings(region);
+	}
+
+	/**
+	 * Schedule the expiration warnings of a region that have not been sent yet, replacing the currently scheduled ones.
+	 * @param region The region to schedule the warnings for
+	 */
+	private void scheduleExpirationWarnings(RentRegion region) {
+		cancelExpirationWarnings(region);
+		Map<String, Long> warningTimes = region.getExpirationWarningTimes();
+		if(warningTimes.isEmpty()) {
+			return;
+		}
+		long sendAfter = Math.max(warningsSentUntil, Calendar.getInstance().getTimeInMillis());
+		List<ExpirationWarning> warnings = new ArrayList<>(warningTimes.size());
+		for(Map.Entry<String, Long> warningTime : warningTimes.entrySet()) {
+			if(warningTime.getValue() > sendAfter) {
+				ExpirationWarning warning = new ExpirationWarning(region, warningTime.getKey());
+				expirationWarnings.schedule(warning, warningTime.getValue());
+				warnings.add(warning);
+			}
+		}
+		if(!warnings.isEmpty()) {
+			scheduledWarnings.put(region, warnings);
+		}
+	}
+
+	/**
+	 * Schedule the expiration warnings of a region again after its warning profile changed.
+	 * @param region The region to schedule the warnings for
+	 */
+	private void updateExpirationWarnings(RentRegion region) {
+		if(regions.get(region.getLowerCaseName()) == region) {
+			scheduleExpirationWarnings(region);
+		}
+	}
+
+	/**
+	 * Cancel the scheduled expiration warnings of a region.
+	 * @param region The region to cancel the warnings for
+	 */
+	private void cancelExpirationWarnings(RentRegion region) {
+		List<ExpirationWarning> warnings = scheduledWarnings.remove(region);
+		if(warnings != null) {
+			for(ExpirationWarning warning : warnings) {
+				expirationWarnings.remove(warning);
+			}
+		}
+	}
+
+	/**
+	 * Get the regions of which the bounding box intersects with a box.
+	 * @param world The name of the world
+	 * @param min   The minimum corner of the box
+	 * @param max   The maximum corner of the box
+	 * @return List with the regions intersecting with the box
+	 */
+	@Override
+	public List<GeneralRegion> getRegionsIntersecting(String world, Vector min, Vector max) {
+		return spatialIndex.getRegions(world, min.getBlockX(), min.getBlockY(), min.getBlockZ(), max.getBlockX(), max.getBlockY(), max.getBlockZ());
+	}
+
+	/**
+	 * Update the spatial index after the bounds of a region might have changed.
+	 * @param region The region to update
+	 */
+	@Override
+	public void updateSpatialIndex(GeneralRegion region) {
+		if(regions.get(region.getLowerCaseName()) == region) {
+			spatialIndex.update(region);
+		}
+	}
+
+	/**
+	 * Get the limit groups from the config.
+	 * @return The compiled limit groups, in the order of the config
+	 */
+	@Override
+	public List<LimitGroup> getLimitGroups() {
+		return limitGroups;
+	}
+
+	/**
+	 * Get the number of regions a player owns that count for a limit group.
+	 * @param player The UUID of the player
+	 * @param group  The limit group
+	 * @param type   The type of regions to count, null to count all regions
+	 * @return The number of regions the player owns in the limit group
+	 */
+	@Override
+	public int getLimitGroupCount(UUID player, LimitGroup group, RegionType type) {
+		if(player == null) {
+			return 0;
+		}
+		int[] counts = limitCounts.get(player);
+		if(counts == null) {
+			counts = countLimitGroups(player);
+			limitCounts.put(player, counts);
+		}
+		int offset = 0;
+		if(type == RegionType.RENT) {
+			offset = 1;
+		} else if(type == RegionType.BUY) {
+			offset = 2;
+		}
+		return counts[group.getIndex() * 3 + offset];
+	}
+
+	/**
+	 * Count the regions of a player for all limit groups.
+	 * @param player The UUID of the player
+	 * @return Array with for each limit group the total number of regions, the number of rents and the number of buys
+	 */
+	private int[] countLimitGroups(UUID player) {
+		int[] result = new int[limitGroups.size() * 3];
+		for(GeneralRegion region : ownerIndex.getOwnedRegions(player)) {
+			if(!region.getBooleanSetting(COUNT_FOR_LIMITS)) {
+				continue;
+			}
+			int typeOffset = region.getType() == RegionType.RENT ? 1 : 2;
+			for(LimitGroup group : limitGroups) {
+				if(group.matches(region)) {
+					result[group.getIndex() * 3]++;
+					result[group.getIndex() * 3 + typeOffset]++;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Update the group index after the membership of a region changed.
+	 * @param group  The group that changed
+	 * @param region The region that has been added to or removed from the group
+	 */
+	@Override
+	public void updateGroupMembership(RegionGroup group, GeneralRegion region) {
+		if(groupIndex.update(group, region)) {
+			groupSettingsChanged(region, null);
+		}
+	}
+
+	/**
+	 * Update the group index after the membership of a group changed for all regions (worlds added or removed).
+	 * @param group The group that changed
+	 */
+	@Override
+	public void updateGroupMembership(RegionGroup group) {
+		for(GeneralRegion region : getRegionsRef()) {
+			if(groupIndex.update(group, region)) {
+				groupSettingsChanged(region, null);
+			}
+		}
+	}
+
+	/**
+	 * Handle a change of the group settings that apply to a region, because a setting of one of its groups
+	 * changed or because it joined or left a group.
+	 * @param region The region of which the group settings changed
+	 * @param path   The path of the setting that changed, or null if any setting might have changed
+	 */
+	private void groupSettingsChanged(GeneralRegion region, String path) {
+		if(path == null) {
+			region.invalidateSettingsCache();
+		} else {
+			region.invalidateSettingsCache(path);
+		}
+		if(region instanceof RentRegion rentRegion && (path == null || RegionSettingsCache.isRelated(path, EXPIRATION_WARNING_PROFILE))) {
+			scheduleExpirationWarnings(rentRegion);
+		}
+		if(path == null || isInactiveTimeSetting(path)) {
+			scheduleInactiveDeadline(region);
+		}
+		// Limit groups match regions by their groups
+		if(path == null || RegionSettingsCache.isRelated(path, COUNT_FOR_LIMITS)) {
+			limitCounts.remove(ownerIndex.getOwner(region));
+		}
+	}
+
+	/**
+	 * Check if a change of a setting could change the owner or landlord of a region.
+	 * @param path The path of the setting that changed
+	 * @return true if the owner index should be updated, otherwise false
+	 */
+	private static boolean isOwnerSetting(String path) {
+		return RegionSettingsCache.isRelated(path, "rent.renter")
+				|| RegionSettingsCache.isRelated(path, "buy.buyer")
+				|| RegionSettingsCache.isRelated(path, "general.landlord");
+	}
+
+	/**
+	 * Check if a change of a setting could change the time after which a region of an inactive player is unrented or sold.
+	 * @param path The path of the setting that changed
+	 * @return true if the inactivity deadline should be scheduled again, otherwise false
+	 */
+	private static boolean isInactiveTimeSetting(String path) {
+		return RegionSettingsCache.isRelated(path, INACTIVE_TIME_UNTIL_UNRENT) || RegionSettingsCache.isRelated(path, INACTIVE_TIME_UNTIL_SELL);
+	}
+
+	/**
+	 * Get the generation of the region settings, changes each time the default settings or the groups are loaded.
+	 * @return The current settings generation
+	 */
+	@Override
+	public long getSettingsGeneration() {
+		return settingsGeneration;
+	}
+
+	/**
+	 * Invalidate the resolved settings cached by all regions, only needed when the default settings or all groups changed.
+	 */
+	@Override
+	public void invalidateSettingsCaches() {
+		settingsGeneration++;
 	}
 
 	/**
@@ -385,8 +768,9 @@ public class FileManager extends Manager implements IFileManager {
 	public void addGroup(RegionGroup group) {
 		groups.put(group.getName().toLowerCase(), group);
 		String lowGroup = group.getName().toLowerCase();
-		groupsConfig.set(lowGroup + ".name", group.getName());
-		groupsConfig.set(lowGroup + ".priority", 0);
+		setGroupsConfig(lowGroup + ".name", group.getName());
+		setGroupsConfig(lowGroup + ".priority", 0);
+		updateGroupMembership(group);
 		saveGroupsIsRequired();
 	}
 
@@ -457,6 +841,8 @@ public class FileManager extends Manager implements IFileManager {
 			return event;
 		}
 
+		// Jobs queued before the region got deleted are not needed anymore, the jobs of unrenting or selling below still run
+		plugin.getSchematicJobQueue().cancel(region);
 		region.setDeleted();
 		if(region instanceof RentRegion && ((RentRegion)region).isRented()) {
 			((RentRegion)region).unRent(giveMoneyBack, null);
@@ -467,9 +853,9 @@ public class FileManager extends Manager implements IFileManager {
 		// Handle schematics
 		region.handleSchematicEvent(RegionEvent.DELETED);
 
-		// Delete the signs
+		// Delete the signs, changing the blocks can remove signs through physics so iterate over a copy
 		if(region.getWorld() != null) {
-			for(BlockPosition sign : region.getSignsFeature().signManager().allSignLocations()) {
+			for(BlockPosition sign : new ArrayList<>(region.getSignsFeature().signManager().allSignLocations())) {
 				sign.getBlock().setType(Material.AIR);
 			}
 		}
@@ -478,6 +864,17 @@ public class FileManager extends Manager implements IFileManager {
 		RegionGroup[] regionGroups = getGroups().toArray(new RegionGroup[0]);
 		for(RegionGroup group : regionGroups) {
 			group.removeMember(region);
+			group.regionRemoved(region);
+		}
+		groupIndex.removeRegion(region.getName());
+		limitCounts.remove(ownerIndex.getOwner(region));
+		ownerIndex.remove(region);
+		spatialIndex.remove(region);
+		inactiveDeadlines.remove(region);
+		dirtyRegions.remove(region);
+		if(region instanceof RentRegion rentRegion) {
+			rentExpirations.remove(rentRegion);
+			cancelExpirationWarnings(rentRegion);
 		}
 
 		region.resetRegionFlags();
@@ -486,19 +883,23 @@ public class FileManager extends Manager implements IFileManager {
 		buys.remove(name);
 		rents.remove(name);
 
-		// Remove file
-		File file = new File(plugin.getDataFolder() + File.separator + AreaShop.regionsFolder + File.separator + region.getLowerCaseName() + ".yml");
-		if(file.exists()) {
-			boolean deleted;
-			try {
-				deleted = file.delete();
-			} catch(Exception e) {
-				deleted = false;
+		// Remove from the store, a queued save of the region is cancelled
+		regionStore.deleteRegion(region);
+		if(journal != null) {
+			journal.regionDeleted(name);
+		}
+
+		// Remove the schematics of the region from the schematic store once its last jobs are done
+		Set<String> schematicNames = region.getSchematicNames();
+		plugin.getSchematicJobQueue().whenDone(region).thenRun(() -> {
+			// A region with the same name might have been added in the meantime
+			if(getRegion(name) != null) {
+				return;
 			}
-			if(!deleted) {
-				AreaShop.warn("File could not be deleted: " + file);
+			for(String schematicName : schematicNames) {
+				plugin.getWorldEditHandler().removeStoredSchematic(new File(getSchematicFolder() + File.separator + schematicName));
 			}
-		}
+		});
 
 		// Broadcast event
 		Bukkit.getPluginManager().callEvent(new DeletedRegionEvent(region));
@@ -512,23 +913,30 @@ public class FileManager extends Manager implements IFileManager {
 	@Override
 	public void removeGroup(RegionGroup group) {
 		groups.remove(group.getLowerCaseName());
-		groupsConfig.set(group.getLowerCaseName(), null);
+		setGroupsConfig(group.getLowerCaseName(), null);
+		regionStore.setGroupMembers(group.getLowerCaseName(), Collections.emptyList());
+		List<String> members = new ArrayList<>(groupIndex.getRegionNames(group));
+		groupIndex.removeGroup(group);
+		for(String member : members) {
+			GeneralRegion region = getRegion(member);
+			if(region != null) {
+				groupSettingsChanged(region, null);
+			}
+		}
 		saveGroupsIsRequired();
 	}
 
 	/**
 	 * Update all signs that need periodic updating.
+	 * Only the text of signs that show time dependent information and are in a loaded chunk is updated,
+	 * the set of those signs is maintained when signs are updated and chunks unload.
 	 */
 	@Override
 	public void performPeriodicSignUpdate() {
 		Do.forAll(
 			plugin.getConfig().getInt("signs.regionsPerTick"),
-			getRentsRef(),
-			region -> {
-				if(region.needsPeriodicUpdate()) {
-					region.update();
-				}
-			}
+			new ArrayList<>(signManager.periodicSigns()),
+			RegionSign::update
 		);
 	}
 
@@ -537,10 +945,20 @@ public class FileManager extends Manager implements IFileManager {
 	 */
 	@Override
 	public void sendRentExpireWarnings() {
+		// Send all warnings until the next time this task runs
+		long sendUntil = Calendar.getInstance().getTimeInMillis() + (plugin.getConfig().getInt("expireWarning.delay") * 60 * 1000);
+		List<ExpirationWarning> due = expirationWarnings.pollDue(sendUntil);
+		warningsSentUntil = sendUntil;
+		for(ExpirationWarning warning : due) {
+			List<ExpirationWarning> warnings = scheduledWarnings.get(warning.region());
+			if(warnings != null && warnings.remove(warning) && warnings.isEmpty()) {
+				scheduledWarnings.remove(warning.region());
+			}
+		}
 		Do.forAll(
 			plugin.getConfig().getInt("expireWarning.regionsPerTick"),
-			getRentsRef(),
-			RentRegion::sendExpirationWarnings
+			due,
+			warning -> warning.region().sendExpirationWarning(warning.key())
 		);
 	}
 
@@ -619,11 +1037,7 @@ public class FileManager extends Manager implements IFileManager {
 	public void saveGroupsNow() {
 		AreaShop.debug("saveGroupsNow() done");
 		saveGroupsRequired = false;
-		try {
-			groupsConfig.save(groupsPath);
-		} catch(IOException e) {
-			AreaShop.warn("Groups file could not be saved: " + groupsPath);
-		}
+		regionStore.saveGroups(groupsConfig);
 	}
 
 
@@ -632,20 +1046,122 @@ public class FileManager extends Manager implements IFileManager {
 	 */
 	@Override
 	public void saveRequiredFiles() {
+		if(journal != null) {
+			this.saveWorldGuardRegions();
+			// Changes are durable in the journal, regions and groups are only saved when compacting it
+			if(savingDirtyRegions || compactionFinishing || !journal.isCompactionDue()) {
+				return;
+			}
+			journal.rotate();
+		}
 		if(isSaveGroupsRequired()) {
 			saveGroupsNow();
 		}
-		this.saveWorldGuardRegions();
+		if(journal == null) {
+			this.saveWorldGuardRegions();
+		}
 
-		Do.forAll(
-			plugin.getConfig().getInt("saving.regionsPerTick"),
-			getRegionsRef(),
-			region -> {
-				if(region.isSaveRequired()) {
-					region.saveNow();
-				}
+		// Save the changed regions spread over ticks, limited by time per tick
+		if(savingDirtyRegions) {
+			return;
+		}
+		if(dirtyRegions.isEmpty()) {
+			finishJournalCompaction();
+			return;
+		}
+		savingDirtyRegions = true;
+		long budget = Math.max(1, plugin.getConfig().getLong("saving.millisPerTick")) * 1000000L;
+		Do.syncTimerLater(1, 1, () -> {
+			savingDirtyRegions = saveDirtyRegions(budget);
+			if(!savingDirtyRegions) {
+				finishJournalCompaction();
 			}
-		);
+			return savingDirtyRegions;
+		});
+	}
+
+	/**
+	 * Remove the compacted journal file once all changed regions have been written.
+	 * The store deletes it from its background writer after the queued writes, so the main thread does not wait.
+	 */
+	private void finishJournalCompaction() {
+		if(journal == null) {
+			return;
+		}
+		RegionJournal compacted = journal;
+		compactionFinishing = true;
+		regionStore.afterQueuedWrites(() -> {
+			compacted.deleteRotated();
+			compactionFinishing = false;
+		});
+	}
+
+	/**
+	 * Save changed regions until the time budget is used up, at least one region is saved.
+	 * @param budget The time that may be spent in nanoseconds
+	 * @return true if there are changed regions left, otherwise false
+	 */
+	private boolean saveDirtyRegions(long budget) {
+		long start = System.nanoTime();
+		Iterator<GeneralRegion> iterator = dirtyRegions.iterator();
+		while(iterator.hasNext()) {
+			GeneralRegion region = iterator.next();
+			iterator.remove();
+			if(region.isSaveRequired() && regions.get(region.getLowerCaseName()) == region) {
+				region.saveNow();
+			}
+			if(System.nanoTime() - start >= budget) {
+				break;
+			}
+		}
+		return !dirtyRegions.isEmpty();
+	}
+
+	/**
+	 * Mark that a region has changed and should be saved by the save task.
+	 * @param region The region that changed
+	 */
+	@Override
+	public void regionSaveRequired(GeneralRegion region) {
+		dirtyRegions.add(region);
+	}
+
+	/**
+	 * Handle a changed setting of a region: update what depends on it and add it to the journal, if enabled.
+	 * @param region The region that changed
+	 * @param path   The path of the setting
+	 * @param value  The new value, null if the setting has been removed
+	 */
+	@Override
+	public void regionSettingChanged(GeneralRegion region, String path, Object value) {
+		// Compiled sign templates are shared, so a changed sign profile needs to invalidate all of them
+		if(RegionSettingsCache.isRelated(path, "general.signProfile")) {
+			signManager.clearTemplates();
+		}
+		if(region instanceof RentRegion rentRegion && RegionSettingsCache.isRelated(path, EXPIRATION_WARNING_PROFILE)) {
+			updateExpirationWarnings(rentRegion);
+		}
+		if(isInactiveTimeSetting(path)) {
+			updateInactiveDeadline(region);
+		}
+		if(isOwnerSetting(path)) {
+			updateOwnerIndex(region);
+		} else if(RegionSettingsCache.isRelated(path, COUNT_FOR_LIMITS) && regions.get(region.getLowerCaseName()) == region) {
+			limitCounts.remove(ownerIndex.getOwner(region));
+		}
+		// Regions that are not added yet are added to the journal completely by addRegion()
+		if(journal != null && regions.get(region.getLowerCaseName()) == region) {
+			journal.regionSet(region.getLowerCaseName(), path, value);
+		}
+	}
+
+	/**
+	 * Get the number of changed regions waiting to be saved.
+	 * @return The number of regions waiting to be saved
+	 */
+	@Override
+	public int getDirtyRegionCount() {
+		return dirtyRegions.size();
 	}
 
 	/**
@@ -656,12 +1172,125 @@ public class FileManager extends Manager implements IFileManager {
 		if(isSaveGroupsRequired()) {
 			saveGroupsNow();
 		}
-		for(GeneralRegion region : getRegionsRef()) {
-			if(region.isSaveRequired()) {
+		for(GeneralRegion region : dirtyRegions) {
+			if(region.isSaveRequired() && regions.get(region.getLowerCaseName()) == region) {
 				region.saveNow();
 			}
 		}
+		dirtyRegions.clear();
+		// Wait for the regions to be written, they might be read again right after this
+		if(regionStore != null) {
+			regionStore.flush(SAVE_DRAIN_TIMEOUT);
+		}
+		// Everything is saved, so the journal is not needed anymore
+		if(journal != null) {
+			journal.clear();
+		}
 		this.saveWorldGuardRegions();
+		worldGuardSaver.drain(SAVE_DRAIN_TIMEOUT);
+	}
+
+	/**
+	 * Queue a region to be written to the region store in the background.
+	 * @param region The region to write
+	 */
+	@Override
+	public void storeRegion(GeneralRegion region) {
+		regionStore.saveRegion(region);
+	}
+
+	/**
+	 * Get the number of regions waiting to be written to the region store.
+	 * @return The number of regions waiting to be written
+	 */
+	@Override
+	public int getPendingRegionWrites() {
+		return regionStore == null ? 0 : regionStore.getPendingWrites();
+	}
+
+	/**
+	 * Get the type of the region store that is used.
+	 * @return The type of the region store, as used in the 'storage.type' setting
+	 */
+	@Override
+	public String getRegionStoreType() {
+		return regionStore == null ? null : regionStore.getType();
+	}
+
+	/**
+	 * Copy all regions and groups to another region store, existing regions in the target store are removed.
+	 * The current store stays in use until the 'storage.type' setting is changed and the plugin is reloaded.
+	 * @param type The type of the target store
+	 * @return The number of regions that have been copied, or -1 if the target store could not be opened
+	 */
+	@Override
+	public int migrateRegionStore(String type) {
+		RegionStore target = createRegionStore(type);
+		if(target == null) {
+			return -1;
+		}
+		for(RegionStore.StoredRegion stored : target.loadRegions()) {
+			target.delete(stored);
+		}
+		Collection<GeneralRegion> toCopy = getRegionsRef();
+		for(GeneralRegion region : toCopy) {
+			target.saveRegion(region);
+		}
+		if(groupsConfig != null) {
+			target.saveGroups(groupsConfig);
+		}
+		for(String groupName : target.loadGroupMembers().keySet()) {
+			target.setGroupMembers(groupName, Collections.emptyList());
+		}
+		for(RegionGroup group : getGroups()) {
+			target.setGroupMembers(group.getLowerCaseName(), group.getManualMembers());
+		}
+		target.close(SAVE_DRAIN_TIMEOUT);
+		AreaShop.info("Copied " + toCopy.size() + " regions from the " + regionStore.getType() + " store to the " + target.getType() + " store");
+		return toCopy.size();
+	}
+
+	/**
+	 * Open the region store configured by the 'storage.type' setting, the current store is kept if the type did not change.
+	 */
+	private void setupRegionStore() {
+		String type = getConfig().getString("storage.type");
+		if(regionStore != null && regionStore.getType().equalsIgnoreCase(type)) {
+			return;
+		}
+		RegionStore newStore = createRegionStore(type);
+		if(newStore == null) {
+			AreaShop.warn("Region storage '" + type + "' is not available, using " + YamlRegionStore.TYPE + " instead");
+			if(regionStore != null && YamlRegionStore.TYPE.equals(regionStore.getType())) {
+				return;
+			}
+			newStore = createRegionStore(YamlRegionStore.TYPE);
+		}
+		if(regionStore != null) {
+			regionStore.close(SAVE_DRAIN_TIMEOUT);
+		}
+		regionStore = newStore;
+		AreaShop.debug("Using region store: " + regionStore.getType());
+	}
+
+	/**
+	 * Create a region store.
+	 * @param type The type of the store
+	 * @return The store, or null if the type is unknown or the store could not be opened
+	 */
+	private RegionStore createRegionStore(String type) {
+		if(YamlRegionStore.TYPE.equalsIgnoreCase(type)) {
+			return new YamlRegionStore(plugin, new File(regionsPath), new File(groupsPath), new File(plugin.getDataFolder(), AreaShop.groupMembersFile));
+		}
+		if(SqliteRegionStore.TYPE.equalsIgnoreCase(type)) {
+			File databaseFile = new File(plugin.getDataFolder(), AreaShop.databaseFile);
+			try {
+				return new SqliteRegionStore(databaseFile);
+			} catch(SQLException e) {
+				AreaShop.error("Could not open the region database " + databaseFile.getAbsolutePath() + ":", e);
+			}
+		}
+		return null;
 	}
 
 	/**
@@ -675,21 +1304,25 @@ public class FileManager extends Manager implements IFileManager {
 
 	/**
 	 * Save all worldGuard regions that need saving.
+	 * The RegionManagers are looked up here, saving them happens in the background.
+	 * Worlds are marked as saved when they are handed over, worlds of which saving failed are marked again.
 	 */
 	@Override
 	public void saveWorldGuardRegions() {
-		for(String world : worldRegionsRequireSaving) {
+		worldRegionsRequireSaving.addAll(worldGuardSaver.takeFailed());
+		Iterator<String> iterator = worldRegionsRequireSaving.iterator();
+		while(iterator.hasNext()) {
+			String world = iterator.next();
 			World bukkitWorld = Bukkit.getWorld(world);
-			if(bukkitWorld != null) {
-				RegionManager manager = plugin.getRegionManager(bukkitWorld);
-				if(manager != null) {
-					try {
-						manager.saveChanges();
-					} catch(Exception e) {
-						AreaShop.warn("WorldGuard regions in world " + world + " could not be saved");
-					}
-				}
+			if(bukkitWorld == null) {
+				// Keep it marked, the world might be loaded later
+				continue;
 			}
+			RegionManager manager = plugin.getRegionManager(bukkitWorld);
+			if(manager != null) {
+				worldGuardSaver.save(world, manager);
+			}
+			iterator.remove();
 		}
 	}
 
@@ -724,10 +1357,19 @@ public class FileManager extends Manager implements IFileManager {
 	 */
 	@Override
 	public void checkRents() {
+		// Only regions of which the rent time passed are due, checkExpiration uses now > rentedUntil
+		List<RentRegion> due = rentExpirations.pollDue(Calendar.getInstance().getTimeInMillis() - 1);
+		if(due.isEmpty()) {
+			return;
+		}
 		Do.forAll(
 			plugin.getConfig().getInt("expiration.regionsPerTick"),
-			getRentsRef(),
-			RentRegion::checkExpiration
+			due,
+			region -> {
+				region.checkExpiration();
+				// Extended or not unrented (cancelled by an event), schedule again
+				updateRentExpiration(region);
+			}
 		);
 	}
 
@@ -736,10 +1378,19 @@ public class FileManager extends Manager implements IFileManager {
 	 */
 	@Override
 	public void checkForInactiveRegions() {
+		// Only regions of which the deadline passed are due, checkInactive uses now > deadline
+		List<GeneralRegion> due = inactiveDeadlines.pollDue(Calendar.getInstance().getTimeInMillis() - 1);
+		if(due.isEmpty()) {
+			return;
+		}
 		Do.forAll(
 			plugin.getConfig().getInt("inactive.regionsPerTick"),
-			getRegionsRef(),
-			GeneralRegion::checkInactive
+			due,
+			region -> {
+				region.checkInactive();
+				// Owner is online, excluded or the unrent/sell got cancelled, schedule again with the current last active time
+				updateInactiveDeadline(region);
+			}
 		);
 	}
 
@@ -791,6 +1442,9 @@ public class FileManager extends Manager implements IFileManager {
 	public boolean loadFiles(boolean thisTick) {
 		// Load config.yml + add defaults from .jar
 		boolean result = loadConfigFile();
+		// Open the store with the region and group data
+		setupRegionStore();
+		setupJournal();
 		// Load default.yml + add defaults from .jar
 		result &= loadDefaultFile();
 		// Convert old formats to the latest (object saving to .yml saving)
@@ -802,6 +1456,7 @@ public class FileManager extends Manager implements IFileManager {
 			postUpdateFiles();
 			// Load groups.yml
 			result &= loadGroupsFile();
+			completeJournalReplay();
 		} else {
 			Do.sync(() -> {
 				// Load region files (regions folder)
@@ -810,6 +1465,7 @@ public class FileManager extends Manager implements IFileManager {
 				postUpdateFiles();
 				// Load groups.yml
 				loadGroupsFile();
+				completeJournalReplay();
 			});
 		}
 		return result;
@@ -853,6 +1509,7 @@ public class FileManager extends Manager implements IFileManager {
 		} catch(IOException e) {
 			result = false;
 		}
+		invalidateSettingsCaches();
 		return result;
 	}
 
@@ -908,6 +1565,8 @@ public class FileManager extends Manager implements IFileManager {
 			result = false;
 		}
 		Utils.initialize(config);
+		limitGroups = LimitGroup.compile(config.getConfigurationSection("limitGroups"));
+		limitCounts.clear();
 		return result;
 	}
 
@@ -918,23 +1577,44 @@ public class FileManager extends Manager implements IFileManager {
 	@Override
 	public boolean loadGroupsFile() {
 		boolean result = true;
-		File groupFile = new File(groupsPath);
-		if(groupFile.exists() && groupFile.isFile()) {
-			try(
-					InputStreamReader reader = new InputStreamReader(new FileInputStream(groupFile), StandardCharsets.UTF_8)
-			) {
-				groupsConfig = YamlConfiguration.loadConfiguration(reader);
-			} catch(IOException e) {
-				AreaShop.warn("Could not load groups.yml file: " + groupFile.getAbsolutePath());
-			}
-		}
+		groupsConfig = regionStore.loadGroups();
 		if(groupsConfig == null) {
 			groupsConfig = new YamlConfiguration();
 		}
+		if(journalReplay != null) {
+			journalReplay.applyToGroups(groupsConfig);
+		}
+		loadedGroupMembers = regionStore.loadGroupMembers();
+		boolean converted = false;
 		for(String groupName : groupsConfig.getKeys(false)) {
+			// Members used to be stored as a list in groups.yml, move them to the member storage of the region store
+			if(groupsConfig.isList(groupName + ".regions")) {
+				Set<String> members = loadedGroupMembers.computeIfAbsent(groupName, key -> new HashSet<>());
+				members.addAll(groupsConfig.getStringList(groupName + ".regions"));
+				regionStore.setGroupMembers(groupName, members);
+				groupsConfig.set(groupName + ".regions", null);
+				converted = true;
+			}
 			RegionGroup group = regionFactory.createRegionGroup(groupName);
 			groups.put(groupName, group);
 		}
+		loadedGroupMembers = null;
+		if(converted) {
+			// The members should be written before groups.yml without them replaces the old file
+			regionStore.flush(SAVE_DRAIN_TIMEOUT);
+			AreaShop.info("Moved the group members from groups.yml to the " + regionStore.getType() + " store");
+			saveGroupsNow();
+		}
+		groupIndex.rebuild(getGroups(), getRegionsRef());
+		invalidateSettingsCaches();
+		// The regions have been scheduled before their groups were known
+		for(RentRegion region : getRentsRef()) {
+			scheduleExpirationWarnings(region);
+		}
+		for(GeneralRegion region : getRegionsRef()) {
+			scheduleInactiveDeadline(region);
+		}
+		limitCounts.clear();
 		return result;
 	}
 
@@ -944,81 +1624,75 @@ public class FileManager extends Manager implements IFileManager {
 	@Override
 	public void loadRegionFiles() {
 		regions.clear();
-		final File file = new File(regionsPath);
-		if(!file.exists()) {
-			if(!file.mkdirs()) {
-				AreaShop.warn("Could not create region files directory: " + file.getAbsolutePath());
-				return;
-			}
-			plugin.setReady(true);
-		} else if(file.isDirectory()) {
-			loadRegionFilesNow();
-		}
+		ownerIndex.clear();
+		limitCounts.clear();
+		spatialIndex.clear();
+		rentExpirations.clear();
+		expirationWarnings.clear();
+		scheduledWarnings.clear();
+		inactiveDeadlines.clear();
+		dirtyRegions.clear();
+		loadRegionFilesNow();
 	}
 
 	private void loadRegionFilesNow() {
-		File file = new File(regionsPath);
-		File[] regionFiles = file.listFiles();
-		if(regionFiles == null) {
-			plugin.setReady(true);
-			return;
+		// Read and parse the regions from the store, regions are built on the main thread afterwards
+		long startTime = System.currentTimeMillis();
+		List<RegionStore.StoredRegion> storedRegions = regionStore.loadRegions();
+		if(journalReplay != null) {
+			storedRegions = replayJournal(storedRegions);
 		}
+		long parsedTime = System.currentTimeMillis();
 
 		List<String> noRegionType = new ArrayList<>();
 		List<String> noNamePaths = new ArrayList<>();
 		List<GeneralRegion> noWorld = new ArrayList<>();
-		Map<GeneralRegion, File> noRegion = new HashMap<>();
+		Map<GeneralRegion, RegionStore.StoredRegion> noRegion = new HashMap<>();
 		List<GeneralRegion> incorrectDuration = new ArrayList<>();
-		for(File regionFile : regionFiles) {
-			if(regionFile.exists() && regionFile.isFile() && !regionFile.isHidden()) {
-
-				// Load the region file from disk in UTF8 mode
-				YamlConfiguration regionConfig;
-				try(
-						InputStreamReader reader = new InputStreamReader(new FileInputStream(regionFile), StandardCharsets.UTF_8)
-				) {
-					regionConfig = YamlConfiguration.loadConfiguration(reader);
-					if(regionConfig.getKeys(false).isEmpty()) {
-						AreaShop.warn("Region file '" + regionFile.getName() + "' is empty, check for errors in the log.");
-						regionFile.delete();
-						continue;
-					}
-				} catch(IOException e) {
-					AreaShop.warn("Something went wrong reading region file: " + regionFile.getAbsolutePath());
-					continue;
-				}
+		for(RegionStore.StoredRegion storedRegion : storedRegions) {
+			YamlConfiguration regionConfig = storedRegion.config();
+			if(regionConfig == null) {
+				AreaShop.warn(storedRegion.error());
+				continue;
+			}
+			if(regionConfig.getKeys(false).isEmpty()) {
+				AreaShop.warn("Region file '" + storedRegion.description() + "' is empty, check for errors in the log.");
+				deleteStoredRegion(storedRegion);
+				continue;
+			}
 
-				// Construct the correct type of region
-				String type = regionConfig.getString("general.type");
-				GeneralRegion region;
-				if(RegionType.RENT.getValue().equals(type)) {
-					region = regionFactory.createRentRegion(regionConfig);
-				} else if(RegionType.BUY.getValue().equals(type)) {
-					region = regionFactory.createBuyRegion(regionConfig);
-				} else {
-					noRegionType.add(regionFile.getPath());
-					continue;
-				}
+			// Construct the correct type of region
+			String type = regionConfig.getString("general.type");
+			GeneralRegion region;
+			if(RegionType.RENT.getValue().equals(type)) {
+				region = regionFactory.createRentRegion(regionConfig);
+			} else if(RegionType.BUY.getValue().equals(type)) {
+				region = regionFactory.createBuyRegion(regionConfig);
+			} else {
+				noRegionType.add(storedRegion.description());
+				continue;
+			}
 
-				// Check consistency
-				boolean added = false;
-				if(region.getName() == null) {
-					noNamePaths.add(regionFile.getPath());
-				} else if(region.getWorld() == null) {
-					noWorld.add(region);
-				} else if(region.getRegion() == null) {
-					noRegion.put(region, regionFile);
-				} else if(region instanceof RentRegion && !Utils.checkTimeFormat(((RentRegion)region).getDurationString())) {
-					incorrectDuration.add(region);
-				} else {
-					added = true;
-					addRegionNoSave(region);
-				}
-				if(!added) {
-					region.destroy();
-				}
+			// Check consistency
+			boolean added = false;
+			if(region.getName() == null) {
+				noNamePaths.add(storedRegion.description());
+			} else if(region.getWorld() == null) {
+				noWorld.add(region);
+			} else if(region.getRegion() == null) {
+				noRegion.put(region, storedRegion);
+			} else if(region instanceof RentRegion && !Utils.checkTimeFormat(((RentRegion)region).getDurationString())) {
+				incorrectDuration.add(region);
+			} else {
+				added = true;
+				addRegionNoSave(region);
+			}
+			if(!added) {
+				region.destroy();
 			}
 		}
+		long builtTime = System.currentTimeMillis();
+		AreaShop.info("Loaded " + regions.size() + " regions from " + storedRegions.size() + " " + regionStore.getType() + " entries in " + (builtTime - startTime) + "ms (parsing: " + (parsedTime - startTime) + "ms, building: " + (builtTime - parsedTime) + "ms)");
 
 		// All files are loaded, print problems to the console
 		if(!noRegionType.isEmpty()) {
@@ -1031,9 +1705,9 @@ public class FileManager extends Manager implements IFileManager {
 
 		if(!noRegion.isEmpty()) {
 			List<String> noRegionNames = new ArrayList<>();
-			for(Map.Entry<GeneralRegion, File> regionMap : noRegion.entrySet()) {
+			for(Map.Entry<GeneralRegion, RegionStore.StoredRegion> regionMap : noRegion.entrySet()) {
 				noRegionNames.add(regionMap.getKey().getName());
-				regionMap.getValue().delete();
+				deleteStoredRegion(regionMap.getValue());
 			}
 			AreaShop.warn("AreaShop regions that are missing their WorldGuard region are now being deleted: " + Utils.createCommaSeparatedList(noRegionNames));
 		}
@@ -1066,9 +1740,106 @@ public class FileManager extends Manager implements IFileManager {
 			}
 			AreaShop.warn("The following regions have an incorrect time format as duration: " + Utils.createCommaSeparatedList(incorrectDurationNames));
 		}
+		schedulePeriodicSigns();
 		plugin.setReady(true);
 	}
 
+	/**
+	 * Apply the changes left behind in the journal to the stored regions.
+	 * @param storedRegions The regions read from the region store
+	 * @return The regions with the changes applied, including regions that have only been added to the journal
+	 */
+	private List<RegionStore.StoredRegion> replayJournal(List<RegionStore.StoredRegion> storedRegions) {
+		List<RegionStore.StoredRegion> result = new ArrayList<>(storedRegions.size());
+		for(RegionStore.StoredRegion stored : storedRegions) {
+			YamlConfiguration config = stored.config();
+			String name = config == null ? null : config.getString("general.name");
+			if(name == null || !journalReplay.hasRegion(name)) {
+				result.add(stored);
+				continue;
+			}
+			YamlConfiguration replayed = journalReplay.applyToRegion(name, config);
+			if(replayed == null) {
+				// Deleted after it has been saved
+				regionStore.delete(stored);
+			} else {
+				result.add(new RegionStore.StoredRegion(stored.id(), stored.description(), replayed, null));
+			}
+		}
+		for(Map.Entry<String, YamlConfiguration> added : journalReplay.getAddedRegions().entrySet()) {
+			result.add(new RegionStore.StoredRegion(null, "region " + added.getKey() + " in the journal", added.getValue(), null));
+		}
+		return result;
+	}
+
+	/**
+	 * Delete a region that has been read from the region store, regions only read from the journal are skipped.
+	 * @param stored The region to delete
+	 */
+	private void deleteStoredRegion(RegionStore.StoredRegion stored) {
+		if(stored.id() != null) {
+			regionStore.delete(stored);
+		}
+	}
+
+	/**
+	 * Read the journal files left behind by the previous run, or close the journal when it has been disabled.
+	 * Everything has been saved before loading, so an open journal does not contain changes that need to be replayed.
+	 */
+	private void setupJournal() {
+		File journalFile = new File(plugin.getDataFolder(), AreaShop.journalFile);
+		if(journal == null) {
+			journalReplay = RegionJournal.read(journalFile);
+		} else if(!getConfig().getBoolean("journal.enabled")) {
+			journal.close();
+			journal = null;
+			RegionJournal.delete(journalFile);
+		}
+	}
+
+	/**
+	 * Save the regions and groups changed by the replayed journal and open the journal if it is enabled.
+	 */
+	private void completeJournalReplay() {
+		File journalFile = new File(plugin.getDataFolder(), AreaShop.journalFile);
+		if(journalReplay != null) {
+			if(!journalReplay.isEmpty()) {
+				for(String name : journalReplay.getRegionNames()) {
+					GeneralRegion region = getRegion(name);
+					if(region != null) {
+						region.saveNow();
+					}
+				}
+				if(journalReplay.hasGroupChanges()) {
+					saveGroupsNow();
+				}
+				regionStore.flush(SAVE_DRAIN_TIMEOUT);
+				AreaShop.info("Replayed " + journalReplay.size() + " changes from the journal");
+			}
+			RegionJournal.delete(journalFile);
+			journalReplay = null;
+		}
+		if(journal == null && getConfig().getBoolean("journal.enabled")) {
+			try {
+				journal = new RegionJournal(journalFile, getConfig().getLong("journal.syncInterval"), getConfig().getLong("journal.compactSize") * 1024);
+			} catch(IOException e) {
+				AreaShop.error("Could not open the journal " + journalFile.getAbsolutePath() + ", changes are saved to the regions directly:", e);
+			}
+		}
+	}
+
+	/**
+	 * Find the signs of rent regions that need periodic updates, later changes are tracked by the signs themselves.
+	 */
+	private void schedulePeriodicSigns() {
+		signManager.clearPeriodicSigns();
+		for(RentRegion rent : getRentsRef()) {
+			for(RegionSign sign : rent.getSignsFeature().signManager().allSigns()) {
+				sign.refreshPeriodicUpdate();
+			}
+		}
+	}
+
 
 	/**
 	 * Checks for old file formats and converts them to the latest format.
@@ -1399,21 +2170,74 @@ public class FileManager extends Manager implements IFileManager {
 	 */
 	@Override
 	public void setGroupSetting(RegionGroup group, String path, Object setting) {
-		groupsConfig.set(group.getName().toLowerCase() + "." + path, setting);
+		setGroupsConfig(group.getName().toLowerCase() + "." + path, setting);
+		// The priority decides which group wins for all settings
+		boolean priority = "priority".equals(path);
+		if(priority) {
+			groupIndex.sort();
+		}
+		if(RegionSettingsCache.isRelated(path, "general.signProfile")) {
+			signManager.clearTemplates();
+		}
+		for(String member : groupIndex.getRegionNames(group)) {
+			GeneralRegion region = getRegion(member);
+			if(region != null) {
+				groupSettingsChanged(region, priority ? null : path);
+			}
+		}
 	}
-}
-
-
-
-
-
-
-
-
-
-
-
 
+	/**
+	 * Get the stored members of a group, used when creating a group.
+	 * @param groupName The name of the group
+	 * @return The names of the regions that are member of the group
+	 */
+	@Override
+	public Collection<String> getStoredGroupMembers(String groupName) {
+		String lowGroup = groupName.toLowerCase();
+		if(loadedGroupMembers != null) {
+			return loadedGroupMembers.getOrDefault(lowGroup, Collections.emptySet());
+		}
+		// A group object created again for an existing group keeps the members
+		RegionGroup existing = groups.get(lowGroup);
+		if(existing != null) {
+			return existing.getManualMembers();
+		}
+		return Collections.emptySet();
+	}
 
+	/**
+	 * Queue saving a changed member of a group, only the change is written.
+	 * @param group  The group that changed
+	 * @param region The name of the region that has been added or removed
+	 * @param member true if the region has been added, false if it has been removed
+	 */
+	@Override
+	public void storeGroupMember(RegionGroup group, String region, boolean member) {
+		if(member) {
+			regionStore.addGroupMember(group.getLowerCaseName(), region);
+		} else {
+			regionStore.removeGroupMember(group.getLowerCaseName(), region);
+		}
+	}
 
+	/**
+	 * Set a value in the groups config and add the change to the journal.
+	 * @param path  The path to set, starting with the lowercase group name
+	 * @param value The value to set, null to remove it
+	 */
+	private void setGroupsConfig(String path, Object value) {
+		groupsConfig.set(path, value);
+		if(journal != null) {
+			journal.groupSet(path, value);
+		}
+	}
 
+	/**
+	 * Expiration warning of a region that still has to be sent.
+	 * @param region The region to send the warning for
+	 * @param key    The key of the warning in the expiration warning profile
+	 */
+	private record ExpirationWarning(RentRegion region, String key) {
+	}
+}
@@ -0,0 +1,264 @@
+package me.wiefferink.areashop.managers;
+
+import me.wiefferink.areashop.AreaShop;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Stores the members of the groups as a log of additions and removals, so changing a member only appends a line.
+ * Lines are appended by a background thread, when the log gets a lot longer than the number of members it is
+ * rewritten with only the current members.
+ * Format: '+group\tregion' adds a member, '-group\tregion' removes a member, '=group' removes all members of a group.
+ */
+public class GroupMemberLog {
+
+	// The log is only rewritten when it has more lines than this
+	private static final int COMPACT_MIN_LINES = 1000;
+
+	private final File file;
+	private final ExecutorService executor;
+	// Lines that have not been written yet, in order
+	private final Queue<String> pending = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean writeScheduled = new AtomicBoolean();
+	// Members as written to the log, only used while holding the lock of this object
+	private final Map<String, Set<String>> members = new HashMap<>();
+	private int memberCount = 0;
+	private int lines = 0;
+
+	/**
+	 * Constructor.
+	 * @param file The log file
+	 */
+	public GroupMemberLog(@Nonnull File file) {
+		this.file = file;
+		executor = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "AreaShop group member writer");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Read the members of all groups from the log, changes that are queued are written first.
+	 * @return Modifiable map with the members by lowercase group name
+	 */
+	@Nonnull
+	public synchronized Map<String, Set<String>> load() {
+		write();
+		members.clear();
+		memberCount = 0;
+		lines = 0;
+		if(file.isFile()) {
+			try {
+				String content = Files.readString(file.toPath(), StandardCharsets.UTF_8);
+				int start = 0;
+				int end;
+				// A last line without line ending has only been written partially
+				while((end = content.indexOf('\n', start)) != -1) {
+					apply(content.substring(start, end));
+					start = end + 1;
+				}
+				// Rewrite the log so new lines are not appended to the partial line
+				if(start < content.length()) {
+					compact();
+				}
+			} catch(IOException e) {
+				AreaShop.warn("Could not read the group members from " + file.getAbsolutePath() + ": " + e.getMessage());
+			}
+		}
+		Map<String, Set<String>> result = new HashMap<>();
+		for(Map.Entry<String, Set<String>> group : members.entrySet()) {
+			result.put(group.getKey(), new LinkedHashSet<>(group.getValue()));
+		}
+		return result;
+	}
+
+	/**
+	 * Queue adding a member to a group.
+	 * @param group  The lowercase name of the group
+	 * @param region The name of the region
+	 */
+	public void add(@Nonnull String group, @Nonnull String region) {
+		queue("+" + group + "\t" + region);
+	}
+
+	/**
+	 * Queue removing a member from a group.
+	 * @param group  The lowercase name of the group
+	 * @param region The name of the region
+	 */
+	public void remove(@Nonnull String group, @Nonnull String region) {
+		queue("-" + group + "\t" + region);
+	}
+
+	/**
+	 * Queue replacing all members of a group.
+	 * @param group   The lowercase name of the group
+	 * @param regions The names of the regions, empty to remove all members
+	 */
+	public void set(@Nonnull String group, @Nonnull Collection<String> regions) {
+		StringBuilder change = new StringBuilder("=").append(group);
+		for(String region : regions) {
+			change.append("\n+").append(group).append('\t').append(region);
+		}
+		queue(change.toString());
+	}
+
+	/**
+	 * Get the number of changes waiting to be written.
+	 * @return The number of changes waiting to be written
+	 */
+	public int getPendingCount() {
+		return pending.size();
+	}
+
+	/**
+	 * Wait until all queued changes have been written.
+	 * When the wait times out, the remaining changes are written on the calling thread.
+	 * @param timeout The maximum time to wait in milliseconds
+	 */
+	public void flush(long timeout) {
+		if(pending.isEmpty()) {
+			return;
+		}
+		Future<?> barrier = executor.submit(() -> {});
+		try {
+			barrier.get(timeout, TimeUnit.MILLISECONDS);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch(ExecutionException | TimeoutException e) {
+			AreaShop.warn("Writing group members in the background did not finish in time, writing the remaining " + pending.size() + " changes now");
+		}
+		write();
+	}
+
+	/**
+	 * Run a callback on the background thread once all changes queued before this call have been written.
+	 * @param callback The callback to run
+	 */
+	public void afterQueued(@Nonnull Runnable callback) {
+		executor.execute(callback);
+	}
+
+	/**
+	 * Write all queued changes and stop the background thread.
+	 * @param timeout The maximum time to wait for the background thread in milliseconds
+	 */
+	public void close(long timeout) {
+		flush(timeout);
+		executor.shutdown();
+	}
+
+	/**
+	 * Queue lines to be appended.
+	 * @param change One or more lines without trailing line ending
+	 */
+	private void queue(String change) {
+		pending.add(change);
+		if(writeScheduled.compareAndSet(false, true)) {
+			executor.execute(this::write);
+		}
+	}
+
+	/**
+	 * Append the queued lines to the log, and rewrite the log if it got too long.
+	 */
+	private synchronized void write() {
+		writeScheduled.set(false);
+		StringBuilder content = new StringBuilder();
+		String change;
+		while((change = pending.poll()) != null) {
+			content.append(change).append('\n');
+		}
+		if(content.length() == 0) {
+			return;
+		}
+		int start = 0;
+		int end;
+		while((end = content.indexOf("\n", start)) != -1) {
+			apply(content.substring(start, end));
+			start = end + 1;
+		}
+		try {
+			if(lines > Math.max(COMPACT_MIN_LINES, memberCount * 2)) {
+				compact();
+			} else {
+				Files.writeString(file.toPath(), content, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+			}
+		} catch(IOException e) {
+			AreaShop.warn("Could not save the group members to " + file.getAbsolutePath() + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Rewrite the log with only the current members.
+	 * @throws IOException When writing the log failed
+	 */
+	private void compact() throws IOException {
+		StringBuilder content = new StringBuilder();
+		for(Map.Entry<String, Set<String>> group : members.entrySet()) {
+			for(String region : group.getValue()) {
+				content.append('+').append(group.getKey()).append('\t').append(region).append('\n');
+			}
+		}
+		RegionFileSaver.writeAtomically(file, content.toString());
+		lines = memberCount;
+	}
+
+	/**
+	 * Apply a line of the log to the members.
+	 * @param line The line to apply
+	 */
+	private void apply(String line) {
+		lines++;
+		if(line.isEmpty()) {
+			return;
+		}
+		char type = line.charAt(0);
+		if(type == '=') {
+			Set<String> removed = members.remove(line.substring(1));
+			if(removed != null) {
+				memberCount -= removed.size();
+			}
+			return;
+		}
+		int separator = line.indexOf('\t');
+		if(separator == -1) {
+			return;
+		}
+		String group = line.substring(1, separator);
+		String region = line.substring(separator + 1);
+		if(type == '+') {
+			if(members.computeIfAbsent(group, key -> new LinkedHashSet<>()).add(region)) {
+				memberCount++;
+			}
+		} else if(type == '-') {
+			Set<String> groupMembers = members.get(group);
+			if(groupMembers != null && groupMembers.remove(region)) {
+				memberCount--;
+				if(groupMembers.isEmpty()) {
+					members.remove(group);
+				}
+			}
+		}
+	}
+}
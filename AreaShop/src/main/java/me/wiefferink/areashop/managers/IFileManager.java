@@ -5,16 +5,20 @@ import me.wiefferink.areashop.events.ask.AddingRegionEvent;
 import me.wiefferink.areashop.events.ask.DeletingRegionEvent;
 import me.wiefferink.areashop.regions.BuyRegion;
 import me.wiefferink.areashop.regions.GeneralRegion;
+import me.wiefferink.areashop.regions.LimitGroup;
 import me.wiefferink.areashop.regions.RegionGroup;
 import me.wiefferink.areashop.regions.RentRegion;
 import org.bukkit.World;
 import org.bukkit.command.CommandSender;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.util.Vector;
 
 import javax.annotation.Nullable;
 import java.util.Collection;
 import java.util.List;
+import java.util.Set;
+import java.util.UUID;
 
 public interface IFileManager {
 
@@ -178,6 +182,112 @@ public interface IFileManager {
      */
     void markGroupsAutoDirty();
 
+    /**
+     * Update the inactivity index after the last active time of a region changed.
+     *
+     * @param region The region that changed
+     */
+    void updateInactiveDeadline(GeneralRegion region);
+
+    /**
+     * Update the expiration queue after the renter or rented until time of a region changed.
+     *
+     * @param region The region that changed
+     */
+    void updateRentExpiration(RentRegion region);
+
+    /**
+     * Get the regions of which the bounding box intersects with a box.
+     *
+     * @param world The name of the world
+     * @param min   The minimum corner of the box
+     * @param max   The maximum corner of the box
+     * @return List with the regions intersecting with the box
+     */
+    List<GeneralRegion> getRegionsIntersecting(String world, Vector min, Vector max);
+
+    /**
+     * Update the spatial index after the bounds of a region might have changed.
+     *
+     * @param region The region to update
+     */
+    void updateSpatialIndex(GeneralRegion region);
+
+    /**
+     * Get the limit groups from the config.
+     *
+     * @return The compiled limit groups, in the order of the config
+     */
+    List<LimitGroup> getLimitGroups();
+
+    /**
+     * Get the number of regions a player owns that count for a limit group.
+     *
+     * @param player The UUID of the player
+     * @param group  The limit group
+     * @param type   The type of regions to count, null to count all regions
+     * @return The number of regions the player owns in the limit group
+     */
+    int getLimitGroupCount(UUID player, LimitGroup group, GeneralRegion.RegionType type);
+
+    /**
+     * Get the groups a region is member of.
+     *
+     * @param region The region to get the groups for
+     * @return Unmodifiable list of groups, sorted by priority (highest first)
+     */
+    List<RegionGroup> getGroupsOf(GeneralRegion region);
+
+    /**
+     * Get the regions a player owns (rented or bought).
+     *
+     * @param player The UUID of the player
+     * @return Unmodifiable set with the regions owned by the player
+     */
+    Set<GeneralRegion> getRegionsOwnedBy(UUID player);
+
+    /**
+     * Get the regions a player is landlord of.
+     *
+     * @param player The UUID of the player
+     * @return Unmodifiable set with the regions the player is landlord of
+     */
+    Set<GeneralRegion> getRegionsWithLandlord(UUID player);
+
+    /**
+     * Update the owner index after the owner or landlord of a region changed.
+     *
+     * @param region The region that changed
+     */
+    void updateOwnerIndex(GeneralRegion region);
+
+    /**
+     * Update the group index after the membership of a region changed.
+     *
+     * @param group  The group that changed
+     * @param region The region that has been added to or removed from the group
+     */
+    void updateGroupMembership(RegionGroup group, GeneralRegion region);
+
+    /**
+     * Update the group index after the membership of a group changed for all regions (worlds added or removed).
+     *
+     * @param group The group that changed
+     */
+    void updateGroupMembership(RegionGroup group);
+
+    /**
+     * Get the generation of the region settings, changes each time the default settings or the groups are loaded.
+     *
+     * @return The current settings generation, used by regions to invalidate their resolved settings
+     */
+    long getSettingsGeneration();
+
+    /**
+     * Invalidate the resolved settings cached by all regions.
+     */
+    void invalidateSettingsCaches();
+
     /**
      * Add a RegionGroup.
      *
@@ -291,6 +401,77 @@ public interface IFileManager {
      */
     void saveWorldGuardRegions();
 
+    /**
+     * Mark that a region has changed and should be saved by the save task.
+     *
+     * @param region The region that changed
+     */
+    void regionSaveRequired(GeneralRegion region);
+
+    /**
+     * Handle a changed setting of a region: update what depends on it and add it to the journal, if enabled.
+     *
+     * @param region The region that changed
+     * @param path   The path of the setting
+     * @param value  The new value, null if the setting has been removed
+     */
+    void regionSettingChanged(GeneralRegion region, String path, Object value);
+
+    /**
+     * Get the stored members of a group, used when creating a group.
+     *
+     * @param groupName The name of the group
+     * @return The names of the regions that are member of the group
+     */
+    Collection<String> getStoredGroupMembers(String groupName);
+
+    /**
+     * Queue saving a changed member of a group, only the change is written.
+     *
+     * @param group  The group that changed
+     * @param region The name of the region that has been added or removed
+     * @param member true if the region has been added, false if it has been removed
+     */
+    void storeGroupMember(RegionGroup group, String region, boolean member);
+
+    /**
+     * Get the number of changed regions waiting to be saved, for monitoring.
+     *
+     * @return The number of regions waiting to be saved
+     */
+    int getDirtyRegionCount();
+
+    /**
+     * Queue a region to be written to the region store in the background.
+     * Saves of the same region that have not been written yet are replaced.
+     *
+     * @param region The region to write
+     */
+    void storeRegion(GeneralRegion region);
+
+    /**
+     * Get the number of regions waiting to be written to the region store.
+     *
+     * @return The number of regions waiting to be written
+     */
+    int getPendingRegionWrites();
+
+    /**
+     * Get the type of the region store that is used.
+     *
+     * @return The type of the region store, as used in the 'storage.type' setting
+     */
+    String getRegionStoreType();
+
+    /**
+     * Copy all regions and groups to another region store, existing regions in the target store are removed.
+     * The current store stays in use until the 'storage.type' setting is changed and the plugin is reloaded.
+     *
+     * @param type The type of the target store
+     * @return The number of regions that have been copied, or -1 if the target store could not be opened
+     */
+    int migrateRegionStore(String type);
+
     /**
      * Get the folder the region files are located in.
      *
@@ -0,0 +1,127 @@
+package me.wiefferink.areashop.managers;
+
+import me.wiefferink.areashop.AreaShop;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads and parses region files on a bounded pool of worker threads.
+ * Parsing only touches the files and the parsed configs, building the regions is left to the main thread.
+ */
+public class RegionFileLoader {
+
+	// Log progress at most this often while waiting for the workers
+	private static final long PROGRESS_INTERVAL = 5000;
+
+	private final int threads;
+
+	/**
+	 * Constructor.
+	 * @param threads The number of worker threads to use, 0 or lower to use the number of available processors
+	 */
+	public RegionFileLoader(int threads) {
+		this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Read and parse region files in parallel, blocks until all files are parsed.
+	 * @param files The files to parse
+	 * @return The parse results in the same order as the files
+	 */
+	@Nonnull
+	public List<ParsedFile> parse(@Nonnull List<File> files) {
+		List<ParsedFile> result = new ArrayList<>(files.size());
+		if(files.isEmpty()) {
+			return result;
+		}
+		int poolSize = Math.max(1, Math.min(threads, files.size()));
+		AtomicInteger threadNumber = new AtomicInteger();
+		ThreadFactory threadFactory = runnable -> {
+			Thread thread = new Thread(runnable, "AreaShop region loader " + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+		ExecutorService executor = Executors.newFixedThreadPool(poolSize, threadFactory);
+		AtomicInteger parsed = new AtomicInteger();
+		try {
+			List<Future<ParsedFile>> futures = new ArrayList<>(files.size());
+			for(File file : files) {
+				futures.add(executor.submit(() -> {
+					try {
+						return parse(file);
+					} finally {
+						parsed.incrementAndGet();
+					}
+				}));
+			}
+			long nextProgress = System.currentTimeMillis() + PROGRESS_INTERVAL;
+			for(int i = 0; i < futures.size(); i++) {
+				while(true) {
+					try {
+						result.add(futures.get(i).get(Math.max(0, nextProgress - System.currentTimeMillis()), TimeUnit.MILLISECONDS));
+						break;
+					} catch(TimeoutException e) {
+						AreaShop.info("Loading region files: " + parsed.get() + "/" + files.size() + " parsed");
+						nextProgress = System.currentTimeMillis() + PROGRESS_INTERVAL;
+					} catch(ExecutionException e) {
+						// Only skip this file, the other files can still be loaded
+						File file = files.get(i);
+						result.add(new ParsedFile(file, null, "Something went wrong parsing region file: " + file.getAbsolutePath() + ", " + e.getCause()));
+						break;
+					}
+				}
+			}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			AreaShop.error("Interrupted while loading region files, only " + result.size() + " of " + files.size() + " files have been loaded");
+		} finally {
+			executor.shutdownNow();
+		}
+		return result;
+	}
+
+	/**
+	 * Read and parse a single region file.
+	 * @param file The file to parse
+	 * @return The parse result
+	 */
+	private static ParsedFile parse(File file) {
+		YamlConfiguration config = new YamlConfiguration();
+		try(Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+			config.load(reader);
+		} catch(IOException e) {
+			return new ParsedFile(file, null, "Something went wrong reading region file: " + file.getAbsolutePath());
+		} catch(InvalidConfigurationException e) {
+			// Same as YamlConfiguration.loadConfiguration, an invalid file results in an empty config
+			AreaShop.warn("Cannot load region file " + file.getAbsolutePath() + ": " + e.getMessage());
+		}
+		return new ParsedFile(file, config, null);
+	}
+
+	/**
+	 * Result of parsing a region file.
+	 * @param file   The file that has been parsed
+	 * @param config The parsed config, null if reading failed
+	 * @param error  The error to log if reading failed, otherwise null
+	 */
+	public record ParsedFile(File file, YamlConfiguration config, String error) {
+	}
+}
@@ -0,0 +1,171 @@
+package me.wiefferink.areashop.managers;
+
+import me.wiefferink.areashop.AreaShop;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Writes region files on a background thread.
+ * The content is serialized on the main thread and handed over as a string, saves of the same file that are
+ * still waiting are coalesced so only the latest content is written. Files are written to a temporary file
+ * first and then moved over the old file, so a crash never leaves a partially written region file behind.
+ */
+public class RegionFileSaver {
+
+	// Extension of the temporary files, these are skipped when loading the region files
+	public static final String TEMP_EXTENSION = ".tmp";
+	// Number of locks shared by the files, a power of two
+	private static final int LOCK_STRIPES = 64;
+
+	private final ExecutorService executor;
+	// Latest content waiting to be written, by file
+	private final Map<File, String> pending = new ConcurrentHashMap<>();
+	// Locks shared by the files by hash, held while taking the content for a file and writing it
+	private final Object[] locks = new Object[LOCK_STRIPES];
+
+	/**
+	 * Constructor.
+	 */
+	public RegionFileSaver() {
+		for(int i = 0; i < locks.length; i++) {
+			locks[i] = new Object();
+		}
+		executor = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "AreaShop region saver");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Queue content to be written to a file, replacing content for the same file that has not been written yet.
+	 * @param file    The file to write to
+	 * @param content The content to write
+	 */
+	public void save(@Nonnull File file, @Nonnull String content) {
+		if(pending.put(file, content) == null) {
+			executor.execute(() -> write(file));
+		}
+	}
+
+	/**
+	 * Cancel writing a file, waits for a write of the file that is in progress.
+	 * Should be used before deleting the file, so that it is not written again afterwards.
+	 * @param file The file to cancel writing for
+	 */
+	public void cancel(@Nonnull File file) {
+		synchronized(lockFor(file)) {
+			pending.remove(file);
+		}
+	}
+
+	/**
+	 * Get the number of files that are waiting to be written.
+	 * @return The number of files waiting to be written
+	 */
+	public int getPendingCount() {
+		return pending.size();
+	}
+
+	/**
+	 * Wait until all files queued before this call have been written.
+	 * When the wait times out, the remaining files are written on the calling thread.
+	 * @param timeout The maximum time to wait in milliseconds
+	 */
+	public void drain(long timeout) {
+		if(pending.isEmpty()) {
+			return;
+		}
+		Future<?> barrier = executor.submit(() -> {});
+		try {
+			barrier.get(timeout, TimeUnit.MILLISECONDS);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch(ExecutionException | TimeoutException e) {
+			AreaShop.warn("Writing region files in the background did not finish in time, writing the remaining " + pending.size() + " files now");
+		}
+		List<File> remaining = new ArrayList<>(pending.keySet());
+		for(File file : remaining) {
+			write(file);
+		}
+	}
+
+	/**
+	 * Run a callback on the background thread once all files queued before this call have been written.
+	 * @param callback The callback to run
+	 */
+	public void afterQueued(@Nonnull Runnable callback) {
+		executor.execute(callback);
+	}
+
+	/**
+	 * Write all queued files and stop the background thread.
+	 * @param timeout The maximum time to wait for the background thread in milliseconds
+	 */
+	public void shutdown(long timeout) {
+		drain(timeout);
+		executor.shutdown();
+	}
+
+	/**
+	 * Write the latest content of a file, if any.
+	 * @param file The file to write
+	 */
+	private void write(File file) {
+		synchronized(lockFor(file)) {
+			String content = pending.remove(file);
+			if(content == null) {
+				return;
+			}
+			try {
+				writeAtomically(file, content);
+			} catch(IOException e) {
+				AreaShop.warn("Region file could not be saved: " + file.getAbsolutePath() + ", " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Get the lock of a file, files with the same lock only wait for each other while being written.
+	 * @param file The file to get the lock for
+	 * @return The lock object
+	 */
+	private Object lockFor(File file) {
+		int hash = file.hashCode();
+		return locks[(hash ^ (hash >>> 16)) & (LOCK_STRIPES - 1)];
+	}
+
+	/**
+	 * Write content to a temporary file and move it over the target file.
+	 * @param file    The file to write
+	 * @param content The content to write
+	 * @throws IOException When writing or moving the file failed
+	 */
+	static void writeAtomically(File file, String content) throws IOException {
+		Path target = file.toPath();
+		Path temp = target.resolveSibling(target.getFileName() + TEMP_EXTENSION);
+		Files.writeString(temp, content, StandardCharsets.UTF_8);
+		try {
+			Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch(AtomicMoveNotSupportedException e) {
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+}
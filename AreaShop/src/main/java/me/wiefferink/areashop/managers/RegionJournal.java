@@ -0,0 +1,651 @@
+package me.wiefferink.areashop.managers;
+
+import me.wiefferink.areashop.AreaShop;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of the changes to regions and groups.
+ * Changes are encoded on the main thread and written to the journal file by a background thread, which syncs the
+ * file to disk in batches. The region files only need to be rewritten when the journal is compacted: the journal
+ * file is moved aside, all changed regions are saved to the region store and the moved file is deleted.
+ * After a crash the journal files are replayed on top of the stored regions.
+ */
+public class RegionJournal {
+
+	// Extension of the journal file that is being compacted
+	public static final String ROTATED_EXTENSION = ".old";
+
+	// Record types
+	private static final byte SET_REGION = 1;
+	private static final byte SNAPSHOT_REGION = 2;
+	private static final byte DELETE_REGION = 3;
+	private static final byte SET_GROUPS = 4;
+
+	// Value types
+	private static final byte VALUE_NULL = 0;
+	private static final byte VALUE_STRING = 1;
+	private static final byte VALUE_INTEGER = 2;
+	private static final byte VALUE_LONG = 3;
+	private static final byte VALUE_DOUBLE = 4;
+	private static final byte VALUE_BOOLEAN = 5;
+	private static final byte VALUE_YAML = 6;
+
+	private final File file;
+	private final File rotatedFile;
+	private final long compactSize;
+	private final ScheduledExecutorService writer;
+	// Records that have not been written yet, guarded by bufferLock
+	private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+	private final Object bufferLock = new Object();
+	// Guards the file, always taken before bufferLock to keep the records in order
+	private final Object fileLock = new Object();
+	private FileChannel channel;
+	// Size of the current journal file including the records in the buffer
+	private long size;
+	private boolean writeFailed = false;
+	// Only used on the main thread to encode a record before adding it to the buffer
+	private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+	private final DataOutputStream record = new DataOutputStream(recordBytes);
+	private final CRC32 checksum = new CRC32();
+
+	/**
+	 * Constructor, opens the journal file for appending.
+	 * @param file         The journal file
+	 * @param syncInterval Time between writing and syncing the journal to disk in milliseconds
+	 * @param compactSize  Size of the journal in bytes after which it should be compacted
+	 * @throws IOException When the journal file could not be opened
+	 */
+	public RegionJournal(@Nonnull File file, long syncInterval, long compactSize) throws IOException {
+		this.file = file;
+		this.rotatedFile = rotatedFile(file);
+		this.compactSize = compactSize;
+		this.channel = open(file);
+		this.size = channel.size();
+		long interval = Math.max(1, syncInterval);
+		writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "AreaShop journal writer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		writer.scheduleWithFixedDelay(this::sync, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Add a changed setting of a region.
+	 * @param region The lowercase name of the region
+	 * @param path   The path of the setting
+	 * @param value  The new value, null if the setting is removed
+	 */
+	public void regionSet(@Nonnull String region, @Nonnull String path, @Nullable Object value) {
+		try {
+			record.writeByte(SET_REGION);
+			record.writeUTF(region);
+			record.writeUTF(path);
+			writeValue(value);
+			append();
+		} catch(IOException e) {
+			recordFailed(e);
+		}
+	}
+
+	/**
+	 * Add the complete config of a region, used when a region is added.
+	 * @param region The lowercase name of the region
+	 * @param config The serialized config of the region
+	 */
+	public void regionSnapshot(@Nonnull String region, @Nonnull String config) {
+		try {
+			record.writeByte(SNAPSHOT_REGION);
+			record.writeUTF(region);
+			writeString(config);
+			append();
+		} catch(IOException e) {
+			recordFailed(e);
+		}
+	}
+
+	/**
+	 * Add the removal of a region.
+	 * @param region The lowercase name of the region
+	 */
+	public void regionDeleted(@Nonnull String region) {
+		try {
+			record.writeByte(DELETE_REGION);
+			record.writeUTF(region);
+			append();
+		} catch(IOException e) {
+			recordFailed(e);
+		}
+	}
+
+	/**
+	 * Add a changed setting of the groups config.
+	 * @param path  The path in the groups config, starting with the lowercase group name
+	 * @param value The new value, null if the setting is removed
+	 */
+	public void groupSet(@Nonnull String path, @Nullable Object value) {
+		try {
+			record.writeByte(SET_GROUPS);
+			record.writeUTF(path);
+			writeValue(value);
+			append();
+		} catch(IOException e) {
+			recordFailed(e);
+		}
+	}
+
+	/**
+	 * Check if the journal should be compacted, because it got too big or writing it failed.
+	 * @return true if the changed regions should be saved and the journal compacted, otherwise false
+	 */
+	public boolean isCompactionDue() {
+		synchronized(bufferLock) {
+			return writeFailed || size >= compactSize;
+		}
+	}
+
+	/**
+	 * Move the current journal file aside to start compacting it, new records are written to a new file.
+	 * Does nothing if a previous compaction did not finish, the records then stay in the current file.
+	 */
+	public void rotate() {
+		synchronized(fileLock) {
+			if(rotatedFile.exists()) {
+				return;
+			}
+			try {
+				writeBuffer();
+				channel.close();
+				if(!file.renameTo(rotatedFile)) {
+					AreaShop.warn("Could not move the journal file aside for compaction: " + file.getAbsolutePath());
+				}
+				channel = open(file);
+				synchronized(bufferLock) {
+					size = channel.size();
+					writeFailed = false;
+				}
+			} catch(IOException e) {
+				writeFailed(e);
+			}
+		}
+	}
+
+	/**
+	 * Delete the journal file that has been moved aside by rotate(), all its changes should have been saved.
+	 */
+	public void deleteRotated() {
+		synchronized(fileLock) {
+			if(rotatedFile.exists() && !rotatedFile.delete()) {
+				AreaShop.warn("Could not delete the compacted journal file: " + rotatedFile.getAbsolutePath());
+			}
+		}
+	}
+
+	/**
+	 * Remove all records, all changes should have been saved.
+	 */
+	public void clear() {
+		synchronized(fileLock) {
+			synchronized(bufferLock) {
+				buffer = new ByteArrayOutputStream();
+				size = 0;
+				writeFailed = false;
+			}
+			try {
+				channel.truncate(0);
+				channel.force(true);
+			} catch(IOException e) {
+				writeFailed(e);
+			}
+		}
+		deleteRotated();
+	}
+
+	/**
+	 * Write the remaining records and close the journal.
+	 */
+	public void close() {
+		writer.shutdown();
+		synchronized(fileLock) {
+			try {
+				writeBuffer();
+				channel.force(false);
+				channel.close();
+			} catch(IOException e) {
+				writeFailed(e);
+			}
+		}
+	}
+
+	/**
+	 * Write the buffered records and sync them to disk, runs on the writer thread.
+	 */
+	private void sync() {
+		synchronized(fileLock) {
+			try {
+				if(writeBuffer()) {
+					channel.force(false);
+				}
+			} catch(IOException e) {
+				writeFailed(e);
+			}
+		}
+	}
+
+	/**
+	 * Write the buffered records to the journal file, requires the file lock.
+	 * @return true if records have been written, otherwise false
+	 * @throws IOException When writing failed
+	 */
+	private boolean writeBuffer() throws IOException {
+		byte[] bytes;
+		synchronized(bufferLock) {
+			if(buffer.size() == 0) {
+				return false;
+			}
+			bytes = buffer.toByteArray();
+			buffer = new ByteArrayOutputStream();
+		}
+		ByteBuffer data = ByteBuffer.wrap(bytes);
+		while(data.hasRemaining()) {
+			channel.write(data);
+		}
+		return true;
+	}
+
+	/**
+	 * Frame the encoded record with its length and checksum and add it to the buffer.
+	 */
+	private void append() throws IOException {
+		record.flush();
+		byte[] payload = recordBytes.toByteArray();
+		recordBytes.reset();
+		checksum.reset();
+		checksum.update(payload);
+		synchronized(bufferLock) {
+			DataOutputStream out = new DataOutputStream(buffer);
+			out.writeInt(payload.length);
+			out.writeInt((int)checksum.getValue());
+			out.write(payload);
+			size += payload.length + 8;
+		}
+	}
+
+	/**
+	 * Encode a value of a setting.
+	 * @param value The value to encode
+	 */
+	private void writeValue(Object value) throws IOException {
+		if(value == null) {
+			record.writeByte(VALUE_NULL);
+		} else if(value instanceof String string) {
+			record.writeByte(VALUE_STRING);
+			writeString(string);
+		} else if(value instanceof Integer number) {
+			record.writeByte(VALUE_INTEGER);
+			record.writeInt(number);
+		} else if(value instanceof Long number) {
+			record.writeByte(VALUE_LONG);
+			record.writeLong(number);
+		} else if(value instanceof Double number) {
+			record.writeByte(VALUE_DOUBLE);
+			record.writeDouble(number);
+		} else if(value instanceof Boolean bool) {
+			record.writeByte(VALUE_BOOLEAN);
+			record.writeBoolean(bool);
+		} else {
+			// Lists, sections and other values are stored the same way as in the region files
+			YamlConfiguration holder = new YamlConfiguration();
+			holder.set("value", value);
+			record.writeByte(VALUE_YAML);
+			writeString(holder.saveToString());
+		}
+	}
+
+	/**
+	 * Encode a string without the length limit of writeUTF.
+	 * @param string The string to encode
+	 */
+	private void writeString(String string) throws IOException {
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		record.writeInt(bytes.length);
+		record.write(bytes);
+	}
+
+	/**
+	 * Handle a record that could not be encoded, the change is then saved by the next compaction.
+	 * @param e The exception
+	 */
+	private void recordFailed(IOException e) {
+		recordBytes.reset();
+		synchronized(bufferLock) {
+			writeFailed = true;
+		}
+		AreaShop.warn("Could not add a change to the journal: " + e.getMessage());
+	}
+
+	/**
+	 * Handle failing to write the journal, the regions are then saved by the next compaction.
+	 * @param e The exception
+	 */
+	private void writeFailed(IOException e) {
+		synchronized(bufferLock) {
+			writeFailed = true;
+		}
+		AreaShop.warn("Could not write the journal " + file.getAbsolutePath() + ": " + e.getMessage());
+	}
+
+	/**
+	 * Open a journal file for appending.
+	 * @param file The file to open
+	 * @return The opened channel
+	 * @throws IOException When opening failed
+	 */
+	private static FileChannel open(File file) throws IOException {
+		return FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+
+	/**
+	 * Get the file a journal file is moved to while it is compacted.
+	 * @param file The journal file
+	 * @return The file used while compacting
+	 */
+	private static File rotatedFile(File file) {
+		return new File(file.getPath() + ROTATED_EXTENSION);
+	}
+
+	/**
+	 * Read the records of journal files that have been left behind, the file being compacted is read first.
+	 * A record that has only partially been written (crash while writing) ends the replay of that file.
+	 * @param file The journal file
+	 * @return The changes of the journal files, empty if there are none
+	 */
+	@Nonnull
+	public static Replay read(@Nonnull File file) {
+		Replay replay = new Replay();
+		read(rotatedFile(file), replay);
+		read(file, replay);
+		return replay;
+	}
+
+	/**
+	 * Delete the journal files.
+	 * @param file The journal file
+	 */
+	public static void delete(@Nonnull File file) {
+		for(File toDelete : new File[]{rotatedFile(file), file}) {
+			if(toDelete.exists() && !toDelete.delete()) {
+				AreaShop.warn("Could not delete journal file: " + toDelete.getAbsolutePath());
+			}
+		}
+	}
+
+	/**
+	 * Read the records of a journal file.
+	 * @param file   The file to read
+	 * @param replay The replay to add the records to
+	 */
+	private static void read(File file, Replay replay) {
+		if(!file.isFile()) {
+			return;
+		}
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			CRC32 checksum = new CRC32();
+			while(true) {
+				int length;
+				try {
+					length = in.readInt();
+				} catch(EOFException e) {
+					break;
+				}
+				int expected = in.readInt();
+				if(length < 0 || length > in.available()) {
+					AreaShop.warn("The journal " + file.getName() + " ends with an incomplete change, it has been skipped");
+					break;
+				}
+				byte[] payload = new byte[length];
+				in.readFully(payload);
+				checksum.reset();
+				checksum.update(payload);
+				if((int)checksum.getValue() != expected) {
+					AreaShop.warn("The journal " + file.getName() + " contains a damaged change, the changes after it have been skipped");
+					break;
+				}
+				replay.add(new DataInputStream(new ByteArrayInputStream(payload)));
+			}
+		} catch(EOFException e) {
+			AreaShop.warn("The journal " + file.getName() + " ends with an incomplete change, it has been skipped");
+		} catch(IOException | InvalidConfigurationException e) {
+			AreaShop.warn("Could not read the journal " + file.getAbsolutePath() + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Changes read from journal files, in the order they have been made.
+	 */
+	public static class Replay {
+		private final Map<String, List<Change>> regionChanges = new LinkedHashMap<>();
+		private final List<Change> groupChanges = new ArrayList<>();
+		private final Set<String> appliedRegions = new HashSet<>();
+		private int changes = 0;
+
+		/**
+		 * Decode a record.
+		 * @param in The payload of the record
+		 */
+		private void add(DataInputStream in) throws IOException, InvalidConfigurationException {
+			byte type = in.readByte();
+			switch(type) {
+				case SET_REGION -> {
+					String region = in.readUTF();
+					String path = in.readUTF();
+					regionChanges.computeIfAbsent(region, key -> new ArrayList<>()).add(new Change(type, path, readValue(in)));
+				}
+				case SNAPSHOT_REGION -> {
+					String region = in.readUTF();
+					regionChanges.computeIfAbsent(region, key -> new ArrayList<>()).add(new Change(type, null, readString(in)));
+				}
+				case DELETE_REGION -> regionChanges.computeIfAbsent(in.readUTF(), key -> new ArrayList<>()).add(new Change(type, null, null));
+				case SET_GROUPS -> groupChanges.add(new Change(type, in.readUTF(), readValue(in)));
+				default -> throw new IOException("unknown change type " + type);
+			}
+			changes++;
+		}
+
+		/**
+		 * Check if there are no changes.
+		 * @return true if there are no changes, otherwise false
+		 */
+		public boolean isEmpty() {
+			return changes == 0;
+		}
+
+		/**
+		 * Get the number of changes.
+		 * @return The number of changes
+		 */
+		public int size() {
+			return changes;
+		}
+
+		/**
+		 * Get the names of the regions that have changes.
+		 * @return The lowercase names of the changed regions
+		 */
+		public Set<String> getRegionNames() {
+			return regionChanges.keySet();
+		}
+
+		/**
+		 * Check if there are changes to the groups.
+		 * @return true if there are changes to the groups, otherwise false
+		 */
+		public boolean hasGroupChanges() {
+			return !groupChanges.isEmpty();
+		}
+
+		/**
+		 * Check if there are changes for a region.
+		 * @param region The name of the region
+		 * @return true if there are changes for the region, otherwise false
+		 */
+		public boolean hasRegion(@Nonnull String region) {
+			return regionChanges.containsKey(region.toLowerCase());
+		}
+
+		/**
+		 * Apply the changes of a region to its stored config.
+		 * @param region The name of the region
+		 * @param config The stored config of the region
+		 * @return The config with the changes applied, null if the region has been deleted
+		 */
+		@Nullable
+		public YamlConfiguration applyToRegion(@Nonnull String region, @Nullable YamlConfiguration config) {
+			String name = region.toLowerCase();
+			appliedRegions.add(name);
+			YamlConfiguration result = config;
+			for(Change change : regionChanges.getOrDefault(name, List.of())) {
+				switch(change.type()) {
+					case SET_REGION -> {
+						if(result != null) {
+							set(result, change.path(), change.value());
+						}
+					}
+					case SNAPSHOT_REGION -> {
+						result = new YamlConfiguration();
+						try {
+							result.loadFromString((String)change.value());
+						} catch(InvalidConfigurationException e) {
+							AreaShop.warn("Could not replay the added region " + name + " from the journal: " + e.getMessage());
+							result = null;
+						}
+					}
+					case DELETE_REGION -> result = null;
+					default -> {
+					}
+				}
+			}
+			return result;
+		}
+
+		/**
+		 * Get the regions that have been added after the last compaction and are not in the store yet.
+		 * Should be called after applyToRegion() has been called for all stored regions.
+		 * @return The configs of the added regions by their lowercase name
+		 */
+		@Nonnull
+		public Map<String, YamlConfiguration> getAddedRegions() {
+			Map<String, YamlConfiguration> result = new LinkedHashMap<>();
+			for(String name : new ArrayList<>(regionChanges.keySet())) {
+				if(!appliedRegions.contains(name)) {
+					YamlConfiguration config = applyToRegion(name, null);
+					if(config != null) {
+						result.put(name, config);
+					}
+				}
+			}
+			return result;
+		}
+
+		/**
+		 * Apply the changes of the groups to the stored groups config.
+		 * @param groups The stored groups config
+		 */
+		public void applyToGroups(@Nonnull YamlConfiguration groups) {
+			for(Change change : groupChanges) {
+				set(groups, change.path(), change.value());
+			}
+		}
+
+		/**
+		 * Set a replayed value in a config.
+		 * @param config The config to change
+		 * @param path   The path to set
+		 * @param value  The value to set
+		 */
+		private static void set(YamlConfiguration config, String path, Object value) {
+			if(value instanceof ConfigurationSection section) {
+				// Copy the section instead of attaching the section of the decoded holder config
+				config.set(path, null);
+				for(Map.Entry<String, Object> entry : section.getValues(true).entrySet()) {
+					if(!(entry.getValue() instanceof ConfigurationSection)) {
+						config.set(path + "." + entry.getKey(), entry.getValue());
+					}
+				}
+			} else {
+				config.set(path, value);
+			}
+		}
+
+		/**
+		 * Decode a value of a setting.
+		 * @param in The input to read from
+		 * @return The decoded value
+		 */
+		private static Object readValue(DataInputStream in) throws IOException, InvalidConfigurationException {
+			byte type = in.readByte();
+			return switch(type) {
+				case VALUE_NULL -> null;
+				case VALUE_STRING -> readString(in);
+				case VALUE_INTEGER -> in.readInt();
+				case VALUE_LONG -> in.readLong();
+				case VALUE_DOUBLE -> in.readDouble();
+				case VALUE_BOOLEAN -> in.readBoolean();
+				case VALUE_YAML -> {
+					YamlConfiguration holder = new YamlConfiguration();
+					holder.loadFromString(readString(in));
+					yield holder.get("value");
+				}
+				default -> throw new IOException("unknown value type " + type);
+			};
+		}
+
+		/**
+		 * Decode a string written by writeString().
+		 * @param in The input to read from
+		 * @return The decoded string
+		 */
+		private static String readString(DataInputStream in) throws IOException {
+			byte[] bytes = new byte[in.readInt()];
+			in.readFully(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+	}
+
+	/**
+	 * Single change read from a journal.
+	 * @param type  The type of the record
+	 * @param path  The path of the changed setting, null for snapshots and deletes
+	 * @param value The new value, or the serialized config for snapshots
+	 */
+	private record Change(byte type, String path, Object value) {
+	}
+}
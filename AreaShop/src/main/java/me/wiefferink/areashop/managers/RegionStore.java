@@ -0,0 +1,127 @@
+package me.wiefferink.areashop.managers;
+
+import me.wiefferink.areashop.regions.GeneralRegion;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Storage of the region configs and the groups config.
+ * Loading happens on the main thread and blocks, saving and deleting are queued and may happen in the background.
+ * The configs are serialized on the main thread before they are handed over, so implementations never touch regions from other threads.
+ */
+public interface RegionStore {
+
+	/**
+	 * Get the type of the store as used in the 'storage.type' setting.
+	 * @return The type of the store
+	 */
+	@Nonnull
+	String getType();
+
+	/**
+	 * Read all stored regions, blocks until everything is read.
+	 * @return The stored regions
+	 */
+	@Nonnull
+	List<StoredRegion> loadRegions();
+
+	/**
+	 * Queue saving a region, replacing a save of the same region that has not been written yet.
+	 * @param region The region to save
+	 */
+	void saveRegion(@Nonnull GeneralRegion region);
+
+	/**
+	 * Delete a region, a queued save of the region is cancelled.
+	 * @param region The region to delete
+	 */
+	void deleteRegion(@Nonnull GeneralRegion region);
+
+	/**
+	 * Delete an entry that has been returned by loadRegions(), used for entries that turned out to be invalid.
+	 * @param stored The entry to delete
+	 */
+	void delete(@Nonnull StoredRegion stored);
+
+	/**
+	 * Read the groups config.
+	 * @return The groups config, null if there is none
+	 */
+	@Nullable
+	YamlConfiguration loadGroups();
+
+	/**
+	 * Save the groups config.
+	 * @param groups The groups config
+	 */
+	void saveGroups(@Nonnull YamlConfiguration groups);
+
+	/**
+	 * Read the members of all groups.
+	 * @return Modifiable map with modifiable sets of region names by lowercase group name
+	 */
+	@Nonnull
+	Map<String, Set<String>> loadGroupMembers();
+
+	/**
+	 * Queue adding a member to a group.
+	 * @param group  The lowercase name of the group
+	 * @param region The name of the region
+	 */
+	void addGroupMember(@Nonnull String group, @Nonnull String region);
+
+	/**
+	 * Queue removing a member from a group.
+	 * @param group  The lowercase name of the group
+	 * @param region The name of the region
+	 */
+	void removeGroupMember(@Nonnull String group, @Nonnull String region);
+
+	/**
+	 * Queue replacing all members of a group.
+	 * @param group   The lowercase name of the group
+	 * @param regions The names of the regions, empty to remove all members
+	 */
+	void setGroupMembers(@Nonnull String group, @Nonnull Collection<String> regions);
+
+	/**
+	 * Get the number of saves and deletes waiting to be written.
+	 * @return The number of pending writes
+	 */
+	int getPendingWrites();
+
+	/**
+	 * Wait until all queued writes have been done.
+	 * @param timeout The maximum time to wait for the background writer in milliseconds
+	 */
+	void flush(long timeout);
+
+	/**
+	 * Run a callback on the background writer once all writes queued before this call have been done, does not block.
+	 * When the writes failed and are written again later, the callback runs after they succeeded.
+	 * @param callback The callback to run, should not touch regions or other state of the main thread
+	 */
+	void afterQueuedWrites(@Nonnull Runnable callback);
+
+	/**
+	 * Write everything that is queued and release the resources of the store.
+	 * @param timeout The maximum time to wait for the background writer in milliseconds
+	 */
+	void close(long timeout);
+
+	/**
+	 * Region read from a store.
+	 * @param id          Identifier of the entry within the store, used to delete it
+	 * @param description Description of the entry for log messages
+	 * @param config      The region config, null if reading failed
+	 * @param error       The error to log if reading failed, otherwise null
+	 */
+	record StoredRegion(String id, String description, YamlConfiguration config, String error) {
+	}
+}
@@ -0,0 +1,335 @@
+package me.wiefferink.areashop.managers;
+
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import me.wiefferink.areashop.AreaShop;
+import me.wiefferink.areashop.regions.GeneralRegion;
+import me.wiefferink.bukkitdo.Do;
+import org.apache.commons.lang.exception.ExceptionUtils;
+import org.bukkit.Bukkit;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the schematic saves and restores of regions with a limited number at the same time.
+ * Jobs of a region run one at a time in the order they are queued, the region with the most important job goes first.
+ * A job that is already queued for a region is not queued again, a queued restore is replaced by a newer restore.
+ * Only used from the main thread.
+ */
+@Singleton
+public class SchematicJobQueue extends Manager {
+
+	// Period over which the throughput is calculated
+	private static final long THROUGHPUT_PERIOD = TimeUnit.MINUTES.toNanos(1);
+
+	public enum Priority {
+		// Triggered by a player or command, goes first
+		PLAYER,
+		// Triggered by the plugin itself, like rent expiration and inactivity
+		AUTOMATIC
+	}
+
+	public enum JobType {
+		SAVE,
+		RESTORE
+	}
+
+	@Inject
+	private AreaShop plugin;
+
+	// Queued jobs by lowercase region name, in the order the regions got their first job
+	private final Map<String, Deque<Job>> queued = new LinkedHashMap<>();
+	// Lowercase names of the regions that have a running job
+	private final Map<String, Job> running = new LinkedHashMap<>();
+	// Finish times of the jobs in the last THROUGHPUT_PERIOD
+	private final Deque<Long> recentlyFinished = new ArrayDeque<>();
+	private boolean dispatching = false;
+	private long sequence = 0;
+	private int queuedCount = 0;
+	private long startedCount = 0;
+	private long finishedCount = 0;
+	private long failedCount = 0;
+	private long cancelledCount = 0;
+	private long mergedCount = 0;
+	private long totalWait = 0;
+	private long maxWait = 0;
+
+	SchematicJobQueue() {
+	}
+
+	@Override
+	public void shutdown() {
+		// Run the remaining jobs right away, the server does not wait for background operations
+		for(Deque<Job> jobs : queued.values()) {
+			for(Job job : jobs) {
+				boolean result = job.type == JobType.SAVE
+						? job.region.saveRegionBlocks(job.fileName)
+						: job.region.restoreRegionBlocks(job.fileName);
+				job.future.complete(result);
+			}
+		}
+		queued.clear();
+		queuedCount = 0;
+	}
+
+	/**
+	 * Queue saving or restoring the blocks of a region.
+	 * @param region   The region to save or restore
+	 * @param type     Save or restore
+	 * @param fileName The name of the schematic (extension and folder will be added)
+	 * @param priority Priority of the job
+	 * @return Future that completes with true when the job succeeded, false when it failed or has been cancelled
+	 */
+	public CompletableFuture<Boolean> submit(@Nonnull GeneralRegion region, @Nonnull JobType type, @Nonnull String fileName, @Nonnull Priority priority) {
+		String key = region.getLowerCaseName();
+		Deque<Job> jobs = queued.computeIfAbsent(key, k -> new ArrayDeque<>());
+		Job last = jobs.peekLast();
+		if(last != null && last.type == type && last.region == region) {
+			if(last.fileName.equals(fileName)) {
+				// Same job is already waiting
+				mergedCount++;
+				last.raisePriority(priority);
+				AreaShop.debug("Schematic " + type + " of " + fileName + " for region " + region.getName() + " is already queued");
+				return last.future;
+			}
+			if(type == JobType.RESTORE) {
+				// Only the last restore matters
+				jobs.pollLast();
+				queuedCount--;
+				mergedCount++;
+				last.future.complete(false);
+				AreaShop.debug("Queued restore of " + last.fileName + " for region " + region.getName() + " replaced by a restore of " + fileName);
+			}
+		}
+		Job job = new Job(region, type, fileName, priority, sequence++);
+		// Earlier jobs of the region go first, so they should be as important as the new job
+		for(Job earlier : jobs) {
+			earlier.raisePriority(priority);
+		}
+		jobs.addLast(job);
+		queuedCount++;
+		dispatch();
+		return job.future;
+	}
+
+	/**
+	 * Cancel the queued jobs of a region, used when the region is deleted.
+	 * A job that is already running is not stopped.
+	 * @param region The region to cancel the jobs for
+	 * @return The number of cancelled jobs
+	 */
+	public int cancel(@Nonnull GeneralRegion region) {
+		Deque<Job> jobs = queued.remove(region.getLowerCaseName());
+		if(jobs == null) {
+			return 0;
+		}
+		for(Job job : jobs) {
+			job.future.complete(false);
+		}
+		queuedCount -= jobs.size();
+		cancelledCount += jobs.size();
+		AreaShop.debug("Cancelled " + jobs.size() + " schematic jobs of region " + region.getName());
+		return jobs.size();
+	}
+
+	/**
+	 * Get a future that completes when the jobs of a region that are queued or running now are done.
+	 * @param region The region to wait for
+	 * @return Future that completes on the main thread, or right away if the region has no jobs
+	 */
+	public CompletableFuture<Void> whenDone(@Nonnull GeneralRegion region) {
+		List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+		Job runningJob = running.get(region.getLowerCaseName());
+		if(runningJob != null) {
+			futures.add(runningJob.future);
+		}
+		for(Job job : queued.getOrDefault(region.getLowerCaseName(), new ArrayDeque<>())) {
+			futures.add(job.future);
+		}
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+	}
+
+	/**
+	 * Get statistics about the jobs.
+	 * @return The current statistics
+	 */
+	@Nonnull
+	public Metrics getMetrics() {
+		trimRecentlyFinished();
+		return new Metrics(
+				queuedCount,
+				running.size(),
+				finishedCount,
+				failedCount,
+				cancelledCount,
+				mergedCount,
+				startedCount == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalWait / startedCount),
+				TimeUnit.NANOSECONDS.toMillis(maxWait),
+				recentlyFinished.size()
+		);
+	}
+
+	/**
+	 * Start jobs until the maximum number of running jobs is reached.
+	 */
+	private void dispatch() {
+		if(dispatching || !plugin.isEnabled()) {
+			return;
+		}
+		dispatching = true;
+		try {
+			int maxRunning = Math.max(1, plugin.getConfig().getInt("schematics.maxConcurrent", 2));
+			Job job;
+			while(running.size() < maxRunning && (job = takeNext()) != null) {
+				start(job);
+			}
+		} finally {
+			dispatching = false;
+		}
+	}
+
+	/**
+	 * Take the next job to run: the first job of a region without a running job, most important and oldest first.
+	 * @return The job to run, or null if no job can run now
+	 */
+	private Job takeNext() {
+		Deque<Job> best = null;
+		for(Map.Entry<String, Deque<Job>> entry : queued.entrySet()) {
+			if(running.containsKey(entry.getKey())) {
+				continue;
+			}
+			Job first = entry.getValue().peekFirst();
+			if(first != null && (best == null || first.isBefore(best.peekFirst()))) {
+				best = entry.getValue();
+			}
+		}
+		if(best == null) {
+			return null;
+		}
+		Job job = best.pollFirst();
+		queuedCount--;
+		if(best.isEmpty()) {
+			queued.remove(job.region.getLowerCaseName());
+		}
+		return job;
+	}
+
+	/**
+	 * Start a job.
+	 * @param job The job to start
+	 */
+	private void start(Job job) {
+		long wait = System.nanoTime() - job.submitted;
+		startedCount++;
+		totalWait += wait;
+		maxWait = Math.max(maxWait, wait);
+		running.put(job.region.getLowerCaseName(), job);
+		AreaShop.debug("Starting schematic " + job.type + " of " + job.fileName + " for region " + job.region.getName()
+				+ " after waiting " + TimeUnit.NANOSECONDS.toMillis(wait) + "ms, " + queuedCount + " jobs queued");
+		CompletableFuture<Boolean> operation;
+		try {
+			operation = job.type == JobType.SAVE
+					? job.region.saveRegionBlocksAsync(job.fileName)
+					: job.region.restoreRegionBlocksAsync(job.fileName);
+		} catch(RuntimeException e) {
+			operation = CompletableFuture.failedFuture(e);
+		}
+		operation.whenComplete((result, throwable) -> {
+			if(Bukkit.isPrimaryThread()) {
+				finish(job, result, throwable);
+			} else {
+				Do.sync(() -> finish(job, result, throwable));
+			}
+		});
+	}
+
+	/**
+	 * Handle the result of a job and start the next ones.
+	 * @param job       The job that finished
+	 * @param result    The result of the operation, null if it failed with an exception
+	 * @param throwable The exception the operation failed with, or null
+	 */
+	private void finish(Job job, Boolean result, Throwable throwable) {
+		running.remove(job.region.getLowerCaseName());
+		boolean success = throwable == null && Boolean.TRUE.equals(result);
+		if(throwable != null) {
+			AreaShop.error("Schematic " + job.type + " of " + job.fileName + " for region " + job.region.getName() + " failed: " + ExceptionUtils.getStackTrace(throwable));
+		}
+		if(success) {
+			finishedCount++;
+		} else {
+			failedCount++;
+		}
+		recentlyFinished.addLast(System.nanoTime());
+		trimRecentlyFinished();
+		job.future.complete(success);
+		AreaShop.debug("Finished schematic " + job.type + " of " + job.fileName + " for region " + job.region.getName() + ", " + getMetrics());
+		dispatch();
+	}
+
+	/**
+	 * Remove finish times that are older than the throughput period.
+	 */
+	private void trimRecentlyFinished() {
+		long limit = System.nanoTime() - THROUGHPUT_PERIOD;
+		Iterator<Long> iterator = recentlyFinished.iterator();
+		while(iterator.hasNext() && iterator.next() < limit) {
+			iterator.remove();
+		}
+	}
+
+	private static class Job {
+		private final GeneralRegion region;
+		private final JobType type;
+		private final String fileName;
+		private final long sequence;
+		private final long submitted = System.nanoTime();
+		private final CompletableFuture<Boolean> future = new CompletableFuture<>();
+		private Priority priority;
+
+		private Job(GeneralRegion region, JobType type, String fileName, Priority priority, long sequence) {
+			this.region = region;
+			this.type = type;
+			this.fileName = fileName;
+			this.priority = priority;
+			this.sequence = sequence;
+		}
+
+		private void raisePriority(Priority other) {
+			if(other.ordinal() < priority.ordinal()) {
+				priority = other;
+			}
+		}
+
+		private boolean isBefore(Job other) {
+			if(priority != other.priority) {
+				return priority.ordinal() < other.priority.ordinal();
+			}
+			return sequence < other.sequence;
+		}
+	}
+
+	/**
+	 * Statistics about the schematic jobs.
+	 * @param queued        Number of jobs waiting to start
+	 * @param running       Number of jobs that are running
+	 * @param finished      Number of jobs that succeeded
+	 * @param failed        Number of jobs that failed
+	 * @param cancelled     Number of jobs cancelled because their region got deleted
+	 * @param merged        Number of jobs that have been merged with a queued job
+	 * @param averageWait   Average time between queueing and starting a job in milliseconds
+	 * @param maxWait       Longest time between queueing and starting a job in milliseconds
+	 * @param lastMinute    Number of jobs finished in the last minute
+	 */
+	public record Metrics(int queued, int running, long finished, long failed, long cancelled, long merged, long averageWait, long maxWait, int lastMinute) {
+	}
+}
@@ -0,0 +1,578 @@
+package me.wiefferink.areashop.managers;
+
+import me.wiefferink.areashop.AreaShop;
+import me.wiefferink.areashop.regions.GeneralRegion;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Stores the regions, groups and group members in a single SQLite database file, using the driver that is bundled with the server.
+ * Besides the serialized config, the owner, type, world and state of a region are stored in indexed columns so the
+ * database can be queried without parsing the configs. Writes are collected and written by a background thread in a
+ * single transaction, saves of the same region that are still waiting are coalesced. A failed write is retried with an
+ * increasing delay, after repeated failures the changes are written one by one so a change that cannot be written does
+ * not hold back the others.
+ */
+public class SqliteRegionStore implements RegionStore {
+
+	public static final String TYPE = "sqlite";
+
+	private static final String[] SCHEMA = {
+			"CREATE TABLE IF NOT EXISTS regions (name TEXT PRIMARY KEY NOT NULL, type TEXT, world TEXT, owner TEXT, state TEXT, data TEXT NOT NULL)",
+			"CREATE INDEX IF NOT EXISTS regions_owner ON regions (owner)",
+			"CREATE INDEX IF NOT EXISTS regions_type ON regions (type)",
+			"CREATE INDEX IF NOT EXISTS regions_world ON regions (world)",
+			"CREATE INDEX IF NOT EXISTS regions_state ON regions (state)",
+			"CREATE TABLE IF NOT EXISTS region_groups (id INTEGER PRIMARY KEY NOT NULL, data TEXT NOT NULL)",
+			"CREATE TABLE IF NOT EXISTS group_members (group_name TEXT NOT NULL, region TEXT NOT NULL, PRIMARY KEY (group_name, region))"
+	};
+	private static final String SAVE_REGION = "INSERT OR REPLACE INTO regions (name, type, world, owner, state, data) VALUES (?, ?, ?, ?, ?, ?)";
+	private static final String DELETE_REGION = "DELETE FROM regions WHERE name = ?";
+	private static final String SAVE_GROUPS = "INSERT OR REPLACE INTO region_groups (id, data) VALUES (1, ?)";
+	private static final String ADD_MEMBER = "INSERT OR IGNORE INTO group_members (group_name, region) VALUES (?, ?)";
+	private static final String REMOVE_MEMBER = "DELETE FROM group_members WHERE group_name = ? AND region = ?";
+	private static final String CLEAR_MEMBERS = "DELETE FROM group_members WHERE group_name = ?";
+	// Delay before retrying a failed write, doubled for every following failure up to the maximum
+	private static final long RETRY_DELAY = 1000;
+	private static final long MAX_RETRY_DELAY = 60000;
+	// Write the changes one by one after this many failed writes in a row
+	private static final int SEPARATE_WRITES_AFTER = 3;
+
+	private final File databaseFile;
+	private final Connection connection;
+	private final ScheduledThreadPoolExecutor executor;
+	// Latest row waiting to be written, by region name, rows without data are deletes
+	private final Map<String, RegionRow> pending = new ConcurrentHashMap<>();
+	private final AtomicReference<String> pendingGroups = new AtomicReference<>();
+	// Changes of group members in the order they have been made
+	private final Queue<MemberChange> pendingMembers = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean membersWriteScheduled = new AtomicBoolean();
+	// Member changes of a failed write, written before the pending changes, guarded by connectionLock
+	private List<MemberChange> failedMembers = new ArrayList<>();
+	// Callbacks waiting for all queued changes to be written, guarded by connectionLock
+	private final List<Runnable> writtenCallbacks = new ArrayList<>();
+	// Number of failed writes in a row and if a retry is scheduled, guarded by connectionLock
+	private int failedWrites = 0;
+	private boolean retryScheduled = false;
+	// Held while using the connection, writes normally happen on the background thread
+	private final Object connectionLock = new Object();
+
+	/**
+	 * Constructor, opens the database and creates the tables if required.
+	 * @param databaseFile The database file
+	 * @throws SQLException When the database could not be opened
+	 */
+	public SqliteRegionStore(@Nonnull File databaseFile) throws SQLException {
+		this.databaseFile = databaseFile;
+		try {
+			Class.forName("org.sqlite.JDBC");
+		} catch(ClassNotFoundException e) {
+			throw new SQLException("The SQLite driver is not available on this server", e);
+		}
+		connection = DriverManager.getConnection("jdbc:sqlite:" + databaseFile.getAbsolutePath());
+		try(Statement statement = connection.createStatement()) {
+			statement.execute("PRAGMA journal_mode=WAL");
+			for(String query : SCHEMA) {
+				statement.executeUpdate(query);
+			}
+		} catch(SQLException e) {
+			connection.close();
+			throw e;
+		}
+		connection.setAutoCommit(false);
+		executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+			Thread thread = new Thread(runnable, "AreaShop region database writer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		// A retry after closing would use the closed connection, close() already wrote what it could
+		executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+	}
+
+	@Nonnull
+	@Override
+	public String getType() {
+		return TYPE;
+	}
+
+	@Nonnull
+	@Override
+	public List<StoredRegion> loadRegions() {
+		List<StoredRegion> result = new ArrayList<>();
+		synchronized(connectionLock) {
+			writePending();
+			try(
+					Statement statement = connection.createStatement();
+					ResultSet rows = statement.executeQuery("SELECT name, data FROM regions")
+			) {
+				while(rows.next()) {
+					String name = rows.getString(1);
+					String description = "region " + name + " in " + databaseFile.getName();
+					YamlConfiguration config = new YamlConfiguration();
+					try {
+						config.loadFromString(rows.getString(2));
+					} catch(InvalidConfigurationException e) {
+						// Same as for region files, invalid data results in an empty config
+						AreaShop.warn("Cannot load " + description + ": " + e.getMessage());
+					}
+					result.add(new StoredRegion(name, description, config, null));
+				}
+				connection.commit();
+			} catch(SQLException e) {
+				AreaShop.error("Could not read the regions from " + databaseFile.getAbsolutePath() + ":", e);
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public void saveRegion(@Nonnull GeneralRegion region) {
+		UUID owner = region.getOwner();
+		queue(new RegionRow(
+				region.getLowerCaseName(),
+				region.getType().getValue(),
+				region.getWorldName(),
+				owner == null ? null : owner.toString(),
+				region.getState().getValue(),
+				region.getConfig().saveToString()
+		));
+	}
+
+	@Override
+	public void deleteRegion(@Nonnull GeneralRegion region) {
+		queue(new RegionRow(region.getLowerCaseName(), null, null, null, null, null));
+	}
+
+	@Override
+	public void delete(@Nonnull StoredRegion stored) {
+		queue(new RegionRow(stored.id(), null, null, null, null, null));
+	}
+
+	@Nullable
+	@Override
+	public YamlConfiguration loadGroups() {
+		synchronized(connectionLock) {
+			writePending();
+			try(
+					Statement statement = connection.createStatement();
+					ResultSet rows = statement.executeQuery("SELECT data FROM region_groups WHERE id = 1")
+			) {
+				YamlConfiguration groups = null;
+				if(rows.next()) {
+					groups = new YamlConfiguration();
+					groups.loadFromString(rows.getString(1));
+				}
+				connection.commit();
+				return groups;
+			} catch(SQLException | InvalidConfigurationException e) {
+				AreaShop.warn("Could not load the groups from " + databaseFile.getAbsolutePath() + ": " + e.getMessage());
+				return null;
+			}
+		}
+	}
+
+	@Override
+	public void saveGroups(@Nonnull YamlConfiguration groups) {
+		if(pendingGroups.getAndSet(groups.saveToString()) == null) {
+			executor.execute(this::writeQueued);
+		}
+	}
+
+	@Nonnull
+	@Override
+	public Map<String, Set<String>> loadGroupMembers() {
+		Map<String, Set<String>> result = new HashMap<>();
+		synchronized(connectionLock) {
+			writePending();
+			try(
+					Statement statement = connection.createStatement();
+					ResultSet rows = statement.executeQuery("SELECT group_name, region FROM group_members")
+			) {
+				while(rows.next()) {
+					result.computeIfAbsent(rows.getString(1), key -> new LinkedHashSet<>()).add(rows.getString(2));
+				}
+				connection.commit();
+			} catch(SQLException e) {
+				AreaShop.error("Could not read the group members from " + databaseFile.getAbsolutePath() + ":", e);
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public void addGroupMember(@Nonnull String group, @Nonnull String region) {
+		queueMembers(new MemberChange(group, region, true));
+	}
+
+	@Override
+	public void removeGroupMember(@Nonnull String group, @Nonnull String region) {
+		queueMembers(new MemberChange(group, region, false));
+	}
+
+	@Override
+	public void setGroupMembers(@Nonnull String group, @Nonnull Collection<String> regions) {
+		MemberChange[] changes = new MemberChange[regions.size() + 1];
+		changes[0] = new MemberChange(group, null, false);
+		int i = 1;
+		for(String region : regions) {
+			changes[i++] = new MemberChange(group, region, true);
+		}
+		queueMembers(changes);
+	}
+
+	@Override
+	public int getPendingWrites() {
+		return pending.size() + (pendingGroups.get() == null ? 0 : 1) + pendingMembers.size();
+	}
+
+	@Override
+	public void flush(long timeout) {
+		if(getPendingWrites() == 0) {
+			return;
+		}
+		Future<?> barrier = executor.submit(() -> {});
+		try {
+			barrier.get(timeout, TimeUnit.MILLISECONDS);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch(ExecutionException | TimeoutException e) {
+			AreaShop.warn("Writing to the region database in the background did not finish in time, writing the remaining " + getPendingWrites() + " changes now");
+		}
+		writeQueued();
+	}
+
+	@Override
+	public void afterQueuedWrites(@Nonnull Runnable callback) {
+		executor.execute(() -> {
+			synchronized(connectionLock) {
+				writtenCallbacks.add(callback);
+				writePending();
+			}
+		});
+	}
+
+	@Override
+	public void close(long timeout) {
+		flush(timeout);
+		executor.shutdown();
+		synchronized(connectionLock) {
+			try {
+				connection.close();
+			} catch(SQLException e) {
+				AreaShop.warn("Could not close the region database: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Queue a row to be written, replacing a row for the same region that has not been written yet.
+	 * @param row The row to write
+	 */
+	private void queue(RegionRow row) {
+		if(pending.put(row.name(), row) == null) {
+			executor.execute(this::writeQueued);
+		}
+	}
+
+	/**
+	 * Queue changes of group members to be written.
+	 * @param changes The changes in the order they have been made
+	 */
+	private void queueMembers(MemberChange... changes) {
+		pendingMembers.addAll(Arrays.asList(changes));
+		if(membersWriteScheduled.compareAndSet(false, true)) {
+			executor.execute(this::writeQueued);
+		}
+	}
+
+	/**
+	 * Write all queued changes.
+	 */
+	private void writeQueued() {
+		synchronized(connectionLock) {
+			writePending();
+		}
+	}
+
+	/**
+	 * Write all queued changes in a single transaction, requires the connection lock.
+	 * When writing fails the changes are queued again, unless they have been replaced in the meantime, and a retry is scheduled.
+	 */
+	private void writePending() {
+		List<RegionRow> rows = new ArrayList<>(pending.size());
+		for(String name : pending.keySet()) {
+			RegionRow row = pending.remove(name);
+			if(row != null) {
+				rows.add(row);
+			}
+		}
+		String groups = pendingGroups.getAndSet(null);
+		membersWriteScheduled.set(false);
+		List<MemberChange> members = failedMembers;
+		failedMembers = new ArrayList<>();
+		MemberChange change;
+		while((change = pendingMembers.poll()) != null) {
+			members.add(change);
+		}
+		if(rows.isEmpty() && groups == null && members.isEmpty()) {
+			runWrittenCallbacks();
+			return;
+		}
+		boolean written = failedWrites >= SEPARATE_WRITES_AFTER ? writeSeparately(rows, groups, members) : writeTogether(rows, groups, members);
+		if(!written) {
+			failedWrites++;
+			if(failedWrites == SEPARATE_WRITES_AFTER) {
+				AreaShop.warn("Writing to the region database failed " + failedWrites + " times in a row, writing the changes one by one from now on");
+			}
+			scheduleRetry();
+			return;
+		}
+		if(failedWrites > 0) {
+			AreaShop.info("Writing to the region database works again after " + failedWrites + " failed writes");
+			failedWrites = 0;
+		}
+		runWrittenCallbacks();
+	}
+
+	/**
+	 * Write changes in a single transaction, requires the connection lock.
+	 * When writing fails the changes are queued again, unless they have been replaced in the meantime.
+	 * @param rows    The region rows to write
+	 * @param groups  The groups to write, null if they did not change
+	 * @param members The changes of group members in the order they have been made
+	 * @return true if everything has been written, otherwise false
+	 */
+	private boolean writeTogether(List<RegionRow> rows, String groups, List<MemberChange> members) {
+		try(
+				PreparedStatement save = connection.prepareStatement(SAVE_REGION);
+				PreparedStatement delete = connection.prepareStatement(DELETE_REGION)
+		) {
+			for(RegionRow row : rows) {
+				if(row.data() == null) {
+					delete.setString(1, row.name());
+					delete.addBatch();
+				} else {
+					save.setString(1, row.name());
+					save.setString(2, row.type());
+					save.setString(3, row.world());
+					save.setString(4, row.owner());
+					save.setString(5, row.state());
+					save.setString(6, row.data());
+					save.addBatch();
+				}
+			}
+			delete.executeBatch();
+			save.executeBatch();
+			writeGroups(groups);
+			writeMembers(members);
+			connection.commit();
+			return true;
+		} catch(SQLException e) {
+			AreaShop.warn("Could not write " + rows.size() + " regions to the region database: " + e.getMessage());
+			rollback();
+			for(RegionRow row : rows) {
+				pending.putIfAbsent(row.name(), row);
+			}
+			if(groups != null) {
+				pendingGroups.compareAndSet(null, groups);
+			}
+			failedMembers = members;
+			return false;
+		}
+	}
+
+	/**
+	 * Write changes in a transaction per region, requires the connection lock.
+	 * The groups and the member changes each get their own transaction, the member changes stay in order.
+	 * Changes that could not be written are queued again, unless they have been replaced in the meantime.
+	 * @param rows    The region rows to write
+	 * @param groups  The groups to write, null if they did not change
+	 * @param members The changes of group members in the order they have been made
+	 * @return true if everything has been written, otherwise false
+	 */
+	private boolean writeSeparately(List<RegionRow> rows, String groups, List<MemberChange> members) {
+		boolean written = true;
+		for(RegionRow row : rows) {
+			try(PreparedStatement statement = connection.prepareStatement(row.data() == null ? DELETE_REGION : SAVE_REGION)) {
+				statement.setString(1, row.name());
+				if(row.data() != null) {
+					statement.setString(2, row.type());
+					statement.setString(3, row.world());
+					statement.setString(4, row.owner());
+					statement.setString(5, row.state());
+					statement.setString(6, row.data());
+				}
+				statement.executeUpdate();
+				connection.commit();
+			} catch(SQLException e) {
+				AreaShop.warn("Could not write region " + row.name() + " to the region database: " + e.getMessage());
+				rollback();
+				pending.putIfAbsent(row.name(), row);
+				written = false;
+			}
+		}
+		if(groups != null) {
+			try {
+				writeGroups(groups);
+				connection.commit();
+			} catch(SQLException e) {
+				AreaShop.warn("Could not write the groups to the region database: " + e.getMessage());
+				rollback();
+				pendingGroups.compareAndSet(null, groups);
+				written = false;
+			}
+		}
+		if(!members.isEmpty()) {
+			try {
+				writeMembers(members);
+				connection.commit();
+			} catch(SQLException e) {
+				AreaShop.warn("Could not write " + members.size() + " group member changes to the region database: " + e.getMessage());
+				rollback();
+				failedMembers = members;
+				written = false;
+			}
+		}
+		return written;
+	}
+
+	/**
+	 * Schedule writing the queued changes again after a failed write, requires the connection lock.
+	 */
+	private void scheduleRetry() {
+		if(retryScheduled || executor.isShutdown()) {
+			return;
+		}
+		retryScheduled = true;
+		long delay = Math.min(RETRY_DELAY << Math.min(failedWrites - 1, 16), MAX_RETRY_DELAY);
+		AreaShop.warn("Trying to write to the region database again in " + delay + "ms");
+		executor.schedule(() -> {
+			synchronized(connectionLock) {
+				retryScheduled = false;
+				writePending();
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Roll back the current transaction after a failed write, requires the connection lock.
+	 */
+	private void rollback() {
+		try {
+			connection.rollback();
+		} catch(SQLException e) {
+			AreaShop.warn("Could not roll back the failed write to the region database: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Write the groups, requires the connection lock.
+	 * @param groups The serialized groups, null to skip writing
+	 * @throws SQLException When writing failed
+	 */
+	private void writeGroups(String groups) throws SQLException {
+		if(groups == null) {
+			return;
+		}
+		try(PreparedStatement saveGroups = connection.prepareStatement(SAVE_GROUPS)) {
+			saveGroups.setString(1, groups);
+			saveGroups.executeUpdate();
+		}
+	}
+
+	/**
+	 * Run the callbacks of afterQueuedWrites() after everything has been written, requires the connection lock.
+	 */
+	private void runWrittenCallbacks() {
+		if(writtenCallbacks.isEmpty()) {
+			return;
+		}
+		List<Runnable> callbacks = new ArrayList<>(writtenCallbacks);
+		writtenCallbacks.clear();
+		for(Runnable callback : callbacks) {
+			callback.run();
+		}
+	}
+
+	/**
+	 * Write changes of group members, consecutive changes of the same kind are batched, requires the connection lock.
+	 * @param members The changes in the order they have been made
+	 * @throws SQLException When writing failed
+	 */
+	private void writeMembers(List<MemberChange> members) throws SQLException {
+		if(members.isEmpty()) {
+			return;
+		}
+		try(
+				PreparedStatement add = connection.prepareStatement(ADD_MEMBER);
+				PreparedStatement remove = connection.prepareStatement(REMOVE_MEMBER);
+				PreparedStatement clear = connection.prepareStatement(CLEAR_MEMBERS)
+		) {
+			PreparedStatement batch = null;
+			for(MemberChange member : members) {
+				PreparedStatement statement = member.add() ? add : (member.region() == null ? clear : remove);
+				// Execute the previous batch first to keep the changes in order
+				if(batch != null && batch != statement) {
+					batch.executeBatch();
+				}
+				batch = statement;
+				statement.setString(1, member.group());
+				if(member.region() != null) {
+					statement.setString(2, member.region());
+				}
+				statement.addBatch();
+			}
+			batch.executeBatch();
+		}
+	}
+
+	/**
+	 * Row of the regions table.
+	 * @param name  The lowercase name of the region
+	 * @param type  The type of the region
+	 * @param world The world of the region
+	 * @param owner The UUID of the owner, null if there is no owner
+	 * @param state The state of the region
+	 * @param data  The serialized region config, null to delete the region
+	 */
+	private record RegionRow(String name, String type, String world, String owner, String state, String data) {
+	}
+
+	/**
+	 * Change of the members of a group.
+	 * @param group  The lowercase name of the group
+	 * @param region The name of the region, null to remove all members
+	 * @param add    true to add the region, false to remove it
+	 */
+	private record MemberChange(String group, String region, boolean add) {
+	}
+}
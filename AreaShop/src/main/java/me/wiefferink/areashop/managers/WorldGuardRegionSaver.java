@@ -0,0 +1,116 @@
+package me.wiefferink.areashop.managers;
+
+import com.sk89q.worldguard.protection.managers.RegionManager;
+import me.wiefferink.areashop.AreaShop;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Saves the WorldGuard regions of worlds on a background thread.
+ * A world is queued at most once, requesting a save while the world is queued does nothing and requesting a save
+ * while the world is being saved queues it again. Worlds of which saving failed are handed back to be retried.
+ */
+public class WorldGuardRegionSaver {
+
+	private final ExecutorService executor;
+	// Worlds that are queued and not being saved yet
+	private final Set<String> queued = ConcurrentHashMap.newKeySet();
+	// Worlds of which saving failed, to be tried again
+	private final Set<String> failed = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Constructor.
+	 */
+	public WorldGuardRegionSaver() {
+		executor = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "AreaShop WorldGuard saver");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Queue saving the WorldGuard regions of a world.
+	 * @param world   The name of the world
+	 * @param manager The RegionManager of the world
+	 */
+	public void save(@Nonnull String world, @Nonnull RegionManager manager) {
+		if(queued.add(world)) {
+			executor.execute(() -> write(world, manager));
+		}
+	}
+
+	/**
+	 * Take the worlds of which saving failed since the last call.
+	 * @return The names of the worlds that should be saved again
+	 */
+	@Nonnull
+	public List<String> takeFailed() {
+		List<String> result = new ArrayList<>(failed);
+		failed.removeAll(result);
+		return result;
+	}
+
+	/**
+	 * Get the number of worlds waiting to be saved.
+	 * @return The number of worlds waiting to be saved
+	 */
+	public int getPendingCount() {
+		return queued.size();
+	}
+
+	/**
+	 * Wait until all worlds queued before this call have been saved.
+	 * @param timeout The maximum time to wait in milliseconds
+	 */
+	public void drain(long timeout) {
+		if(queued.isEmpty()) {
+			return;
+		}
+		Future<?> barrier = executor.submit(() -> {});
+		try {
+			barrier.get(timeout, TimeUnit.MILLISECONDS);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch(ExecutionException | TimeoutException e) {
+			AreaShop.warn("Saving WorldGuard regions did not finish in time, still waiting for worlds: " + queued);
+		}
+	}
+
+	/**
+	 * Save all queued worlds and stop the background thread.
+	 * @param timeout The maximum time to wait for the background thread in milliseconds
+	 */
+	public void shutdown(long timeout) {
+		drain(timeout);
+		executor.shutdown();
+	}
+
+	/**
+	 * Save the regions of a world.
+	 * @param world   The name of the world
+	 * @param manager The RegionManager of the world
+	 */
+	private void write(String world, RegionManager manager) {
+		// Changes made while saving queue the world again
+		queued.remove(world);
+		long start = System.nanoTime();
+		try {
+			manager.saveChanges();
+			AreaShop.debug("Saved WorldGuard regions of world " + world + " in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+		} catch(Exception e) {
+			failed.add(world);
+			AreaShop.warn("WorldGuard regions in world " + world + " could not be saved (after " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms): " + e.getMessage());
+		}
+	}
+}
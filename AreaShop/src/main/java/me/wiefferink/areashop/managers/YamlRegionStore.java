@@ -0,0 +1,197 @@
+package me.wiefferink.areashop.managers;
+
+import me.wiefferink.areashop.AreaShop;
+import me.wiefferink.areashop.regions.GeneralRegion;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Stores every region in its own .yml file in the regions folder and the groups in groups.yml, the default store.
+ * Group members are stored separately in a log of additions and removals.
+ */
+public class YamlRegionStore implements RegionStore {
+
+	public static final String TYPE = "yaml";
+
+	private final AreaShop plugin;
+	private final File regionFolder;
+	private final File groupsFile;
+	private final RegionFileSaver regionSaver = new RegionFileSaver();
+	private final GroupMemberLog groupMembers;
+
+	/**
+	 * Constructor.
+	 * @param plugin       The AreaShop plugin
+	 * @param regionFolder The folder with the region files
+	 * @param groupsFile   The groups file
+	 * @param membersFile  The group members file
+	 */
+	public YamlRegionStore(@Nonnull AreaShop plugin, @Nonnull File regionFolder, @Nonnull File groupsFile, @Nonnull File membersFile) {
+		this.plugin = plugin;
+		this.regionFolder = regionFolder;
+		this.groupsFile = groupsFile;
+		this.groupMembers = new GroupMemberLog(membersFile);
+	}
+
+	@Nonnull
+	@Override
+	public String getType() {
+		return TYPE;
+	}
+
+	@Nonnull
+	@Override
+	public List<StoredRegion> loadRegions() {
+		List<StoredRegion> result = new ArrayList<>();
+		if(!regionFolder.exists()) {
+			if(!regionFolder.mkdirs()) {
+				AreaShop.warn("Could not create region files directory: " + regionFolder.getAbsolutePath());
+			}
+			return result;
+		}
+		File[] regionFiles = regionFolder.listFiles();
+		if(regionFiles == null) {
+			return result;
+		}
+
+		List<File> filesToLoad = new ArrayList<>(regionFiles.length);
+		for(File regionFile : regionFiles) {
+			// Temporary files of interrupted background saves are skipped
+			if(regionFile.exists() && regionFile.isFile() && !regionFile.isHidden() && !regionFile.getName().endsWith(RegionFileSaver.TEMP_EXTENSION)) {
+				filesToLoad.add(regionFile);
+			}
+		}
+
+		// Read and parse the files in parallel
+		List<RegionFileLoader.ParsedFile> parsedFiles = new RegionFileLoader(plugin.getConfig().getInt("loading.threads")).parse(filesToLoad);
+		for(RegionFileLoader.ParsedFile parsedFile : parsedFiles) {
+			File file = parsedFile.file();
+			result.add(new StoredRegion(file.getPath(), file.getPath(), parsedFile.config(), parsedFile.error()));
+		}
+		return result;
+	}
+
+	@Override
+	public void saveRegion(@Nonnull GeneralRegion region) {
+		regionSaver.save(getRegionFile(region), region.getConfig().saveToString());
+	}
+
+	@Override
+	public void deleteRegion(@Nonnull GeneralRegion region) {
+		// Make sure a background save does not write the file again
+		File file = getRegionFile(region);
+		regionSaver.cancel(file);
+		deleteFile(file);
+	}
+
+	@Override
+	public void delete(@Nonnull StoredRegion stored) {
+		File file = new File(stored.id());
+		regionSaver.cancel(file);
+		deleteFile(file);
+	}
+
+	@Nullable
+	@Override
+	public YamlConfiguration loadGroups() {
+		if(!groupsFile.exists() || !groupsFile.isFile()) {
+			return null;
+		}
+		try(
+				InputStreamReader reader = new InputStreamReader(new FileInputStream(groupsFile), StandardCharsets.UTF_8)
+		) {
+			return YamlConfiguration.loadConfiguration(reader);
+		} catch(IOException e) {
+			AreaShop.warn("Could not load groups.yml file: " + groupsFile.getAbsolutePath());
+			return null;
+		}
+	}
+
+	@Override
+	public void saveGroups(@Nonnull YamlConfiguration groups) {
+		regionSaver.save(groupsFile, groups.saveToString());
+	}
+
+	@Nonnull
+	@Override
+	public Map<String, Set<String>> loadGroupMembers() {
+		return groupMembers.load();
+	}
+
+	@Override
+	public void addGroupMember(@Nonnull String group, @Nonnull String region) {
+		groupMembers.add(group, region);
+	}
+
+	@Override
+	public void removeGroupMember(@Nonnull String group, @Nonnull String region) {
+		groupMembers.remove(group, region);
+	}
+
+	@Override
+	public void setGroupMembers(@Nonnull String group, @Nonnull Collection<String> regions) {
+		groupMembers.set(group, regions);
+	}
+
+	@Override
+	public int getPendingWrites() {
+		return regionSaver.getPendingCount() + groupMembers.getPendingCount();
+	}
+
+	@Override
+	public void flush(long timeout) {
+		regionSaver.drain(timeout);
+		groupMembers.flush(timeout);
+	}
+
+	@Override
+	public void afterQueuedWrites(@Nonnull Runnable callback) {
+		regionSaver.afterQueued(() -> groupMembers.afterQueued(callback));
+	}
+
+	@Override
+	public void close(long timeout) {
+		regionSaver.shutdown(timeout);
+		groupMembers.close(timeout);
+	}
+
+	/**
+	 * Get the file of a region.
+	 * @param region The region to get the file for
+	 * @return The region file
+	 */
+	private File getRegionFile(GeneralRegion region) {
+		return new File(regionFolder, region.getLowerCaseName() + ".yml");
+	}
+
+	/**
+	 * Delete a file if it exists.
+	 * @param file The file to delete
+	 */
+	private static void deleteFile(File file) {
+		if(!file.exists()) {
+			return;
+		}
+		boolean deleted;
+		try {
+			deleted = file.delete();
+		} catch(Exception e) {
+			deleted = false;
+		}
+		if(!deleted) {
+			AreaShop.warn("File could not be deleted: " + file);
+		}
+	}
+}
@@ -12,6 +12,7 @@ import me.wiefferink.areashop.events.notify.SoldRegionEvent;
 import me.wiefferink.areashop.interfaces.WorldEditInterface;
 import me.wiefferink.areashop.interfaces.WorldGuardInterface;
 import me.wiefferink.areashop.managers.FeatureManager;
+import me.wiefferink.areashop.managers.SchematicJobQueue;
 import me.wiefferink.areashop.tools.Utils;
 import net.milkbowl.vault.economy.Economy;
 import net.milkbowl.vault.economy.EconomyResponse;
@@ -136,6 +137,7 @@ public class BuyRegion extends GeneralRegion {
 			setSetting("buy.buyer", buyer.toString());
 			setSetting("buy.buyerName", Utils.toName(buyer));
 		}
+		getFileManager().updateOwnerIndex(this);
 	}
 
 	/**
@@ -557,7 +559,7 @@ public class BuyRegion extends GeneralRegion {
 		}
 
 		// Handle schematic save/restore (while %uuid% is still available)
-		handleSchematicEvent(RegionEvent.SOLD);
+		handleSchematicEvent(RegionEvent.SOLD, executor == null ? SchematicJobQueue.Priority.AUTOMATIC : SchematicJobQueue.Priority.PLAYER);
 
 		// Send message: before actual removal of the buyer so that it is still available for variables
 		message(executor, "sell-sold");
@@ -593,6 +595,18 @@ public class BuyRegion extends GeneralRegion {
 		return false;
 	}
 
+	@Override
+	public long getInactiveDeadline() {
+		if(isDeleted() || !isSold()) {
+			return -1;
+		}
+		long inactiveSetting = getInactiveTimeUntilSell();
+		if(inactiveSetting <= 0) {
+			return -1;
+		}
+		return getLastActiveTime() + inactiveSetting;
+	}
+
 }
 
 
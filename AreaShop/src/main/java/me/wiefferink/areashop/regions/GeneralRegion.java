@@ -14,6 +14,7 @@ import me.wiefferink.areashop.interfaces.WorldEditInterface;
 import me.wiefferink.areashop.interfaces.WorldGuardInterface;
 import me.wiefferink.areashop.managers.FeatureManager;
 import me.wiefferink.areashop.managers.IFileManager;
+import me.wiefferink.areashop.managers.SchematicJobQueue;
 import me.wiefferink.areashop.tools.Utils;
 import me.wiefferink.bukkitdo.Do;
 import me.wiefferink.interactivemessenger.processing.Message;
@@ -36,7 +37,6 @@ import org.bukkit.util.Vector;
 import javax.annotation.Nonnull;
 import java.awt.geom.Area;
 import java.io.File;
-import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
@@ -62,6 +62,7 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 	private boolean saveRequired = false;
 	private boolean deleted = false;
 	private long volume = -1;
+	private final RegionSettingsCache settingsCache = new RegionSettingsCache();
 
 	private Map<Class<? extends RegionFeature>, RegionFeature> features;
 
@@ -308,6 +309,7 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 	 * This will update region flags, signs, etc.
 	 */
 	public void update() {
+		getFileManager().updateSpatialIndex(this);
 		Bukkit.getServer().getPluginManager().callEvent(new UpdateRegionEvent(this));
 	}
 
@@ -391,11 +393,13 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 	public void updateLastActiveTime() {
 		if(getOwner() != null) {
 			setSetting("general.lastActive", Calendar.getInstance().getTimeInMillis());
+			getFileManager().updateInactiveDeadline(this);
 		}
 	}
 
 	public void removeLastActiveTime() {
 		setSetting("general.lastActive", null);
+		getFileManager().updateInactiveDeadline(this);
 	}
 
 	/**
@@ -504,6 +508,7 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 			properName = name;
 		}
 		setSetting("general.landlordName", properName);
+		getFileManager().updateOwnerIndex(this);
 	}
 
 	/**
@@ -512,6 +517,7 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 	public void removelandlord() {
 		setSetting("general.landlord", null);
 		setSetting("general.landlordName", null);
+		getFileManager().updateOwnerIndex(this);
 	}
 
 	/**
@@ -595,13 +601,7 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 	 * @return A Set with all groups of this region
 	 */
 	public Set<RegionGroup> getGroups() {
-		Set<RegionGroup> result = new HashSet<>();
-		for(RegionGroup group : plugin.getFileManager().getGroups()) {
-			if(group.isMember(this)) {
-				result.add(group);
-			}
-		}
-		return result;
+		return new HashSet<>(plugin.getFileManager().getGroupsOf(this));
 	}
 
 	/**
@@ -733,6 +733,12 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 	 */
 	public abstract boolean checkInactive();
 
+	/**
+	 * Get the time at which the owner is inactive for too long, based on the current last active time.
+	 * @return The time after which the region will be unrented/sold (milliseconds from 1970), or -1 if that will not happen
+	 */
+	public abstract long getInactiveDeadline();
+
 	/**
 	 * Method to send a message to a CommandSender, using chatprefix if it is a player.
 	 * Automatically includes the region in the message, enabling the use of all variables.
@@ -922,7 +928,6 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 	}
 
 
-
 	/**
 	 * Reset all flags of the region.
 	 */
@@ -939,6 +944,7 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 	 */
 	public void saveRequired() {
 		saveRequired = true;
+		getFileManager().regionSaveRequired(this);
 	}
 
 	/**
@@ -950,271 +956,126 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 	}
 
 	/**
-	 * Save this region to disk now, using this method could slow down the plugin, normally saveRequired() should be used.
-	 * @return true if the region is saved successfully, otherwise false
+	 * Save this region now, using this method could slow down the plugin, normally saveRequired() should be used.
+	 * The config is serialized directly, writing it to the region store happens in the background.
+	 * @return true if the region is queued for writing, otherwise false
 	 */
 	public boolean saveNow() {
 		if(isDeleted()) {
 			return false;
 		}
 		saveRequired = false;
-		File file = new File(plugin.getFileManager().getRegionFolder() + File.separator + getName().toLowerCase() + ".yml");
-		try {
-			config.save(file);
-			return true;
-		} catch(IOException e) {
-			return false;
-		}
+		plugin.getFileManager().storeRegion(this);
+		return true;
 	}
 
 
 	// CONFIG
 
 	/**
-	 * Get a boolean setting for this region, defined as follows
+	 * Resolve a setting for this region, defined as follows
 	 * - If the region has the setting in its own file (/regions/regionName.yml), use that
 	 * - If the region has groups, use the setting defined by the most important group, if any
 	 * - Otherwise fallback to the default.yml file setting
+	 * Results are cached until the setting of the region, its groups or the default settings change.
 	 * @param path The path to get the setting of
-	 * @return The value of the setting (strings are handled as booleans)
+	 * @return The resolved setting, including the layer it is defined in
 	 */
-	public boolean getBooleanSetting(String path) {
+	public RegionSettingsCache.ResolvedSetting resolveSetting(String path) {
+		IFileManager fileManager = getFileManager();
+		RegionSettingsCache.ResolvedSetting result = settingsCache.get(path, fileManager.getSettingsGeneration());
+		if(result != null) {
+			return result;
+		}
+
 		if(config.isSet(path)) {
-			if(config.isString(path)) {
-				return config.getString(path).equalsIgnoreCase("true");
+			result = new RegionSettingsCache.ResolvedSetting(RegionSettingsCache.Layer.REGION, config, path, config.get(path));
+		} else {
+			// Groups are sorted by priority, the first group that has the setting wins
+			List<RegionGroup> groups = fileManager.getGroupsOf(this);
+			for(int i = 0; i < groups.size() && result == null; i++) {
+				ConfigurationSection groupSettings = groups.get(i).getSettings();
+				if(groupSettings.isSet(path)) {
+					result = new RegionSettingsCache.ResolvedSetting(RegionSettingsCache.Layer.GROUP, groupSettings, path, groupSettings.get(path));
+				}
 			}
-			return config.getBoolean(path);
-		}
-		boolean result = false;
-		int priority = Integer.MIN_VALUE;
-		boolean found = false;
-		for(RegionGroup group : plugin.getFileManager().getGroups()) {
-			if(group.isMember(this) && group.getSettings().isSet(path) && group.getPriority() > priority) {
-				if(group.getSettings().isString(path)) {
-					result = group.getSettings().getString(path).equalsIgnoreCase("true");
+			if(result == null) {
+				if(fileManager.getRegionSettings().isSet(path)) {
+					result = new RegionSettingsCache.ResolvedSetting(RegionSettingsCache.Layer.DEFAULT, fileManager.getRegionSettings(), path, fileManager.getRegionSettings().get(path));
 				} else {
-					result = group.getSettings().getBoolean(path);
+					result = new RegionSettingsCache.ResolvedSetting(RegionSettingsCache.Layer.FALLBACK, fileManager.getFallbackRegionSettings(), path, fileManager.getFallbackRegionSettings().get(path));
 				}
-				priority = group.getPriority();
-				found = true;
 			}
 		}
-		if(found) {
-			return result;
-		}
-		if(this.getFileManager().getRegionSettings().isString(path)) {
-			return this.getFileManager().getRegionSettings().getString(path).equalsIgnoreCase("true");
-		}
-		if(this.getFileManager().getRegionSettings().isSet(path)) {
-			return this.getFileManager().getRegionSettings().getBoolean(path);
-		} else {
-			return this.getFileManager().getFallbackRegionSettings().getBoolean(path);
-		}
+		settingsCache.put(path, result);
+		return result;
 	}
 
 	/**
-	 * Get a boolean setting for this region, defined as follows
-	 * - If the region has the setting in its own file (/regions/regionName.yml), use that
-	 * - If the region has groups, use the setting defined by the most important group, if any
-	 * - Otherwise fallback to the default.yml file setting
+	 * Get a boolean setting for this region, resolved as described at {@link #resolveSetting(String)}.
 	 * @param path The path to get the setting of
 	 * @return The value of the setting (strings are handled as booleans)
 	 */
-	public int getIntegerSetting(String path) {
-		if(config.isSet(path)) {
-			return config.getInt(path);
-		}
-		int result = 0;
-		int priority = Integer.MIN_VALUE;
-		boolean found = false;
-		for(RegionGroup group : plugin.getFileManager().getGroups()) {
-			if(group.isMember(this) && group.getSettings().isSet(path) && group.getPriority() > priority) {
-				result = group.getSettings().getInt(path);
-				priority = group.getPriority();
-				found = true;
-			}
-		}
-		if(found) {
-			return result;
-		}
+	public boolean getBooleanSetting(String path) {
+		return resolveSetting(path).asBoolean();
+	}
 
-		if(this.getFileManager().getRegionSettings().isSet(path)) {
-			return this.getFileManager().getRegionSettings().getInt(path);
-		} else {
-			return this.getFileManager().getFallbackRegionSettings().getInt(path);
-		}
+	/**
+	 * Get an integer setting for this region, resolved as described at {@link #resolveSetting(String)}.
+	 * @param path The path to get the setting of
+	 * @return The value of the setting
+	 */
+	public int getIntegerSetting(String path) {
+		return resolveSetting(path).asInt();
 	}
 
 	/**
-	 * Get a double setting for this region, defined as follows
-	 * - If the region has the setting in its own file (/regions/regionName.yml), use that
-	 * - If the region has groups, use the setting defined by the most important group, if any
-	 * - Otherwise fallback to the default.yml file setting
+	 * Get a double setting for this region, resolved as described at {@link #resolveSetting(String)}.
 	 * @param path The path to get the setting of
 	 * @return The value of the setting
 	 */
 	public double getDoubleSetting(String path) {
-		if(config.isSet(path)) {
-			return config.getDouble(path);
-		}
-		double result = 0;
-		int priority = Integer.MIN_VALUE;
-		boolean found = false;
-		for(RegionGroup group : plugin.getFileManager().getGroups()) {
-			if(group.isMember(this) && group.getSettings().isSet(path) && group.getPriority() > priority) {
-				result = group.getSettings().getDouble(path);
-				priority = group.getPriority();
-				found = true;
-			}
-		}
-		if(found) {
-			return result;
-		}
-
-		if(this.getFileManager().getRegionSettings().isSet(path)) {
-			return this.getFileManager().getRegionSettings().getDouble(path);
-		} else {
-			return this.getFileManager().getFallbackRegionSettings().getDouble(path);
-		}
+		return resolveSetting(path).asDouble();
 	}
 
 	/**
-	 * Get a long setting for this region, defined as follows
-	 * - If the region has the setting in its own file (/regions/regionName.yml), use that
-	 * - If the region has groups, use the setting defined by the most important group, if any
-	 * - Otherwise fallback to the default.yml file setting
+	 * Get a long setting for this region, resolved as described at {@link #resolveSetting(String)}.
 	 * @param path The path to get the setting of
 	 * @return The value of the setting
 	 */
 	public long getLongSetting(String path) {
-		if(config.isSet(path)) {
-			return config.getLong(path);
-		}
-		long result = 0;
-		int priority = Integer.MIN_VALUE;
-		boolean found = false;
-		for(RegionGroup group : plugin.getFileManager().getGroups()) {
-			if(group.isMember(this) && group.getSettings().isSet(path) && group.getPriority() > priority) {
-				result = group.getSettings().getLong(path);
-				priority = group.getPriority();
-				found = true;
-			}
-		}
-		if(found) {
-			return result;
-		}
-
-		if(this.getFileManager().getRegionSettings().isSet(path)) {
-			return this.getFileManager().getRegionSettings().getLong(path);
-		} else {
-			return this.getFileManager().getFallbackRegionSettings().getLong(path);
-		}
+		return resolveSetting(path).asLong();
 	}
 
 	/**
-	 * Get a string setting for this region, defined as follows
-	 * - If the region has the setting in its own file (/regions/regionName.yml), use that
-	 * - If the region has groups, use the setting defined by the most important group, if any
-	 * - Otherwise fallback to the default.yml file setting
+	 * Get a string setting for this region, resolved as described at {@link #resolveSetting(String)}.
 	 * @param path The path to get the setting of
 	 * @return The value of the setting
 	 */
 	public String getStringSetting(String path) {
-		if(config.isSet(path)) {
-			return config.getString(path);
-		}
-		String result = null;
-		int priority = Integer.MIN_VALUE;
-		boolean found = false;
-		for(RegionGroup group : plugin.getFileManager().getGroups()) {
-			if(group.isMember(this) && group.getSettings().isSet(path) && group.getPriority() > priority) {
-				result = group.getSettings().getString(path);
-				priority = group.getPriority();
-				found = true;
-			}
-		}
-		if(found) {
-			return result;
-		}
-
-		if(this.getFileManager().getRegionSettings().isSet(path)) {
-			return this.getFileManager().getRegionSettings().getString(path);
-		} else {
-			return this.getFileManager().getFallbackRegionSettings().getString(path);
-		}
+		return resolveSetting(path).asString();
 	}
 
 	/**
-	 * Get a string list setting for this region, defined as follows
-	 * - If the region has the setting in its own file (/regions/regionName.yml), use that
-	 * - If the region has groups, use the setting defined by the most important group, if any
-	 * - Otherwise fallback to the default.yml file setting
+	 * Get a string list setting for this region, resolved as described at {@link #resolveSetting(String)}.
 	 * @param path The path to get the setting of
 	 * @return The value of the setting
 	 */
 	public List<String> getStringListSetting(String path) {
-		if(config.isSet(path)) {
-			return config.getStringList(path);
-		}
-		List<String> result = null;
-		int priority = Integer.MIN_VALUE;
-		boolean found = false;
-		for(RegionGroup group : plugin.getFileManager().getGroups()) {
-			if(group.isMember(this) && group.getSettings().isSet(path) && group.getPriority() > priority) {
-				result = group.getSettings().getStringList(path);
-				priority = group.getPriority();
-				found = true;
-			}
-		}
-		if(found) {
-			return result;
-		}
-
-		if(this.getFileManager().getRegionSettings().isSet(path)) {
-			return this.getFileManager().getRegionSettings().getStringList(path);
-		} else {
-			return this.getFileManager().getFallbackRegionSettings().getStringList(path);
-		}
+		return resolveSetting(path).asStringList();
 	}
 
 	/**
-	 * Get a configuration section setting for this region, defined as follows
-	 * - If the region has the setting in its own file (/regions/regionName.yml), use that
-	 * - If the region has groups, use the setting defined by the most important group, if any
-	 * - Otherwise fallback to the default.yml file setting
+	 * Get a configuration section setting for this region, resolved as described at {@link #resolveSetting(String)}.
 	 * @param path The path to get the setting of
 	 * @return The value of the setting
 	 */
 	public ConfigurationSection getConfigurationSectionSetting(String path) {
-		if(config.isSet(path)) {
-			return config.getConfigurationSection(path);
-		}
-		ConfigurationSection result = null;
-		int priority = Integer.MIN_VALUE;
-		boolean found = false;
-		for(RegionGroup group : plugin.getFileManager().getGroups()) {
-			if(group.isMember(this) && group.getSettings().isSet(path) && group.getPriority() > priority) {
-				result = group.getSettings().getConfigurationSection(path);
-				priority = group.getPriority();
-				found = true;
-			}
-		}
-		if(found) {
-			return result;
-		}
-
-		if(this.getFileManager().getRegionSettings().isSet(path)) {
-			return this.getFileManager().getRegionSettings().getConfigurationSection(path);
-		} else {
-			return this.getFileManager().getFallbackRegionSettings().getConfigurationSection(path);
-		}
+		return resolveSetting(path).asConfigurationSection();
 	}
 
 	/**
-	 * Get a configuration section setting for this region, defined as follows
-	 * - If the region has the setting in its own file (/regions/regionName.yml), use that
-	 * - If the region has groups, use the setting defined by the most important group, if any
-	 * - Otherwise fallback to the default.yml file setting
+	 * Get a configuration section setting for this region, resolved as described at {@link #resolveSetting(String)}.
 	 * @param path                 The path to get the setting of
 	 * @param translateProfileName The name of the profile section in the plugin config file to translate result strings into sections
 	 * @return The value of the setting
@@ -1226,37 +1087,18 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 	/**
 	 * Get a configuration section setting for this region, defined as follows
 	 * - If earlyResult is non-null, use that
-	 * - Else if the region has the setting in its own file (/regions/regionName.yml), use that
-	 * - Else if the region has groups, use the setting defined by the most important group, if any
-	 * - Otherwise fallback to the default.yml file setting
+	 * - Otherwise use the setting resolved as described at {@link #resolveSetting(String)}
 	 * @param path                 The path to get the setting of
 	 * @param translateProfileName The name of the profile section in the plugin config file to translate result strings into sections
 	 * @param earlyResult          Result that should have priority over the rest
 	 * @return The value of the setting
 	 */
 	public ConfigurationSection getConfigurationSectionSetting(String path, String translateProfileName, Object earlyResult) {
-		Object result = null;
+		Object result;
 		if(earlyResult != null) {
 			result = earlyResult;
-		} else if(config.isSet(path)) {
-			result = config.get(path);
 		} else {
-			boolean found = false;
-			int priority = Integer.MIN_VALUE;
-			for(RegionGroup group : plugin.getFileManager().getGroups()) {
-				if(group.isMember(this) && group.getSettings().isSet(path) && group.getPriority() > priority) {
-					result = group.getSettings().get(path);
-					priority = group.getPriority();
-					found = true;
-				}
-			}
-			if(!found) {
-				if(this.getFileManager().getRegionSettings().isSet(path)) {
-					result = this.getFileManager().getRegionSettings().get(path);
-				} else {
-					result = this.getFileManager().getFallbackRegionSettings().get(path);
-				}
-			}
+			result = resolveSetting(path).getValue();
 		}
 
 		// Either result is a ConfigurationSection or is used as key in the plugin config to get a ConfigurationSection
@@ -1269,6 +1111,23 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 		}
 	}
 
+	/**
+	 * Invalidate the cached settings of this region, should be called when a source of the settings changed
+	 * without going through {@link #setSetting(String, Object)} or the FileManager.
+	 */
+	public void invalidateSettingsCache() {
+		settingsCache.clear();
+	}
+
+	/**
+	 * Invalidate the cached settings of this region that could be affected by a change of a path,
+	 * used when a setting of a group of this region changed.
+	 * @param path The path that has been changed
+	 */
+	public void invalidateSettingsCache(String path) {
+		settingsCache.invalidate(path);
+	}
+
 	/**
 	 * Set a setting in the file of the region itself.
 	 * @param path  The path to set
@@ -1276,6 +1135,8 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 	 */
 	public void setSetting(String path, Object value) {
 		config.set(path, value);
+		settingsCache.invalidate(path);
+		getFileManager().regionSettingChanged(this, path, value);
 		this.saveRequired();
 	}
 
@@ -1303,91 +1164,86 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 		if(plugin.hasPermission(offlinePlayer, "areashop.limitbypass")) {
 			return new LimitResult(true, null, 0, 0, null);
 		}
-		GeneralRegion exclude = null;
-		if(extend) {
-			exclude = this;
+		IFileManager fileManager = plugin.getFileManager();
+		UUID player = offlinePlayer.getUniqueId();
+		// When extending this region should not count towards the limits
+		boolean excludeThis = extend
+				&& isOwner(player)
+				&& getBooleanSetting("general.countForLimits");
+
+		// Get the limit groups that apply to the player and this region
+		List<LimitGroup> groups = new ArrayList<>();
+		for(LimitGroup group : fileManager.getLimitGroups()) {
+			if(plugin.hasPermission(offlinePlayer, group.getPermission()) && group.matches(this)) {
+				groups.add(group);
+			}
 		}
-		String typePath;
-		if(type == RegionType.RENT) {
-			typePath = "rents";
-		} else {
-			typePath = "buys";
-		}
-		// Check all limitgroups the player has
-		List<String> groups = new ArrayList<>(plugin.getConfig().getConfigurationSection("limitGroups").getKeys(false));
-		while(!groups.isEmpty()) {
-			String group = groups.get(0);
-			if(plugin.hasPermission(offlinePlayer, "areashop.limits." + group) && this.matchesLimitGroup(group)) {
-				String pathPrefix = "limitGroups." + group + ".";
-				if(!plugin.getConfig().isInt(pathPrefix + "total")) {
-					AreaShop.warn("Limit group " + group + " in the config.yml file does not correctly specify the number of total regions (should be specified as total: <number>)");
-				}
-				if(!plugin.getConfig().isInt(pathPrefix + typePath)) {
-					AreaShop.warn("Limit group " + group + " in the config.yml file does not correctly specify the number of " + typePath + " regions (should be specified as " + typePath + ": <number>)");
-				}
-				int totalLimit = plugin.getConfig().getInt("limitGroups." + group + ".total");
-				int typeLimit = plugin.getConfig().getInt("limitGroups." + group + "." + typePath);
-				//AreaShop.debug("typeLimitOther="+typeLimit+", typePath="+typePath);
-				int totalCurrent = hasRegionsInLimitGroup(offlinePlayer, group, plugin.getFileManager().getRegionsRef(), exclude);
-				int typeCurrent;
-				if(type == RegionType.RENT) {
-					typeCurrent = hasRegionsInLimitGroup(offlinePlayer, group, plugin.getFileManager().getRentsRef(), exclude);
-				} else {
-					typeCurrent = hasRegionsInLimitGroup(offlinePlayer, group, plugin.getFileManager().getBuysRef(), exclude);
+
+		// Check the limits of each category, the limit groups of a category share the highest limit
+		for(int i = 0; i < groups.size(); i++) {
+			LimitGroup group = groups.get(i);
+			if(group == null) {
+				continue;
+			}
+			int totalLimit = group.getTotalLimit();
+			int typeLimit = group.getTypeLimit(type);
+			if(totalLimit == -1) {
+				totalLimit = Integer.MAX_VALUE;
+			}
+			if(typeLimit == -1) {
+				typeLimit = Integer.MAX_VALUE;
+			}
+			String totalHighestGroup = group.getName();
+			String typeHighestGroup = group.getName();
+			for(int j = i + 1; j < groups.size(); j++) {
+				LimitGroup checkGroup = groups.get(j);
+				if(checkGroup == null || checkGroup.getCategory() != group.getCategory()) {
+					continue;
 				}
-				if(totalLimit == -1) {
+				groups.set(j, null);
+				int totalLimitOther = checkGroup.getTotalLimit();
+				int typeLimitOther = checkGroup.getTypeLimit(type);
+				if(totalLimitOther > totalLimit) {
+					totalLimit = totalLimitOther;
+					totalHighestGroup = checkGroup.getName();
+				} else if(totalLimitOther == -1) {
 					totalLimit = Integer.MAX_VALUE;
 				}
-				if(typeLimit == -1) {
+				if(typeLimitOther > typeLimit) {
+					typeLimit = typeLimitOther;
+					typeHighestGroup = checkGroup.getName();
+				} else if(typeLimitOther == -1) {
 					typeLimit = Integer.MAX_VALUE;
 				}
-				String totalHighestGroup = group;
-				String typeHighestGroup = group;
-				groups.remove(group);
-				// Get the highest number from the groups of the same category
-				List<String> groupsCopy = new ArrayList<>(groups);
-				for(String checkGroup : groupsCopy) {
-					if(plugin.hasPermission(offlinePlayer, "areashop.limits." + checkGroup) && this.matchesLimitGroup(checkGroup)) {
-						if(limitGroupsOfSameCategory(group, checkGroup)) {
-							groups.remove(checkGroup);
-							int totalLimitOther = plugin.getConfig().getInt("limitGroups." + checkGroup + ".total");
-							int typeLimitOther = plugin.getConfig().getInt("limitGroups." + checkGroup + "." + typePath);
-							if(totalLimitOther > totalLimit) {
-								totalLimit = totalLimitOther;
-								totalHighestGroup = checkGroup;
-							} else if(totalLimitOther == -1) {
-								totalLimit = Integer.MAX_VALUE;
-							}
-							if(typeLimitOther > typeLimit) {
-								typeLimit = typeLimitOther;
-								typeHighestGroup = checkGroup;
-							} else if(typeLimitOther == -1) {
-								typeLimit = Integer.MAX_VALUE;
-							}
-						}
-					} else {
-						groups.remove(checkGroup);
-					}
+			}
+
+			// Limit groups of the same category match the same regions, so the counts of the first one can be used
+			int totalCurrent = fileManager.getLimitGroupCount(player, group, null);
+			int typeCurrent = fileManager.getLimitGroupCount(player, group, type);
+			if(excludeThis) {
+				totalCurrent--;
+				if(getType() == type) {
+					typeCurrent--;
 				}
-				// Check if the limits stop the player from buying the region
-				if(typeCurrent >= typeLimit) {
-					LimitType limitType;
-					if(type == RegionType.RENT) {
-						if(extend) {
-							limitType = LimitType.EXTEND;
-						} else {
-							limitType = LimitType.RENTS;
-						}
+			}
+
+			// Check if the limits stop the player from buying the region
+			if(typeCurrent >= typeLimit) {
+				LimitType limitType;
+				if(type == RegionType.RENT) {
+					if(extend) {
+						limitType = LimitType.EXTEND;
 					} else {
-						limitType = LimitType.BUYS;
+						limitType = LimitType.RENTS;
 					}
-					return new LimitResult(false, limitType, typeLimit, typeCurrent, typeHighestGroup);
-				}
-				if(totalCurrent >= totalLimit) {
-					return new LimitResult(false, LimitType.TOTAL, totalLimit, totalCurrent, totalHighestGroup);
+				} else {
+					limitType = LimitType.BUYS;
 				}
+				return new LimitResult(false, limitType, typeLimit, typeCurrent, typeHighestGroup);
+			}
+			if(totalCurrent >= totalLimit) {
+				return new LimitResult(false, LimitType.TOTAL, totalLimit, totalCurrent, totalHighestGroup);
 			}
-			groups.remove(group);
 		}
 		return new LimitResult(true, null, 0, 0, null);
 	}
@@ -1464,23 +1320,6 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 		}
 	}
 
-	/**
-	 * Checks if two limitGroups are of the same category (same groups and worlds lists).
-	 * @param firstGroup  The first group
-	 * @param secondGroup The second group
-	 * @return true if the groups and worlds lists are the same, otherwise false
-	 */
-	private boolean limitGroupsOfSameCategory(String firstGroup, String secondGroup) {
-		List<String> firstGroups = plugin.getConfig().getStringList("limitGroups." + firstGroup + ".groups");
-		List<String> secondGroups = plugin.getConfig().getStringList("limitGroups." + secondGroup + ".groups");
-		if(!firstGroups.containsAll(secondGroups) || !secondGroups.containsAll(firstGroups)) {
-			return false;
-		}
-		List<String> firstWorlds = plugin.getConfig().getStringList("limitGroups." + firstGroup + ".worlds");
-		List<String> secondWorlds = plugin.getConfig().getStringList("limitGroups." + secondGroup + ".worlds");
-		return !(!firstWorlds.containsAll(secondWorlds) || !secondWorlds.containsAll(firstWorlds));
-	}
-
 	/**
 	 * Get the amount of regions a player has matching a certain limits group (config.yml -- limitGroups)
 	 * @param player     The player to check the amount for
@@ -1514,11 +1353,12 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 			if(groups.isEmpty()) {
 				return true;
 			} else {
-				boolean inGroups = false;
-				for(RegionGroup checkGroup : plugin.getFileManager().getGroups()) {
-					inGroups = inGroups || (groups.contains(checkGroup.getName()) && checkGroup.isMember(this));
+				for(RegionGroup checkGroup : plugin.getFileManager().getGroupsOf(this)) {
+					if(groups.contains(checkGroup.getName())) {
+						return true;
+					}
 				}
-				return inGroups;
+				return false;
 			}
 		}
 		return false;
@@ -1529,6 +1369,15 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 	 * @param type The type of event
 	 */
 	public void handleSchematicEvent(RegionEvent type) {
+		handleSchematicEvent(type, SchematicJobQueue.Priority.PLAYER);
+	}
+
+	/**
+	 * Checks an event and queues saving to and restoring from schematic for it.
+	 * @param type     The type of event
+	 * @param priority The priority of the schematic jobs, AUTOMATIC when not triggered by a player or command
+	 */
+	public void handleSchematicEvent(RegionEvent type, SchematicJobQueue.Priority priority) {
 		// Check the individual>group>default setting
 		if(!isRestoreEnabled()) {
 			AreaShop.debug("Schematic operations for " + getName() + " not enabled, skipped");
@@ -1542,25 +1391,47 @@ public abstract class GeneralRegion implements GeneralRegionInterface, Comparabl
 
 		String save = profileSection.getString(type.getValue() + ".save");
 		String restore = profileSection.getString(type.getValue() + ".restore");
+		SchematicJobQueue jobQueue = plugin.getSchematicJobQueue();
 		// Save the region if needed
-		boolean async = worldEditInterface.supportsAsyncOperations();
 		if(save != null && !save.isBlank()) {
 			save = Message.fromString(save).replacements(this).getSingle();
-			if (async) {
-				saveRegionBlocksAsync(save);
-			} else {
-				saveRegionBlocks(save);
-			}
+			jobQueue.submit(this, SchematicJobQueue.JobType.SAVE, save, priority);
 		}
 		// Restore the region if needed
 		if(restore != null && !restore.isBlank()) {
 			restore = Message.fromString(restore).replacements(this).getSingle();
-			if (async) {
-				restoreRegionBlocksAsync(restore);
-			} else {
-				restoreRegionBlocks(restore);
+			jobQueue.submit(this, SchematicJobQueue.JobType.RESTORE, restore, priority);
+		}
+	}
+
+	/**
+	 * Get the names of the schematics the schematic profile of the region uses.
+	 * Schematics saved when the region is deleted are left out, those are meant to be kept after deleting it.
+	 * @return The schematic names (extension and folder will be added)
+	 */
+	public Set<String> getSchematicNames() {
+		Set<String> result = new HashSet<>();
+		ConfigurationSection profileSection = getConfigurationSectionSetting("general.schematicProfile", "schematicProfiles");
+		if(profileSection == null) {
+			return result;
+		}
+		Set<String> kept = new HashSet<>();
+		for(RegionEvent type : RegionEvent.values()) {
+			for(String operation : new String[]{"save", "restore"}) {
+				String name = profileSection.getString(type.getValue() + "." + operation);
+				if(name == null || name.isBlank()) {
+					continue;
+				}
+				name = Message.fromString(name).replacements(this).getSingle();
+				if(type == RegionEvent.DELETED && operation.equals("save")) {
+					kept.add(name);
+				} else {
+					result.add(name);
+				}
 			}
 		}
+		result.removeAll(kept);
+		return result;
 	}
 
 	// COMMAND EXECUTING
@@ -0,0 +1,149 @@
+package me.wiefferink.areashop.regions;
+
+import me.wiefferink.areashop.AreaShop;
+import org.bukkit.configuration.ConfigurationSection;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Limit group from the config.yml file (limitGroups section), compiled to check limits without reading the config.
+ */
+public class LimitGroup {
+
+	private final String name;
+	private final String permission;
+	private final int index;
+	private final Set<String> worlds;
+	private final Set<String> groups;
+	private final int total;
+	private final int rents;
+	private final int buys;
+	private int category;
+
+	/**
+	 * Constructor.
+	 * @param name    The name of the limit group
+	 * @param index   The index of the limit group in the config
+	 * @param section The section with the settings of the limit group
+	 */
+	private LimitGroup(String name, int index, ConfigurationSection section) {
+		this.name = name;
+		this.permission = "areashop.limits." + name;
+		this.index = index;
+		this.worlds = new HashSet<>(section.getStringList("worlds"));
+		this.groups = new HashSet<>(section.getStringList("groups"));
+		this.total = section.getInt("total");
+		this.rents = section.getInt("rents");
+		this.buys = section.getInt("buys");
+		this.category = index;
+	}
+
+	/**
+	 * Compile the limit groups from the config.
+	 * @param section The limitGroups section of the config, can be null
+	 * @return The limit groups in the order of the config
+	 */
+	@Nonnull
+	public static List<LimitGroup> compile(ConfigurationSection section) {
+		if(section == null) {
+			return Collections.emptyList();
+		}
+		List<LimitGroup> result = new ArrayList<>();
+		for(String name : section.getKeys(false)) {
+			ConfigurationSection groupSection = section.getConfigurationSection(name);
+			if(groupSection == null) {
+				AreaShop.warn("Limit group " + name + " in the config.yml file is not a section, it will be ignored");
+				continue;
+			}
+			for(String typePath : new String[]{"total", "rents", "buys"}) {
+				if(!groupSection.isInt(typePath)) {
+					AreaShop.warn("Limit group " + name + " in the config.yml file does not correctly specify the number of " + typePath + " regions (should be specified as " + typePath + ": <number>)");
+				}
+			}
+			LimitGroup group = new LimitGroup(name, result.size(), groupSection);
+			// Limit groups with the same filters are in the same category, the highest limit of those is used
+			for(LimitGroup other : result) {
+				if(other.worlds.equals(group.worlds) && other.groups.equals(group.groups)) {
+					group.category = other.category;
+					break;
+				}
+			}
+			result.add(group);
+		}
+		return Collections.unmodifiableList(result);
+	}
+
+	/**
+	 * Check if a region matches the world and group filters of this limit group.
+	 * @param region The region to check
+	 * @return true if the region applies to this limit group, otherwise false
+	 */
+	public boolean matches(GeneralRegion region) {
+		if(!worlds.isEmpty() && !worlds.contains(region.getWorldName())) {
+			return false;
+		}
+		if(groups.isEmpty()) {
+			return true;
+		}
+		for(RegionGroup group : region.getFileManager().getGroupsOf(region)) {
+			if(groups.contains(group.getName())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Get the name of the limit group.
+	 * @return The name of the limit group
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Get the permission that is required for this limit group to apply.
+	 * @return The permission node
+	 */
+	public String getPermission() {
+		return permission;
+	}
+
+	/**
+	 * Get the index of this limit group in the config.
+	 * @return The index of the limit group
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * Get the category of this limit group, limit groups with the same world and group filters share a category.
+	 * @return The category of the limit group (index of the first limit group of the category)
+	 */
+	public int getCategory() {
+		return category;
+	}
+
+	/**
+	 * Get the maximum number of regions in total.
+	 * @return The total limit, -1 for unlimited
+	 */
+	public int getTotalLimit() {
+		return total;
+	}
+
+	/**
+	 * Get the maximum number of regions of a type.
+	 * @param type The type of region
+	 * @return The limit for the type, -1 for unlimited
+	 */
+	public int getTypeLimit(GeneralRegion.RegionType type) {
+		return type == GeneralRegion.RegionType.RENT ? rents : buys;
+	}
+}
@@ -37,7 +37,7 @@ public class RegionGroup {
 		setSetting("name", name);
 
 		// Load regions and worlds
-		regions = new HashSet<>(getSettings().getStringList("regions"));
+		regions = new HashSet<>(fileManager.getStoredGroupMembers(name));
 		worlds = new HashSet<>(getSettings().getStringList("worlds"));
 	}
 
@@ -58,6 +58,26 @@ public class RegionGroup {
 		return autoRegions;
 	}
 
+	/**
+	 * Update the automatically added regions for a region that has been added to AreaShop.
+	 * @param region The region that has been added
+	 */
+	public void regionAdded(GeneralRegion region) {
+		if(!autoDirty && worlds.contains(region.getWorldName())) {
+			autoRegions.add(region.getName());
+		}
+	}
+
+	/**
+	 * Update the automatically added regions for a region that has been removed from AreaShop.
+	 * @param region The region that has been removed
+	 */
+	public void regionRemoved(GeneralRegion region) {
+		if(!autoDirty) {
+			autoRegions.remove(region.getName());
+		}
+	}
+
 	/**
 	 * Mark that automatically added regions should be regenerated.
 	 */
@@ -75,6 +95,7 @@ public class RegionGroup {
 			setSetting("regionsFromWorlds", new ArrayList<>(worlds));
 			saveRequired();
 			autoDirty();
+			fileManager.updateGroupMembership(this);
 			return true;
 		}
 		return false;
@@ -90,6 +111,7 @@ public class RegionGroup {
 			setSetting("regionsFromWorlds", new ArrayList<>(worlds));
 			saveRequired();
 			autoDirty();
+			fileManager.updateGroupMembership(this);
 			return true;
 		}
 		return false;
@@ -110,8 +132,8 @@ public class RegionGroup {
 	 */
 	public boolean addMember(GeneralRegion region) {
 		if(regions.add(region.getName())) {
-			setSetting("regions", new ArrayList<>(regions));
-			saveRequired();
+			fileManager.storeGroupMember(this, region.getName(), true);
+			fileManager.updateGroupMembership(this, region);
 			return true;
 		}
 		return false;
@@ -124,8 +146,8 @@ public class RegionGroup {
 	 */
 	public boolean removeMember(GeneralRegion region) {
 		if(regions.remove(region.getName())) {
-			setSetting("regions", new ArrayList<>(regions));
-			saveRequired();
+			fileManager.storeGroupMember(this, region.getName(), false);
+			fileManager.updateGroupMembership(this, region);
 			return true;
 		}
 		return false;
@@ -183,7 +205,8 @@ public class RegionGroup {
 	 * @return true if the region is in the group, otherwise false
 	 */
 	public boolean isMember(GeneralRegion region) {
-		return getMembers().contains(region.getName());
+		String regionName = region.getName();
+		return regions.contains(regionName) || getAutoRegions().contains(regionName);
 	}
 
 	/**
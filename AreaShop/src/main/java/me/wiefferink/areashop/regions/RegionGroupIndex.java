@@ -0,0 +1,187 @@
+package me.wiefferink.areashop.regions;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reverse index from regions to the groups they are a member of.
+ * The groups of each region are sorted by priority (highest first), so the first group that has a setting wins.
+ * Also keeps the regions of each group, to find the regions affected by a change of a group.
+ */
+public class RegionGroupIndex {
+
+	private static final Comparator<RegionGroup> PRIORITY_ORDER = Comparator.comparingInt(RegionGroup::getPriority).reversed();
+
+	private final Map<String, List<RegionGroup>> groupsByRegion = new HashMap<>();
+	// Lowercase region names by lowercase group name
+	private final Map<String, Set<String>> regionsByGroup = new HashMap<>();
+
+	/**
+	 * Get the groups a region is member of.
+	 * @param regionName The name of the region (will be normalized)
+	 * @return Unmodifiable list of groups sorted by priority, highest priority first
+	 */
+	@Nonnull
+	public List<RegionGroup> getGroups(String regionName) {
+		List<RegionGroup> result = groupsByRegion.get(regionName.toLowerCase(Locale.ENGLISH));
+		if(result == null) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(result);
+	}
+
+	/**
+	 * Get the regions that are member of a group.
+	 * @param group The group to get the regions of
+	 * @return Unmodifiable set with the lowercase names of the regions
+	 */
+	@Nonnull
+	public Set<String> getRegionNames(RegionGroup group) {
+		Set<String> result = regionsByGroup.get(group.getLowerCaseName());
+		if(result == null) {
+			return Collections.emptySet();
+		}
+		return Collections.unmodifiableSet(result);
+	}
+
+	/**
+	 * Update the membership of a region for a group.
+	 * @param group  The group to update
+	 * @param region The region to update
+	 * @return true if the membership of the region changed, otherwise false
+	 */
+	public boolean update(RegionGroup group, GeneralRegion region) {
+		String key = region.getLowerCaseName();
+		List<RegionGroup> groups = groupsByRegion.get(key);
+		if(group.isMember(region)) {
+			if(groups == null) {
+				groups = new ArrayList<>(2);
+				groupsByRegion.put(key, groups);
+			}
+			if(!groups.contains(group)) {
+				insertSorted(groups, group);
+				regionsByGroup.computeIfAbsent(group.getLowerCaseName(), k -> new HashSet<>()).add(key);
+				return true;
+			}
+		} else if(groups != null && groups.remove(group)) {
+			if(groups.isEmpty()) {
+				groupsByRegion.remove(key);
+			}
+			removeFromGroup(group.getLowerCaseName(), key);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Update the membership of all regions for a group.
+	 * @param group   The group to update
+	 * @param regions All regions
+	 */
+	public void update(RegionGroup group, Collection<? extends GeneralRegion> regions) {
+		for(GeneralRegion region : regions) {
+			update(group, region);
+		}
+	}
+
+	/**
+	 * Add a region to the index.
+	 * @param region The region to add
+	 * @param groups All groups
+	 */
+	public void addRegion(GeneralRegion region, Collection<RegionGroup> groups) {
+		for(RegionGroup group : groups) {
+			update(group, region);
+		}
+	}
+
+	/**
+	 * Remove a region from the index.
+	 * @param regionName The name of the region (will be normalized)
+	 */
+	public void removeRegion(String regionName) {
+		String key = regionName.toLowerCase(Locale.ENGLISH);
+		List<RegionGroup> groups = groupsByRegion.remove(key);
+		if(groups != null) {
+			for(RegionGroup group : groups) {
+				removeFromGroup(group.getLowerCaseName(), key);
+			}
+		}
+	}
+
+	/**
+	 * Remove a group from the index.
+	 * @param group The group to remove
+	 */
+	public void removeGroup(RegionGroup group) {
+		Set<String> regionNames = regionsByGroup.remove(group.getLowerCaseName());
+		if(regionNames == null) {
+			return;
+		}
+		for(String regionName : regionNames) {
+			List<RegionGroup> groups = groupsByRegion.get(regionName);
+			if(groups != null && groups.remove(group) && groups.isEmpty()) {
+				groupsByRegion.remove(regionName);
+			}
+		}
+	}
+
+	/**
+	 * Sort the groups of all regions again, should be called when the priority of a group changes.
+	 */
+	public void sort() {
+		for(List<RegionGroup> groups : groupsByRegion.values()) {
+			if(groups.size() > 1) {
+				groups.sort(PRIORITY_ORDER);
+			}
+		}
+	}
+
+	/**
+	 * Rebuild the complete index.
+	 * @param groups  All groups
+	 * @param regions All regions
+	 */
+	public void rebuild(Collection<RegionGroup> groups, Collection<? extends GeneralRegion> regions) {
+		groupsByRegion.clear();
+		regionsByGroup.clear();
+		for(RegionGroup group : groups) {
+			update(group, regions);
+		}
+	}
+
+	/**
+	 * Remove a region from the regions of a group.
+	 * @param groupName  The lowercase name of the group
+	 * @param regionName The lowercase name of the region
+	 */
+	private void removeFromGroup(String groupName, String regionName) {
+		Set<String> regionNames = regionsByGroup.get(groupName);
+		if(regionNames != null && regionNames.remove(regionName) && regionNames.isEmpty()) {
+			regionsByGroup.remove(groupName);
+		}
+	}
+
+	/**
+	 * Insert a group in a list of groups, keeping the priority order.
+	 * @param groups The sorted list to insert into
+	 * @param group  The group to insert
+	 */
+	private static void insertSorted(List<RegionGroup> groups, RegionGroup group) {
+		int priority = group.getPriority();
+		int index = 0;
+		while(index < groups.size() && groups.get(index).getPriority() >= priority) {
+			index++;
+		}
+		groups.add(index, group);
+	}
+}
@@ -0,0 +1,114 @@
+package me.wiefferink.areashop.regions;
+
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Index from players to the regions they own (as renter or buyer) and the regions they are landlord of.
+ */
+public class RegionOwnerIndex {
+
+	private final Map<UUID, Set<GeneralRegion>> regionsByOwner = new HashMap<>();
+	private final Map<UUID, Set<GeneralRegion>> regionsByLandlord = new HashMap<>();
+	private final Map<GeneralRegion, UUID> ownerOfRegion = new HashMap<>();
+	private final Map<GeneralRegion, UUID> landlordOfRegion = new HashMap<>();
+
+	/**
+	 * Get the regions owned by a player (rented or bought).
+	 * @param player The player to get the regions for
+	 * @return Unmodifiable set with the regions the player owns
+	 */
+	@Nonnull
+	public Set<GeneralRegion> getOwnedRegions(UUID player) {
+		return get(regionsByOwner, player);
+	}
+
+	/**
+	 * Get the regions a player is landlord of.
+	 * @param player The player to get the regions for
+	 * @return Unmodifiable set with the regions the player is landlord of
+	 */
+	@Nonnull
+	public Set<GeneralRegion> getLandlordRegions(UUID player) {
+		return get(regionsByLandlord, player);
+	}
+
+	/**
+	 * Get the owner of a region as currently known by the index.
+	 * @param region The region to get the owner for
+	 * @return The owner of the region, or null if it has no owner or is not indexed
+	 */
+	public UUID getOwner(GeneralRegion region) {
+		return ownerOfRegion.get(region);
+	}
+
+	/**
+	 * Update the owner and landlord of a region in the index.
+	 * @param region The region to update
+	 */
+	public void update(GeneralRegion region) {
+		move(regionsByOwner, ownerOfRegion, region, region.getOwner());
+		move(regionsByLandlord, landlordOfRegion, region, region.getLandlord());
+	}
+
+	/**
+	 * Remove a region from the index.
+	 * @param region The region to remove
+	 */
+	public void remove(GeneralRegion region) {
+		move(regionsByOwner, ownerOfRegion, region, null);
+		move(regionsByLandlord, landlordOfRegion, region, null);
+	}
+
+	/**
+	 * Remove all regions from the index.
+	 */
+	public void clear() {
+		regionsByOwner.clear();
+		regionsByLandlord.clear();
+		ownerOfRegion.clear();
+		landlordOfRegion.clear();
+	}
+
+	/**
+	 * Move a region from the set of the previous player to the set of a new player.
+	 * @param byPlayer  The map with regions by player
+	 * @param byRegion  The map with the player by region
+	 * @param region    The region to move
+	 * @param newPlayer The player the region belongs to now, null for none
+	 */
+	private static void move(Map<UUID, Set<GeneralRegion>> byPlayer, Map<GeneralRegion, UUID> byRegion, GeneralRegion region, UUID newPlayer) {
+		UUID oldPlayer = newPlayer == null ? byRegion.remove(region) : byRegion.put(region, newPlayer);
+		if(oldPlayer != null && !oldPlayer.equals(newPlayer)) {
+			Set<GeneralRegion> regions = byPlayer.get(oldPlayer);
+			if(regions != null && regions.remove(region) && regions.isEmpty()) {
+				byPlayer.remove(oldPlayer);
+			}
+		}
+		if(newPlayer != null) {
+			byPlayer.computeIfAbsent(newPlayer, key -> new HashSet<>()).add(region);
+		}
+	}
+
+	/**
+	 * Get the regions of a player from a map.
+	 * @param byPlayer The map to get the regions from
+	 * @param player   The player to get the regions for
+	 * @return Unmodifiable set with the regions
+	 */
+	private static Set<GeneralRegion> get(Map<UUID, Set<GeneralRegion>> byPlayer, UUID player) {
+		if(player == null) {
+			return Collections.emptySet();
+		}
+		Set<GeneralRegion> result = byPlayer.get(player);
+		if(result == null) {
+			return Collections.emptySet();
+		}
+		return Collections.unmodifiableSet(result);
+	}
+}
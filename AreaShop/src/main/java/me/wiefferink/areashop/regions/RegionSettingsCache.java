@@ -0,0 +1,224 @@
+package me.wiefferink.areashop.regions;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import javax.annotation.Nonnull;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache of the resolved settings of a single region.
+ * For each path the winning value is stored together with the layer it came from (region file, group, default.yml or fallback),
+ * so that repeated lookups do not need to walk all groups again.
+ */
+public class RegionSettingsCache {
+
+	// Statistics over all regions
+	private static long hits = 0;
+	private static long misses = 0;
+
+	// Enum for the layers a setting can be resolved from, ordered by importance
+	public enum Layer {
+		REGION,
+		GROUP,
+		DEFAULT,
+		FALLBACK
+	}
+
+	private final Map<String, ResolvedSetting> resolved = new HashMap<>();
+	private long generation = -1;
+
+	/**
+	 * Get a resolved setting from the cache.
+	 * @param path       The path of the setting
+	 * @param generation The current settings generation of the FileManager, cached values of older generations are dropped
+	 * @return The resolved setting if cached, otherwise null
+	 */
+	public ResolvedSetting get(String path, long generation) {
+		if(this.generation != generation) {
+			resolved.clear();
+			this.generation = generation;
+		}
+		ResolvedSetting result = resolved.get(path);
+		if(result == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return result;
+	}
+
+	/**
+	 * Store a resolved setting.
+	 * @param path    The path of the setting
+	 * @param setting The resolved setting
+	 */
+	public void put(String path, ResolvedSetting setting) {
+		resolved.put(path, setting);
+	}
+
+	/**
+	 * Invalidate all cached settings that could be affected by a change of the given path.
+	 * This includes the path itself, its children and its parents (sections containing it).
+	 * @param path The path that has been changed
+	 */
+	public void invalidate(String path) {
+		if(resolved.isEmpty()) {
+			return;
+		}
+		Iterator<String> it = resolved.keySet().iterator();
+		while(it.hasNext()) {
+			String cached = it.next();
+			if(isRelated(cached, path)) {
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Remove all cached settings.
+	 */
+	public void clear() {
+		resolved.clear();
+	}
+
+	/**
+	 * Get the number of cached settings.
+	 * @return The number of cached settings
+	 */
+	public int size() {
+		return resolved.size();
+	}
+
+	/**
+	 * Check if two paths refer to the same setting, or one is part of the other.
+	 * @param first  The first path
+	 * @param second The second path
+	 * @return true if a change to one of the paths could change the value of the other, otherwise false
+	 */
+	public static boolean isRelated(String first, String second) {
+		if(first.length() == second.length()) {
+			return first.equals(second);
+		}
+		String shortest = first.length() < second.length() ? first : second;
+		String longest = first.length() < second.length() ? second : first;
+		return longest.startsWith(shortest) && longest.charAt(shortest.length()) == '.';
+	}
+
+	/**
+	 * Get the number of lookups that have been answered from the cache.
+	 * @return The number of cache hits over all regions
+	 */
+	public static long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Get the number of lookups that had to be resolved through the region, groups and default settings.
+	 * @return The number of cache misses over all regions
+	 */
+	public static long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Setting value resolved for a region, including the layer and section that provided it.
+	 */
+	public static class ResolvedSetting {
+		private final Layer layer;
+		private final ConfigurationSection source;
+		private final String path;
+		private final Object value;
+
+		/**
+		 * Constructor.
+		 * @param layer  The layer that provided the value
+		 * @param source The section that provided the value
+		 * @param path   The path of the setting
+		 * @param value  The raw value (null if it is not set on any layer)
+		 */
+		public ResolvedSetting(@Nonnull Layer layer, @Nonnull ConfigurationSection source, @Nonnull String path, Object value) {
+			this.layer = layer;
+			this.source = source;
+			this.path = path;
+			this.value = value;
+		}
+
+		/**
+		 * Get the layer this setting has been resolved from.
+		 * @return The layer providing the value
+		 */
+		public Layer getLayer() {
+			return layer;
+		}
+
+		/**
+		 * Get the raw value of the setting.
+		 * @return The raw value, or null if not set
+		 */
+		public Object getValue() {
+			return value;
+		}
+
+		/**
+		 * Get the value as boolean (strings are handled as booleans).
+		 * @return The value as boolean
+		 */
+		public boolean asBoolean() {
+			if(value instanceof String string) {
+				return string.equalsIgnoreCase("true");
+			}
+			return value instanceof Boolean bool && bool;
+		}
+
+		/**
+		 * Get the value as integer.
+		 * @return The value as integer, 0 if it is not a number
+		 */
+		public int asInt() {
+			return value instanceof Number number ? number.intValue() : 0;
+		}
+
+		/**
+		 * Get the value as long.
+		 * @return The value as long, 0 if it is not a number
+		 */
+		public long asLong() {
+			return value instanceof Number number ? number.longValue() : 0;
+		}
+
+		/**
+		 * Get the value as double.
+		 * @return The value as double, 0 if it is not a number
+		 */
+		public double asDouble() {
+			return value instanceof Number number ? number.doubleValue() : 0;
+		}
+
+		/**
+		 * Get the value as string.
+		 * @return The value as string, or null if not set
+		 */
+		public String asString() {
+			return value == null ? null : value.toString();
+		}
+
+		/**
+		 * Get the value as string list.
+		 * @return The value as string list (empty if not set)
+		 */
+		public List<String> asStringList() {
+			return source.getStringList(path);
+		}
+
+		/**
+		 * Get the value as configuration section.
+		 * @return The value as configuration section, or null if it is not a section
+		 */
+		public ConfigurationSection asConfigurationSection() {
+			return value instanceof ConfigurationSection section ? section : null;
+		}
+	}
+}
@@ -0,0 +1,203 @@
+package me.wiefferink.areashop.regions;
+
+import com.sk89q.worldguard.protection.regions.ProtectedRegion;
+import org.bukkit.util.Vector;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Spatial index of the bounding boxes of AreaShop regions, using a grid of chunks per world.
+ * Regions that cover a lot of chunks are not put in the grid, but checked for each query instead.
+ */
+public class RegionSpatialIndex {
+
+	// Regions covering more chunks than this are kept in a separate list instead of the grid
+	private static final int MAX_GRID_CHUNKS = 1024;
+
+	private final Map<String, WorldIndex> worlds = new HashMap<>();
+	private final Map<GeneralRegion, Bounds> boundsOfRegion = new HashMap<>();
+
+	/**
+	 * Add a region to the index, or update its bounds if it already is.
+	 * @param region The region to update
+	 */
+	public void update(GeneralRegion region) {
+		Bounds bounds = null;
+		ProtectedRegion worldGuardRegion = region.getRegion();
+		String worldName = region.getWorldName();
+		if(worldGuardRegion != null && worldName != null) {
+			Vector min = region.getMinimumPoint();
+			Vector max = region.getMaximumPoint();
+			bounds = new Bounds(worldName, min.getBlockX(), min.getBlockY(), min.getBlockZ(), max.getBlockX(), max.getBlockY(), max.getBlockZ());
+		}
+		Bounds oldBounds = boundsOfRegion.get(region);
+		if(bounds == null ? oldBounds == null : bounds.equals(oldBounds)) {
+			return;
+		}
+		if(oldBounds != null) {
+			remove(region);
+		}
+		if(bounds != null) {
+			boundsOfRegion.put(region, bounds);
+			worlds.computeIfAbsent(bounds.world(), key -> new WorldIndex()).add(region, bounds);
+		}
+	}
+
+	/**
+	 * Remove a region from the index.
+	 * @param region The region to remove
+	 */
+	public void remove(GeneralRegion region) {
+		Bounds bounds = boundsOfRegion.remove(region);
+		if(bounds == null) {
+			return;
+		}
+		WorldIndex worldIndex = worlds.get(bounds.world());
+		if(worldIndex != null) {
+			worldIndex.remove(region, bounds);
+			if(worldIndex.isEmpty()) {
+				worlds.remove(bounds.world());
+			}
+		}
+	}
+
+	/**
+	 * Remove all regions from the index.
+	 */
+	public void clear() {
+		worlds.clear();
+		boundsOfRegion.clear();
+	}
+
+	/**
+	 * Get the regions of which the bounding box intersects with a box.
+	 * @param world The name of the world
+	 * @param minX  The minimum x coordinate of the box
+	 * @param minY  The minimum y coordinate of the box
+	 * @param minZ  The minimum z coordinate of the box
+	 * @param maxX  The maximum x coordinate of the box
+	 * @param maxY  The maximum y coordinate of the box
+	 * @param maxZ  The maximum z coordinate of the box
+	 * @return List with the regions intersecting with the box
+	 */
+	@Nonnull
+	public List<GeneralRegion> getRegions(String world, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+		List<GeneralRegion> result = new ArrayList<>();
+		WorldIndex worldIndex = worlds.get(world);
+		if(worldIndex == null) {
+			return result;
+		}
+		Bounds query = new Bounds(world, minX, minY, minZ, maxX, maxY, maxZ);
+		Collection<GeneralRegion> candidates;
+		if(query.chunks() > worldIndex.all.size()) {
+			// Checking all regions is cheaper than checking all chunks of the box
+			candidates = worldIndex.all;
+		} else {
+			Set<GeneralRegion> found = new LinkedHashSet<>(worldIndex.large);
+			for(int chunkX = minX >> 4; chunkX <= maxX >> 4; chunkX++) {
+				for(int chunkZ = minZ >> 4; chunkZ <= maxZ >> 4; chunkZ++) {
+					List<GeneralRegion> inChunk = worldIndex.grid.get(chunkKey(chunkX, chunkZ));
+					if(inChunk != null) {
+						found.addAll(inChunk);
+					}
+				}
+			}
+			candidates = found;
+		}
+		for(GeneralRegion region : candidates) {
+			Bounds bounds = boundsOfRegion.get(region);
+			if(bounds != null && bounds.intersects(query)) {
+				result.add(region);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Get the key of a chunk in the grid.
+	 * @param chunkX The x coordinate of the chunk
+	 * @param chunkZ The z coordinate of the chunk
+	 * @return The key of the chunk
+	 */
+	private static long chunkKey(int chunkX, int chunkZ) {
+		return ((long)chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Bounding box of a region.
+	 */
+	private record Bounds(String world, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+
+		/**
+		 * Check if this box intersects with another box.
+		 * @param other The box to check
+		 * @return true if the boxes overlap anywhere, otherwise false
+		 */
+		boolean intersects(Bounds other) {
+			return minX <= other.maxX && maxX >= other.minX
+					&& minY <= other.maxY && maxY >= other.minY
+					&& minZ <= other.maxZ && maxZ >= other.minZ;
+		}
+
+		/**
+		 * Get the number of chunks covered by this box.
+		 * @return The number of chunks
+		 */
+		long chunks() {
+			return ((long)(maxX >> 4) - (minX >> 4) + 1) * ((long)(maxZ >> 4) - (minZ >> 4) + 1);
+		}
+	}
+
+	/**
+	 * Grid of the regions in a world.
+	 */
+	private static class WorldIndex {
+		private final Map<Long, List<GeneralRegion>> grid = new HashMap<>();
+		private final Set<GeneralRegion> large = new LinkedHashSet<>();
+		private final Set<GeneralRegion> all = new LinkedHashSet<>();
+
+		void add(GeneralRegion region, Bounds bounds) {
+			if(!all.add(region)) {
+				return;
+			}
+			if(bounds.chunks() > MAX_GRID_CHUNKS) {
+				large.add(region);
+				return;
+			}
+			for(int chunkX = bounds.minX() >> 4; chunkX <= bounds.maxX() >> 4; chunkX++) {
+				for(int chunkZ = bounds.minZ() >> 4; chunkZ <= bounds.maxZ() >> 4; chunkZ++) {
+					grid.computeIfAbsent(chunkKey(chunkX, chunkZ), key -> new ArrayList<>(2)).add(region);
+				}
+			}
+		}
+
+		void remove(GeneralRegion region, Bounds bounds) {
+			if(!all.remove(region)) {
+				return;
+			}
+			if(large.remove(region)) {
+				return;
+			}
+			for(int chunkX = bounds.minX() >> 4; chunkX <= bounds.maxX() >> 4; chunkX++) {
+				for(int chunkZ = bounds.minZ() >> 4; chunkZ <= bounds.maxZ() >> 4; chunkZ++) {
+					long key = chunkKey(chunkX, chunkZ);
+					List<GeneralRegion> inChunk = grid.get(key);
+					if(inChunk != null && inChunk.remove(region) && inChunk.isEmpty()) {
+						grid.remove(key);
+					}
+				}
+			}
+		}
+
+		boolean isEmpty() {
+			return all.isEmpty();
+		}
+	}
+}
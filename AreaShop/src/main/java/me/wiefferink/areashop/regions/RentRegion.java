@@ -10,6 +10,7 @@ import me.wiefferink.areashop.events.notify.UnrentedRegionEvent;
 import me.wiefferink.areashop.interfaces.WorldEditInterface;
 import me.wiefferink.areashop.interfaces.WorldGuardInterface;
 import me.wiefferink.areashop.managers.FeatureManager;
+import me.wiefferink.areashop.managers.SchematicJobQueue;
 import me.wiefferink.areashop.tools.Utils;
 import net.milkbowl.vault.economy.Economy;
 import net.milkbowl.vault.economy.EconomyResponse;
@@ -26,7 +27,9 @@ import javax.annotation.Nullable;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import static me.wiefferink.areashop.tools.Utils.millisToHumanFormat;
@@ -149,6 +152,8 @@ public class RentRegion extends GeneralRegion {
 			setSetting("rent.renter", renter.toString());
 			setSetting("rent.renterName", Utils.toName(renter));
 		}
+		getFileManager().updateOwnerIndex(this);
+		getFileManager().updateRentExpiration(this);
 	}
 
 	/**
@@ -246,6 +251,7 @@ public class RentRegion extends GeneralRegion {
 		} else {
 			setSetting("rent.rentedUntil", rentedUntil);
 		}
+		getFileManager().updateRentExpiration(this);
 	}
 
 	/**
@@ -399,44 +405,69 @@ public class RentRegion extends GeneralRegion {
 	 */
 	public void sendExpirationWarnings() {
 		// Send from warningsDoneUntil to current+delay
+		long sendUntil = Calendar.getInstance().getTimeInMillis() + (plugin.getConfig().getInt("expireWarning.delay") * 60 * 1000);
+		for(Map.Entry<String, Long> warning : getExpirationWarningTimes().entrySet()) {
+			long checkTime = warning.getValue();
+			if(checkTime > warningsDoneUntil && checkTime <= sendUntil) {
+				sendExpirationWarning(warning.getKey());
+			}
+		}
+		warningsDoneUntil = sendUntil;
+	}
+
+	/**
+	 * Get the points in time at which the expiration warnings of the selected profile should be sent.
+	 * @return Map from the warning keys of the profile to the time the warning should be sent (milliseconds from 1970), empty if there are none
+	 */
+	public Map<String, Long> getExpirationWarningTimes() {
+		Map<String, Long> result = new LinkedHashMap<>();
 		if(isDeleted() || !isRented()) {
-			return;
+			return result;
 		}
 		ConfigurationSection profileSection = getConfigurationSectionSetting("rent.expirationWarningProfile", "expirationWarningProfiles");
 		if(profileSection == null) {
-			return;
+			return result;
 		}
-
-		// Check if a warning needs to be send for each defined point in time
-		Player player = Bukkit.getPlayer(getRenter());
-		long sendUntil = Calendar.getInstance().getTimeInMillis() + (plugin.getConfig().getInt("expireWarning.delay") * 60 * 1000);
+		long rentedUntil = getRentedUntil();
 		for(String timeBefore : profileSection.getKeys(false)) {
 			long timeBeforeParsed = Utils.durationStringToLong(timeBefore);
 			if(timeBeforeParsed <= 0) {
-				return;
+				break;
 			}
-			long checkTime = getRentedUntil() - timeBeforeParsed;
+			result.put(timeBefore, rentedUntil - timeBeforeParsed);
+		}
+		return result;
+	}
 
-			if(checkTime > warningsDoneUntil && checkTime <= sendUntil) {
-				List<String> commands;
-				if(profileSection.isConfigurationSection(timeBefore)) {
-					/* Legacy config layout:
-					 *   "1 minute":
-					 *     warnPlayer: true
-					 *     commands: ["say hi"]
-					 */
-					commands = profileSection.getStringList(timeBefore + ".commands");
-					// Warn player
-					if(profileSection.getBoolean(timeBefore + ".warnPlayer") && player != null) {
-						message(player, "rent-expireWarning");
-					}
-				} else {
-					commands = profileSection.getStringList(timeBefore);
-				}
-				this.runCommands(Bukkit.getConsoleSender(), commands);
+	/**
+	 * Send a single expiration warning from the selected profile.
+	 * @param timeBefore The key of the warning in the profile
+	 */
+	public void sendExpirationWarning(String timeBefore) {
+		if(isDeleted() || !isRented()) {
+			return;
+		}
+		ConfigurationSection profileSection = getConfigurationSectionSetting("rent.expirationWarningProfile", "expirationWarningProfiles");
+		if(profileSection == null || !profileSection.isSet(timeBefore)) {
+			return;
+		}
+		List<String> commands;
+		if(profileSection.isConfigurationSection(timeBefore)) {
+			/* Legacy config layout:
+			 *   "1 minute":
+			 *     warnPlayer: true
+			 *     commands: ["say hi"]
+			 */
+			commands = profileSection.getStringList(timeBefore + ".commands");
+			// Warn player
+			Player player = Bukkit.getPlayer(getRenter());
+			if(profileSection.getBoolean(timeBefore + ".warnPlayer") && player != null) {
+				message(player, "rent-expireWarning");
 			}
+		} else {
+			commands = profileSection.getStringList(timeBefore);
 		}
-		warningsDoneUntil = sendUntil;
+		this.runCommands(Bukkit.getConsoleSender(), commands);
 	}
 
 	/**
@@ -722,7 +753,7 @@ public class RentRegion extends GeneralRegion {
 		}
 
 		// Handle schematic save/restore (while %uuid% is still available)
-		handleSchematicEvent(RegionEvent.UNRENTED);
+		handleSchematicEvent(RegionEvent.UNRENTED, executor == null ? SchematicJobQueue.Priority.AUTOMATIC : SchematicJobQueue.Priority.PLAYER);
 
 		// Send message: before actual removal of the renter so that it is still available for variables
 		message(executor, "unrent-unrented");
@@ -764,6 +795,18 @@ public class RentRegion extends GeneralRegion {
 		return false;
 	}
 
+	@Override
+	public long getInactiveDeadline() {
+		if(isDeleted() || !isRented()) {
+			return -1;
+		}
+		long inactiveSetting = getInactiveTimeUntilUnrent();
+		if(inactiveSetting <= 0) {
+			return -1;
+		}
+		return getLastActiveTime() + inactiveSetting;
+	}
+
 }
 
 
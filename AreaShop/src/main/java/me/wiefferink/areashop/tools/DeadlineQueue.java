@@ -0,0 +1,119 @@
+package me.wiefferink.areashop.tools;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Queue of items ordered by a deadline (milliseconds since epoch), each item is at most once in the queue.
+ * @param <T> The type of the items in the queue
+ */
+public class DeadlineQueue<T> {
+
+	private final TreeSet<Entry<T>> queue = new TreeSet<>();
+	private final Map<T, Entry<T>> entries = new HashMap<>();
+	private long sequence = 0;
+
+	/**
+	 * Schedule an item, replacing the deadline if it is already scheduled.
+	 * @param item     The item to schedule
+	 * @param deadline The deadline of the item
+	 */
+	public void schedule(T item, long deadline) {
+		Entry<T> existing = entries.get(item);
+		if(existing != null) {
+			if(existing.deadline == deadline) {
+				return;
+			}
+			queue.remove(existing);
+		}
+		Entry<T> entry = new Entry<>(item, deadline, sequence++);
+		entries.put(item, entry);
+		queue.add(entry);
+	}
+
+	/**
+	 * Remove an item from the queue.
+	 * @param item The item to remove
+	 * @return true if the item was scheduled, otherwise false
+	 */
+	public boolean remove(T item) {
+		Entry<T> entry = entries.remove(item);
+		if(entry == null) {
+			return false;
+		}
+		queue.remove(entry);
+		return true;
+	}
+
+	/**
+	 * Get the deadline of an item.
+	 * @param item The item to get the deadline for
+	 * @return The deadline of the item, or null if it is not scheduled
+	 */
+	public Long getDeadline(T item) {
+		Entry<T> entry = entries.get(item);
+		return entry == null ? null : entry.deadline;
+	}
+
+	/**
+	 * Remove and return all items with a deadline before or at the given time.
+	 * @param time The time to check against
+	 * @return The items that are due, ordered by deadline
+	 */
+	@Nonnull
+	public List<T> pollDue(long time) {
+		List<T> result = new ArrayList<>();
+		while(!queue.isEmpty() && queue.first().deadline <= time) {
+			Entry<T> entry = queue.pollFirst();
+			entries.remove(entry.item);
+			result.add(entry.item);
+		}
+		return result;
+	}
+
+	/**
+	 * Get the earliest deadline in the queue.
+	 * @return The earliest deadline, or Long.MAX_VALUE if the queue is empty
+	 */
+	public long nextDeadline() {
+		return queue.isEmpty() ? Long.MAX_VALUE : queue.first().deadline;
+	}
+
+	/**
+	 * Get the number of scheduled items.
+	 * @return The number of items in the queue
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Remove all items from the queue.
+	 */
+	public void clear() {
+		queue.clear();
+		entries.clear();
+	}
+
+	/**
+	 * Scheduled item, ordered by deadline and then by insertion order.
+	 * @param item     The item
+	 * @param deadline The deadline of the item
+	 * @param sequence Sequence number to order items with the same deadline
+	 * @param <T>      The type of the item
+	 */
+	private record Entry<T>(T item, long deadline, long sequence) implements Comparable<Entry<T>> {
+		@Override
+		public int compareTo(Entry<T> other) {
+			int result = Long.compare(deadline, other.deadline);
+			if(result == 0) {
+				result = Long.compare(sequence, other.sequence);
+			}
+			return result;
+		}
+	}
+}
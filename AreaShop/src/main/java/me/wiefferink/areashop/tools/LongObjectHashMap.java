@@ -0,0 +1,292 @@
+package me.wiefferink.areashop.tools;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Map from primitive longs to objects using open addressing with linear probing, keys are never boxed.
+ * @param <V> The type of the values
+ */
+public class LongObjectHashMap<V> {
+
+	private static final int MIN_CAPACITY = 16;
+
+	// The key 0 marks an empty slot, so the value for key 0 is stored separately
+	private long[] keys;
+	private Object[] values;
+	private boolean hasZeroKey;
+	private V zeroValue;
+	private int size;
+	private int modifications;
+	private final Collection<V> valuesView = new ValuesView();
+
+	/**
+	 * Constructor.
+	 */
+	public LongObjectHashMap() {
+		keys = new long[MIN_CAPACITY];
+		values = new Object[MIN_CAPACITY];
+	}
+
+	/**
+	 * Get the value of a key.
+	 * @param key The key to get the value for
+	 * @return The value, or null if the key is not in the map
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+		if(key == 0) {
+			return zeroValue;
+		}
+		int mask = keys.length - 1;
+		for(int slot = slot(key, mask); ; slot = (slot + 1) & mask) {
+			long current = keys[slot];
+			if(current == key) {
+				return (V)values[slot];
+			}
+			if(current == 0) {
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Check if the map contains a key.
+	 * @param key The key to check
+	 * @return true if the key is in the map, otherwise false
+	 */
+	public boolean containsKey(long key) {
+		if(key == 0) {
+			return hasZeroKey;
+		}
+		int mask = keys.length - 1;
+		for(int slot = slot(key, mask); ; slot = (slot + 1) & mask) {
+			long current = keys[slot];
+			if(current == key) {
+				return true;
+			}
+			if(current == 0) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Set the value of a key.
+	 * @param key   The key to set
+	 * @param value The value to set, not null
+	 * @return The previous value of the key, or null if the key was not in the map
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(long key, V value) {
+		if(key == 0) {
+			V previous = zeroValue;
+			if(!hasZeroKey) {
+				hasZeroKey = true;
+				size++;
+				modifications++;
+			}
+			zeroValue = value;
+			return previous;
+		}
+		int mask = keys.length - 1;
+		int slot = slot(key, mask);
+		while(keys[slot] != 0) {
+			if(keys[slot] == key) {
+				V previous = (V)values[slot];
+				values[slot] = value;
+				return previous;
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = key;
+		values[slot] = value;
+		size++;
+		modifications++;
+		// Keep the load factor at or below 0.5
+		if(size * 2 > keys.length) {
+			resize(keys.length * 2);
+		}
+		return null;
+	}
+
+	/**
+	 * Remove a key from the map.
+	 * @param key The key to remove
+	 * @return The value of the key, or null if the key was not in the map
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(long key) {
+		if(key == 0) {
+			if(!hasZeroKey) {
+				return null;
+			}
+			V previous = zeroValue;
+			hasZeroKey = false;
+			zeroValue = null;
+			size--;
+			modifications++;
+			return previous;
+		}
+		int mask = keys.length - 1;
+		int slot = slot(key, mask);
+		while(keys[slot] != key) {
+			if(keys[slot] == 0) {
+				return null;
+			}
+			slot = (slot + 1) & mask;
+		}
+		V previous = (V)values[slot];
+		// Shift following entries of the probe sequence back so lookups do not stop early
+		int gap = slot;
+		int next = (gap + 1) & mask;
+		while(keys[next] != 0) {
+			int ideal = slot(keys[next], mask);
+			if(((next - ideal) & mask) >= ((next - gap) & mask)) {
+				keys[gap] = keys[next];
+				values[gap] = values[next];
+				gap = next;
+			}
+			next = (next + 1) & mask;
+		}
+		keys[gap] = 0;
+		values[gap] = null;
+		size--;
+		modifications++;
+		return previous;
+	}
+
+	/**
+	 * Get the number of keys in the map.
+	 * @return The number of keys
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Check if the map is empty.
+	 * @return true if the map does not contain any keys, otherwise false
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Remove all keys from the map.
+	 */
+	public void clear() {
+		if(keys.length > MIN_CAPACITY) {
+			keys = new long[MIN_CAPACITY];
+			values = new Object[MIN_CAPACITY];
+		} else {
+			Arrays.fill(keys, 0);
+			Arrays.fill(values, null);
+		}
+		hasZeroKey = false;
+		zeroValue = null;
+		size = 0;
+		modifications++;
+	}
+
+	/**
+	 * Get a view of the values in the map, changes to the map are visible in the view.
+	 * @return Unmodifiable view of the values
+	 */
+	public Collection<V> values() {
+		return valuesView;
+	}
+
+	/**
+	 * Move all entries to a table with a new capacity.
+	 * @param capacity The new capacity, a power of two
+	 */
+	private void resize(int capacity) {
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		keys = new long[capacity];
+		values = new Object[capacity];
+		int mask = capacity - 1;
+		for(int i = 0; i < oldKeys.length; i++) {
+			long key = oldKeys[i];
+			if(key != 0) {
+				int slot = slot(key, mask);
+				while(keys[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = key;
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	/**
+	 * Get the preferred slot of a key.
+	 * @param key  The key
+	 * @param mask The mask of the table (capacity - 1)
+	 * @return The slot index
+	 */
+	private static int slot(long key, int mask) {
+		long hash = key * 0x9E3779B97F4A7C15L;
+		return (int)(hash ^ (hash >>> 32)) & mask;
+	}
+
+	/**
+	 * Read-only view of the values of the map.
+	 */
+	private class ValuesView extends AbstractCollection<V> {
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public Iterator<V> iterator() {
+			return new Iterator<>() {
+				private final int expectedModifications = modifications;
+				private final long[] iteratedKeys = keys;
+				private final Object[] iteratedValues = values;
+				private boolean zeroPending = hasZeroKey;
+				private int slot = -1;
+
+				{
+					advance();
+				}
+
+				private void advance() {
+					slot++;
+					while(slot < iteratedKeys.length && iteratedKeys[slot] == 0) {
+						slot++;
+					}
+				}
+
+				@Override
+				public boolean hasNext() {
+					return zeroPending || slot < iteratedKeys.length;
+				}
+
+				@Override
+				@SuppressWarnings("unchecked")
+				public V next() {
+					if(modifications != expectedModifications) {
+						throw new ConcurrentModificationException();
+					}
+					if(zeroPending) {
+						zeroPending = false;
+						return zeroValue;
+					}
+					if(slot >= iteratedKeys.length) {
+						throw new NoSuchElementException();
+					}
+					V result = (V)iteratedValues[slot];
+					advance();
+					return result;
+				}
+			};
+		}
+	}
+}
@@ -322,14 +322,11 @@ public class Utils {
 	 * @return A list with all the AreaShop regions intersecting with the selection
 	 */
 	public static List<GeneralRegion> getRegionsInSelection(WorldEditSelection selection) {
-		ArrayList<GeneralRegion> result = new ArrayList<>();
-		for(ProtectedRegion region : getWorldEditRegionsInSelection(selection)) {
-			GeneralRegion asRegion = plugin.getFileManager().getRegion(region.getId());
-			if(asRegion != null) {
-				result.add(asRegion);
-			}
-		}
-		return result;
+		return plugin.getFileManager().getRegionsIntersecting(
+				selection.getWorld().getName(),
+				selection.getMinimumLocation().toVector(),
+				selection.getMaximumLocation().toVector()
+		);
 	}
 
 	/**
@@ -338,11 +335,13 @@ public class Utils {
 	 * @return A list with all the AreaShop regions that contain the location
 	 */
 	public static List<GeneralRegion> getRegions(Location location) {
-		return getRegionsInSelection(new WorldEditSelection(location.getWorld(), location, location));
+		Vector point = location.toVector();
+		return plugin.getFileManager().getRegionsIntersecting(location.getWorld().getName(), point, point);
 	}
 
 	/**
 	 * Get all WorldGuard regions intersecting with a WorldEdit selection.
+	 * This includes regions that are not added to AreaShop, use {@link #getRegionsInSelection(WorldEditSelection)} for AreaShop regions.
 	 * @param selection The selection to check
 	 * @return A list with all the WorldGuard regions intersecting with the selection
 	 */
@@ -356,24 +355,10 @@ public class Utils {
 		for(ProtectedRegion region : regionManager.getRegions().values()) {
 			Vector regionMin = worldGuardInterface.getMinimumPoint(region);
 			Vector regionMax = worldGuardInterface.getMaximumPoint(region);
-			if(
-					(      // x part, resolves to true if the selection and region overlap anywhere on the x-axis
-							(regionMin.getBlockX() <= selectionMax.getBlockX() && regionMin.getBlockX() >= selectionMin.getBlockX())
-									|| (regionMax.getBlockX() <= selectionMax.getBlockX() && regionMax.getBlockX() >= selectionMin.getBlockX())
-									|| (selectionMin.getBlockX() >= regionMin.getBlockX() && selectionMin.getBlockX() <= regionMax.getBlockX())
-									|| (selectionMax.getBlockX() >= regionMin.getBlockX() && selectionMax.getBlockX() <= regionMax.getBlockX())
-					) && ( // Y part, resolves to true if the selection and region overlap anywhere on the y-axis
-							(regionMin.getBlockY() <= selectionMax.getBlockY() && regionMin.getBlockY() >= selectionMin.getBlockY())
-									|| (regionMax.getBlockY() <= selectionMax.getBlockY() && regionMax.getBlockY() >= selectionMin.getBlockY())
-									|| (selectionMin.getBlockY() >= regionMin.getBlockY() && selectionMin.getBlockY() <= regionMax.getBlockY())
-									|| (selectionMax.getBlockY() >= regionMin.getBlockY() && selectionMax.getBlockY() <= regionMax.getBlockY())
-					) && ( // Z part, resolves to true if the selection and region overlap anywhere on the z-axis
-							(regionMin.getBlockZ() <= selectionMax.getBlockZ() && regionMin.getBlockZ() >= selectionMin.getBlockZ())
-									|| (regionMax.getBlockZ() <= selectionMax.getBlockZ() && regionMax.getBlockZ() >= selectionMin.getBlockZ())
-									|| (selectionMin.getBlockZ() >= regionMin.getBlockZ() && selectionMin.getBlockZ() <= regionMax.getBlockZ())
-									|| (selectionMax.getBlockZ() >= regionMin.getBlockZ() && selectionMax.getBlockZ() <= regionMax.getBlockZ())
-					)
-			) {
+			// The selection and region overlap if they overlap on all axes
+			if(regionMin.getBlockX() <= selectionMax.getBlockX() && regionMax.getBlockX() >= selectionMin.getBlockX()
+					&& regionMin.getBlockY() <= selectionMax.getBlockY() && regionMax.getBlockY() >= selectionMin.getBlockY()
+					&& regionMin.getBlockZ() <= selectionMax.getBlockZ() && regionMax.getBlockZ() >= selectionMin.getBlockZ()) {
 				result.add(region);
 			}
 		}
@@ -0,0 +1,146 @@
+package me.wiefferink.areashop.features.signs;
+
+import io.github.bakedlibs.dough.blocks.BlockPosition;
+import io.github.bakedlibs.dough.blocks.ChunkPosition;
+import org.bukkit.Location;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SignCacheTest {
+
+    private static final long CHUNK = ChunkPosition.getAsLong(0, 0);
+    private static final long OTHER_CHUNK = ChunkPosition.getAsLong(1, 0);
+    private static final long NEGATIVE_CHUNK = ChunkPosition.getAsLong(-1, -1);
+
+    // Two signs in chunk (0, 0), one in chunk (1, 0) and one in chunk (-1, -1)
+    private final TestSign first = new TestSign("first", 1, 64, 1);
+    private final TestSign second = new TestSign("second", 15, 70, 15);
+    private final TestSign otherChunk = new TestSign("otherChunk", 16, 64, 0);
+    private final TestSign negativeChunk = new TestSign("negativeChunk", -1, 64, -1);
+
+    private SignCache filledCache() {
+        SignCache cache = new SignCache();
+        cache.addSign(first);
+        cache.addSign(second);
+        cache.addSign(otherChunk);
+        cache.addSign(negativeChunk);
+        return cache;
+    }
+
+    @Test
+    void addSignsPerChunk() {
+        SignCache cache = filledCache();
+        assertEquals(4, cache.size());
+        assertEquals(Set.of(first, second), Set.copyOf(cache.signsAtChunk(CHUNK)));
+        assertEquals(List.of(otherChunk), List.copyOf(cache.signsAtChunk(OTHER_CHUNK)));
+        assertEquals(List.of(negativeChunk), List.copyOf(cache.signsAtChunk(NEGATIVE_CHUNK)));
+        assertTrue(cache.hasSignsInChunk(CHUNK));
+        assertFalse(cache.hasSignsInChunk(ChunkPosition.getAsLong(2, 0)));
+        assertTrue(cache.signsAtChunk(ChunkPosition.getAsLong(2, 0)).isEmpty());
+        assertSame(second, cache.signAtLocation(second.packedPosition()).orElseThrow());
+    }
+
+    @Test
+    void addSameSignTwice() {
+        SignCache cache = filledCache();
+        cache.addSign(first);
+        assertEquals(4, cache.size());
+        assertEquals(2, cache.signsAtChunk(CHUNK).size());
+    }
+
+    @Test
+    void removeKeepsOtherSignsInChunk() {
+        SignCache cache = filledCache();
+        assertSame(first, cache.removeSign(first.getLocation()).orElseThrow());
+        assertEquals(List.of(second), List.copyOf(cache.signsAtChunk(CHUNK)));
+        assertTrue(cache.hasSignsInChunk(CHUNK));
+        assertFalse(cache.signAtLocation(first.packedPosition()).isPresent());
+        assertFalse(cache.removeSign(first.getLocation()).isPresent());
+
+        cache.removeSign(second);
+        assertFalse(cache.hasSignsInChunk(CHUNK));
+        assertTrue(cache.signsAtChunk(CHUNK).isEmpty());
+        assertTrue(cache.hasSignsInChunk(OTHER_CHUNK));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void signsAtChunkIsSnapshot() {
+        SignCache cache = filledCache();
+        Collection<RegionSign> signs = cache.signsAtChunk(CHUNK);
+        cache.removeSign(first);
+        cache.addSign(new TestSign("third", 2, 64, 2));
+        assertEquals(Set.of(first, second), Set.copyOf(signs));
+    }
+
+    @Test
+    void replaceSignAtLocation() {
+        SignCache cache = filledCache();
+        TestSign replacement = new TestSign("replacement", 1, 64, 1);
+        cache.addSign(replacement);
+        assertEquals(4, cache.size());
+        assertSame(replacement, cache.signAtLocation(first.packedPosition()).orElseThrow());
+        assertEquals(Set.of(replacement, second), Set.copyOf(cache.signsAtChunk(CHUNK)));
+
+        // Removing the replaced sign does not remove the sign that is now at its location
+        cache.removeSign(first);
+        assertSame(replacement, cache.signAtLocation(first.packedPosition()).orElseThrow());
+    }
+
+    @Test
+    void clear() {
+        SignCache cache = filledCache();
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertTrue(cache.allSigns().isEmpty());
+        assertFalse(cache.hasSignsInChunk(CHUNK));
+        assertFalse(cache.hasSignsInChunk(NEGATIVE_CHUNK));
+    }
+
+    /**
+     * Sign with a fixed location that does not need a region or server.
+     */
+    private static class TestSign extends RegionSign {
+
+        private final String name;
+        private final Location location;
+
+        TestSign(String name, int x, int y, int z) {
+            super(null, null, null, null, name);
+            this.name = name;
+            this.location = new Location(null, x, y, z);
+        }
+
+        long packedPosition() {
+            return BlockPosition.getAsLong(location);
+        }
+
+        @Override
+        public Location getLocation() {
+            return location.clone();
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            return object instanceof TestSign && ((TestSign)object).name.equals(name);
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
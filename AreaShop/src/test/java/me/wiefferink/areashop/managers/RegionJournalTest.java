@@ -0,0 +1,190 @@
+package me.wiefferink.areashop.managers;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RegionJournalTest {
+
+	// Long enough that the writer thread does not interfere, close() writes the records
+	private static final long SYNC_INTERVAL = 60000;
+	private static final long COMPACT_SIZE = 1024 * 1024;
+
+	@TempDir
+	File folder;
+
+	private File journalFile() {
+		return new File(folder, "journal");
+	}
+
+	private RegionJournal open() throws IOException {
+		return new RegionJournal(journalFile(), SYNC_INTERVAL, COMPACT_SIZE);
+	}
+
+	private static YamlConfiguration storedRegion(String name) {
+		YamlConfiguration config = new YamlConfiguration();
+		config.set("general.name", name);
+		config.set("general.type", "rent");
+		config.set("rent.price", 10.0);
+		return config;
+	}
+
+	@Test
+	void roundTrip() throws IOException {
+		YamlConfiguration added = storedRegion("added");
+		RegionJournal journal = open();
+		journal.regionSet("shop", "rent.renter", "00000000-0000-0000-0000-000000000001");
+		journal.regionSet("shop", "rent.timesExtended", 3);
+		journal.regionSet("shop", "rent.rentedUntil", 1700000000000L);
+		journal.regionSet("shop", "rent.price", 12.5);
+		journal.regionSet("shop", "general.restore", true);
+		journal.regionSet("shop", "general.tags", List.of("a", "b"));
+		journal.regionSet("shop", "general.type", null);
+		journal.regionSnapshot("added", added.saveToString());
+		journal.regionSet("added", "rent.price", 20.0);
+		journal.regionSet("removed", "rent.price", 30.0);
+		journal.regionDeleted("removed");
+		journal.groupSet("city.regions", List.of("shop", "added"));
+		journal.groupSet("city.priority", 5);
+		journal.close();
+
+		RegionJournal.Replay replay = RegionJournal.read(journalFile());
+		assertFalse(replay.isEmpty());
+		assertEquals(13, replay.size());
+		assertEquals(Set.of("shop", "added", "removed"), replay.getRegionNames());
+		assertTrue(replay.hasRegion("SHOP"));
+		assertFalse(replay.hasRegion("other"));
+
+		YamlConfiguration shop = replay.applyToRegion("Shop", storedRegion("shop"));
+		assertEquals("00000000-0000-0000-0000-000000000001", shop.getString("rent.renter"));
+		assertEquals(3, shop.get("rent.timesExtended"));
+		assertEquals(1700000000000L, shop.get("rent.rentedUntil"));
+		assertEquals(12.5, shop.get("rent.price"));
+		assertEquals(true, shop.get("general.restore"));
+		assertEquals(List.of("a", "b"), shop.getStringList("general.tags"));
+		assertFalse(shop.contains("general.type"));
+		assertEquals("shop", shop.getString("general.name"));
+
+		// A deleted region stays deleted even when it is still in the store
+		assertNull(replay.applyToRegion("removed", storedRegion("removed")));
+
+		Map<String, YamlConfiguration> addedRegions = replay.getAddedRegions();
+		assertEquals(Set.of("added"), addedRegions.keySet());
+		assertEquals("added", addedRegions.get("added").getString("general.name"));
+		assertEquals(20.0, addedRegions.get("added").getDouble("rent.price"));
+
+		assertTrue(replay.hasGroupChanges());
+		YamlConfiguration groups = new YamlConfiguration();
+		groups.set("city.priority", 1);
+		replay.applyToGroups(groups);
+		assertEquals(List.of("shop", "added"), groups.getStringList("city.regions"));
+		assertEquals(5, groups.getInt("city.priority"));
+	}
+
+	@Test
+	void noJournal() {
+		RegionJournal.Replay replay = RegionJournal.read(journalFile());
+		assertTrue(replay.isEmpty());
+		assertFalse(replay.hasGroupChanges());
+	}
+
+	@Test
+	void truncatedTail() throws IOException {
+		RegionJournal journal = open();
+		journal.regionSet("shop", "rent.price", 1.0);
+		journal.regionSet("shop", "rent.price", 2.0);
+		journal.close();
+		long complete = journalFile().length();
+
+		journal = open();
+		journal.regionSet("shop", "rent.price", 3.0);
+		journal.close();
+
+		// Cut the last record in its payload
+		truncate(journalFile(), journalFile().length() - 3);
+		RegionJournal.Replay replay = RegionJournal.read(journalFile());
+		assertEquals(2, replay.size());
+		assertEquals(2.0, replay.applyToRegion("shop", storedRegion("shop")).getDouble("rent.price"));
+
+		// Cut the last record in its header
+		truncate(journalFile(), complete + 6);
+		replay = RegionJournal.read(journalFile());
+		assertEquals(2, replay.size());
+		assertEquals(2.0, replay.applyToRegion("shop", storedRegion("shop")).getDouble("rent.price"));
+	}
+
+	@Test
+	void corruptedChecksum() throws IOException {
+		RegionJournal journal = open();
+		journal.regionSet("shop", "rent.price", 1.0);
+		journal.close();
+		long firstRecord = journalFile().length();
+
+		journal = open();
+		journal.regionSet("shop", "rent.price", 2.0);
+		journal.regionSet("shop", "rent.price", 3.0);
+		journal.close();
+
+		// Change the first byte of the payload of the second record, after its length and checksum
+		try(RandomAccessFile file = new RandomAccessFile(journalFile(), "rw")) {
+			file.seek(firstRecord + 8);
+			int value = file.read();
+			file.seek(firstRecord + 8);
+			file.write(value ^ 0xFF);
+		}
+
+		// The damaged record and the records after it are skipped
+		RegionJournal.Replay replay = RegionJournal.read(journalFile());
+		assertEquals(1, replay.size());
+		assertEquals(1.0, replay.applyToRegion("shop", storedRegion("shop")).getDouble("rent.price"));
+	}
+
+	@Test
+	void rotatedAndCurrent() throws IOException {
+		RegionJournal journal = open();
+		journal.regionSet("shop", "rent.price", 1.0);
+		journal.regionSet("shop", "rent.timesExtended", 1);
+		journal.groupSet("city.priority", 1);
+		journal.rotate();
+		journal.regionSet("shop", "rent.price", 2.0);
+		journal.groupSet("city.priority", 2);
+		journal.close();
+
+		File rotated = new File(journalFile().getPath() + RegionJournal.ROTATED_EXTENSION);
+		assertTrue(rotated.isFile());
+		assertTrue(journalFile().isFile());
+
+		// The rotated file is replayed first, the changes in the current file win
+		RegionJournal.Replay replay = RegionJournal.read(journalFile());
+		assertEquals(5, replay.size());
+		YamlConfiguration shop = replay.applyToRegion("shop", storedRegion("shop"));
+		assertEquals(2.0, shop.getDouble("rent.price"));
+		assertEquals(1, shop.getInt("rent.timesExtended"));
+		YamlConfiguration groups = new YamlConfiguration();
+		replay.applyToGroups(groups);
+		assertEquals(2, groups.getInt("city.priority"));
+
+		RegionJournal.delete(journalFile());
+		assertFalse(rotated.exists());
+		assertFalse(journalFile().exists());
+		assertTrue(RegionJournal.read(journalFile()).isEmpty());
+	}
+
+	private static void truncate(File file, long length) throws IOException {
+		try(RandomAccessFile access = new RandomAccessFile(file, "rw")) {
+			access.setLength(length);
+		}
+	}
+}
@@ -0,0 +1,180 @@
+package me.wiefferink.areashop.tools;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LongObjectHashMapTest {
+
+	@Test
+	void putGetRemove() {
+		LongObjectHashMap<String> map = new LongObjectHashMap<>();
+		assertTrue(map.isEmpty());
+		assertNull(map.put(5, "five"));
+		assertNull(map.put(-7, "minus seven"));
+		assertEquals("five", map.put(5, "FIVE"));
+		assertEquals(2, map.size());
+		assertEquals("FIVE", map.get(5));
+		assertEquals("minus seven", map.get(-7));
+		assertNull(map.get(6));
+		assertTrue(map.containsKey(-7));
+		assertFalse(map.containsKey(6));
+
+		assertEquals("FIVE", map.remove(5));
+		assertNull(map.remove(5));
+		assertFalse(map.containsKey(5));
+		assertEquals(1, map.size());
+
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertNull(map.get(-7));
+	}
+
+	@Test
+	void zeroKey() {
+		LongObjectHashMap<String> map = new LongObjectHashMap<>();
+		assertFalse(map.containsKey(0));
+		assertNull(map.remove(0));
+		assertNull(map.put(0, "zero"));
+		assertTrue(map.containsKey(0));
+		assertEquals("zero", map.get(0));
+		assertEquals(1, map.size());
+		assertEquals("zero", map.put(0, "ZERO"));
+		assertEquals(1, map.size());
+		assertEquals(List.of("ZERO"), new ArrayList<>(map.values()));
+
+		assertEquals("ZERO", map.remove(0));
+		assertFalse(map.containsKey(0));
+		assertTrue(map.isEmpty());
+	}
+
+	@Test
+	void collisionChains() {
+		// Keys with the same preferred slot in the initial table of 16 slots
+		List<Long> colliding = collidingKeys(4, 15);
+		LongObjectHashMap<Long> map = new LongObjectHashMap<>();
+		for(long key : colliding) {
+			map.put(key, key);
+		}
+		for(long key : colliding) {
+			assertEquals(Long.valueOf(key), map.get(key));
+		}
+
+		// Removing from the start and middle of the chain shifts the later entries back
+		map.remove(colliding.get(0));
+		map.remove(colliding.get(2));
+		assertFalse(map.containsKey(colliding.get(0)));
+		assertFalse(map.containsKey(colliding.get(2)));
+		assertEquals(colliding.get(1), map.get(colliding.get(1)));
+		assertEquals(colliding.get(3), map.get(colliding.get(3)));
+		assertEquals(2, map.size());
+
+		// Re-adding fills the freed slots again
+		map.put(colliding.get(0), colliding.get(0));
+		assertEquals(colliding.get(0), map.get(colliding.get(0)));
+		assertEquals(3, map.size());
+	}
+
+	@Test
+	void resize() {
+		LongObjectHashMap<Long> map = new LongObjectHashMap<>();
+		for(long key = 1; key <= 10000; key++) {
+			map.put(key * 31, key);
+		}
+		assertEquals(10000, map.size());
+		for(long key = 1; key <= 10000; key++) {
+			assertEquals(Long.valueOf(key), map.get(key * 31));
+		}
+		assertNull(map.get(32));
+	}
+
+	@Test
+	void matchesHashMap() {
+		Random random = new Random(42);
+		LongObjectHashMap<Long> map = new LongObjectHashMap<>();
+		Map<Long, Long> expected = new HashMap<>();
+		for(int i = 0; i < 100000; i++) {
+			// Small key range to get many collisions and removals of existing keys
+			long key = random.nextInt(512) - 256;
+			if(random.nextBoolean()) {
+				assertEquals(expected.put(key, (long)i), map.put(key, (long)i));
+			} else {
+				assertEquals(expected.remove(key), map.remove(key));
+			}
+			assertEquals(expected.size(), map.size());
+		}
+		for(long key = -256; key < 256; key++) {
+			assertEquals(expected.get(key), map.get(key));
+			assertEquals(expected.containsKey(key), map.containsKey(key));
+		}
+		List<Long> values = new ArrayList<>(map.values());
+		values.sort(null);
+		List<Long> expectedValues = new ArrayList<>(expected.values());
+		expectedValues.sort(null);
+		assertEquals(expectedValues, values);
+	}
+
+	@Test
+	void iteratorFailFast() {
+		LongObjectHashMap<String> map = new LongObjectHashMap<>();
+		map.put(0, "zero");
+		map.put(1, "one");
+		map.put(2, "two");
+
+		Iterator<String> added = map.values().iterator();
+		added.next();
+		map.put(3, "three");
+		assertThrows(ConcurrentModificationException.class, added::next);
+
+		Iterator<String> removed = map.values().iterator();
+		removed.next();
+		map.remove(1);
+		assertThrows(ConcurrentModificationException.class, removed::next);
+
+		// Replacing the value of an existing key is not a structural change
+		Iterator<String> replaced = map.values().iterator();
+		map.put(2, "TWO");
+		int count = 0;
+		while(replaced.hasNext()) {
+			replaced.next();
+			count++;
+		}
+		assertEquals(3, count);
+		assertThrows(NoSuchElementException.class, replaced::next);
+	}
+
+	/**
+	 * Find keys that have the same preferred slot, uses the same hash as the map.
+	 * @param count The number of keys to find
+	 * @param mask  The mask of the table (capacity - 1)
+	 * @return The keys
+	 */
+	private static List<Long> collidingKeys(int count, int mask) {
+		List<Long> result = new ArrayList<>();
+		int targetSlot = -1;
+		for(long key = 1; result.size() < count; key++) {
+			long hash = key * 0x9E3779B97F4A7C15L;
+			int slot = (int)(hash ^ (hash >>> 32)) & mask;
+			if(targetSlot == -1) {
+				targetSlot = slot;
+			}
+			if(slot == targetSlot) {
+				result.add(key);
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,242 @@
+package me.wiefferink.areashop.tools;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares the memory and throughput of the sign cache layouts with 100k signs.
+ * The boxed layout is the HashMap based one SignCache used before, the primitive layout the current one.
+ * Results are logged, only the memory use is asserted because timings depend on the machine.
+ */
+class SignLayoutBenchmarkTest {
+
+	private static final Logger LOGGER = Logger.getLogger("AreaShop");
+	private static final int SIGNS = 100000;
+	private static final int ROUNDS = 5;
+
+	/**
+	 * Layout of the signs of the cache.
+	 */
+	private interface Layout {
+		void add(long position, long chunk, Object sign);
+
+		Object get(long position);
+
+		int signsInChunk(long chunk);
+
+		void remove(long position, long chunk, Object sign);
+
+		int size();
+	}
+
+	/**
+	 * Boxed keys with a HashSet per chunk, as SignCache stored signs before.
+	 */
+	private static class BoxedLayout implements Layout {
+		private final Map<Long, Object> allSigns = new HashMap<>();
+		private final Map<Long, Collection<Object>> signsByChunk = new HashMap<>();
+
+		@Override
+		public void add(long position, long chunk, Object sign) {
+			allSigns.put(position, sign);
+			signsByChunk.computeIfAbsent(chunk, key -> new HashSet<>()).add(sign);
+		}
+
+		@Override
+		public Object get(long position) {
+			return allSigns.get(position);
+		}
+
+		@Override
+		public int signsInChunk(long chunk) {
+			return signsByChunk.getOrDefault(chunk, Collections.emptyList()).size();
+		}
+
+		@Override
+		public void remove(long position, long chunk, Object sign) {
+			allSigns.remove(position);
+			Collection<Object> signs = signsByChunk.get(chunk);
+			if(signs != null) {
+				signs.remove(sign);
+				if(signs.isEmpty()) {
+					signsByChunk.remove(chunk);
+				}
+			}
+		}
+
+		@Override
+		public int size() {
+			return allSigns.size();
+		}
+	}
+
+	/**
+	 * Primitive keys with an array per chunk, as SignCache stores signs now.
+	 */
+	private static class PrimitiveLayout implements Layout {
+		private final LongObjectHashMap<Object> allSigns = new LongObjectHashMap<>();
+		private final LongObjectHashMap<Object[]> signsByChunk = new LongObjectHashMap<>();
+
+		@Override
+		public void add(long position, long chunk, Object sign) {
+			allSigns.put(position, sign);
+			Object[] signs = signsByChunk.get(chunk);
+			if(signs == null) {
+				signsByChunk.put(chunk, new Object[]{sign});
+			} else {
+				Object[] newSigns = Arrays.copyOf(signs, signs.length + 1);
+				newSigns[signs.length] = sign;
+				signsByChunk.put(chunk, newSigns);
+			}
+		}
+
+		@Override
+		public Object get(long position) {
+			return allSigns.get(position);
+		}
+
+		@Override
+		public int signsInChunk(long chunk) {
+			Object[] signs = signsByChunk.get(chunk);
+			return signs == null ? 0 : signs.length;
+		}
+
+		@Override
+		public void remove(long position, long chunk, Object sign) {
+			allSigns.remove(position);
+			Object[] signs = signsByChunk.get(chunk);
+			if(signs == null) {
+				return;
+			}
+			for(int i = 0; i < signs.length; i++) {
+				if(signs[i] == sign) {
+					if(signs.length == 1) {
+						signsByChunk.remove(chunk);
+					} else {
+						Object[] newSigns = new Object[signs.length - 1];
+						System.arraycopy(signs, 0, newSigns, 0, i);
+						System.arraycopy(signs, i + 1, newSigns, i, signs.length - i - 1);
+						signsByChunk.put(chunk, newSigns);
+					}
+					return;
+				}
+			}
+		}
+
+		@Override
+		public int size() {
+			return allSigns.size();
+		}
+	}
+
+	@Test
+	void compareLayouts() {
+		// Signs at random positions in a 4000x4000 area, packed the same way as BlockPosition and ChunkPosition
+		Random random = new Random(42);
+		long[] positions = new long[SIGNS];
+		long[] chunks = new long[SIGNS];
+		Object[] signs = new Object[SIGNS];
+		Set<Long> used = new HashSet<>();
+		int count = 0;
+		while(count < SIGNS) {
+			int x = random.nextInt(4000) - 2000;
+			int y = random.nextInt(256);
+			int z = random.nextInt(4000) - 2000;
+			long position = ((long)(x & 0x3FFFFFF) << 38) | ((long)(z & 0x3FFFFFF) << 12) | (y & 0xFFF);
+			if(used.add(position)) {
+				positions[count] = position;
+				chunks[count] = (((long)(x >> 4)) << 32) | ((z >> 4) & 0xFFFFFFFFL);
+				signs[count] = new Object();
+				count++;
+			}
+		}
+		used = null;
+
+		long boxedHeap = retainedHeap(BoxedLayout::new, positions, chunks, signs);
+		long primitiveHeap = retainedHeap(PrimitiveLayout::new, positions, chunks, signs);
+		long[] boxedTimes = new long[3];
+		long[] primitiveTimes = new long[3];
+		for(int round = 0; round < ROUNDS; round++) {
+			// The last round is measured, the earlier rounds warm up the JIT
+			boxedTimes = time(new BoxedLayout(), positions, chunks, signs);
+			primitiveTimes = time(new PrimitiveLayout(), positions, chunks, signs);
+		}
+
+		LOGGER.info(String.format("%d signs, boxed: %.1f MB, add %d ns, lookup %d ns, remove %d ns per sign",
+				SIGNS, boxedHeap / 1048576.0, boxedTimes[0] / SIGNS, boxedTimes[1] / SIGNS, boxedTimes[2] / SIGNS));
+		LOGGER.info(String.format("%d signs, primitive: %.1f MB, add %d ns, lookup %d ns, remove %d ns per sign",
+				SIGNS, primitiveHeap / 1048576.0, primitiveTimes[0] / SIGNS, primitiveTimes[1] / SIGNS, primitiveTimes[2] / SIGNS));
+		assertTrue(primitiveHeap < boxedHeap, "primitive layout uses " + primitiveHeap + " bytes, boxed layout " + boxedHeap);
+	}
+
+	/**
+	 * Measure the heap retained by a filled layout, excluding the signs themselves.
+	 * @param factory   Creates an empty layout
+	 * @param positions The packed sign positions
+	 * @param chunks    The packed chunk positions
+	 * @param signs     The signs
+	 * @return The retained heap in bytes
+	 */
+	private static long retainedHeap(Supplier<Layout> factory, long[] positions, long[] chunks, Object[] signs) {
+		long before = usedHeap();
+		Layout layout = factory.get();
+		for(int i = 0; i < SIGNS; i++) {
+			layout.add(positions[i], chunks[i], signs[i]);
+		}
+		long after = usedHeap();
+		// Keep the layout reachable until it has been measured
+		assertTrue(layout.size() > 0);
+		return after - before;
+	}
+
+	/**
+	 * Time adding, looking up and removing all signs.
+	 * @return The nanoseconds for adding, looking up and removing
+	 */
+	private static long[] time(Layout layout, long[] positions, long[] chunks, Object[] signs) {
+		long start = System.nanoTime();
+		for(int i = 0; i < SIGNS; i++) {
+			layout.add(positions[i], chunks[i], signs[i]);
+		}
+		long added = System.nanoTime();
+		int found = 0;
+		for(int i = 0; i < SIGNS; i++) {
+			if(layout.get(positions[i]) != null && layout.signsInChunk(chunks[i]) > 0) {
+				found++;
+			}
+		}
+		long looked = System.nanoTime();
+		for(int i = 0; i < SIGNS; i++) {
+			layout.remove(positions[i], chunks[i], signs[i]);
+		}
+		long removed = System.nanoTime();
+		assertEquals(SIGNS, found);
+		assertEquals(0, layout.size());
+		return new long[]{added - start, looked - added, removed - looked};
+	}
+
+	/**
+	 * Get the used heap after collecting garbage.
+	 * @return The used heap in bytes
+	 */
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for(int i = 0; i < 5; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
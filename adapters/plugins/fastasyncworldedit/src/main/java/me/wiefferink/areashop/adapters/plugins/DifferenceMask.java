@@ -0,0 +1,75 @@
+package me.wiefferink.areashop.adapters.plugins;
+
+import com.sk89q.worldedit.extent.Extent;
+import com.sk89q.worldedit.extent.clipboard.Clipboard;
+import com.sk89q.worldedit.function.mask.AbstractMask;
+import com.sk89q.worldedit.function.mask.Mask;
+import com.sk89q.worldedit.function.mask.Mask2D;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.world.block.BaseBlock;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Source mask for pasting a clipboard that only lets through the blocks that differ from the destination.
+ * When the destination is an EditSession, FastAsyncWorldEdit reads the blocks through its queue, which loads
+ * copies of the chunks once and can be used off the main thread.
+ * Blocks with NBT data like chests are always pasted, their contents are not compared.
+ * Counts the compared and differing blocks, safe to use from multiple threads.
+ */
+class DifferenceMask extends AbstractMask {
+
+    private final Clipboard clipboard;
+    private final Extent destination;
+    private final BlockVector3 offset;
+    private final LongAdder compared = new LongAdder();
+    private final LongAdder differing = new LongAdder();
+
+    /**
+     * Constructor.
+     * @param clipboard The clipboard that is pasted
+     * @param destination The extent to compare with
+     * @param to The position the origin of the clipboard is pasted at
+     */
+    DifferenceMask(Clipboard clipboard, Extent destination, BlockVector3 to) {
+        this.clipboard = clipboard;
+        this.destination = destination;
+        this.offset = to.subtract(clipboard.getOrigin());
+    }
+
+    @Override
+    public boolean test(BlockVector3 position) {
+        compared.increment();
+        BaseBlock block = clipboard.getFullBlock(position);
+        if (block.hasNbtData() || !block.toImmutableState().equals(destination.getBlock(position.add(offset)))) {
+            differing.increment();
+            return true;
+        }
+        return false;
+    }
+
+    public Mask2D toMask2D() {
+        return null;
+    }
+
+    // Shared when FastAsyncWorldEdit copies the mask for other threads, the counters are thread safe
+    public Mask copy() {
+        return this;
+    }
+
+    /**
+     * Get the number of blocks that have been compared.
+     * @return The number of compared blocks
+     */
+    long getCompared() {
+        return compared.sum();
+    }
+
+    /**
+     * Get the number of blocks that differ from the destination.
+     * @return The number of blocks that are pasted
+     */
+    long getDiffering() {
+        return differing.sum();
+    }
+}
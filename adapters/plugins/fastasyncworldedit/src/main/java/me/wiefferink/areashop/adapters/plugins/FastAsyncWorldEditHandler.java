@@ -4,12 +4,11 @@ import com.sk89q.worldedit.EditSession;
 import com.sk89q.worldedit.IncompleteRegionException;
 import com.sk89q.worldedit.WorldEditException;
 import com.sk89q.worldedit.bukkit.BukkitAdapter;
+import com.sk89q.worldedit.extent.Extent;
 import com.sk89q.worldedit.extent.clipboard.BlockArrayClipboard;
 import com.sk89q.worldedit.extent.clipboard.Clipboard;
 import com.sk89q.worldedit.extent.clipboard.io.BuiltInClipboardFormat;
 import com.sk89q.worldedit.extent.clipboard.io.ClipboardFormat;
-import com.sk89q.worldedit.extent.clipboard.io.ClipboardFormats;
-import com.sk89q.worldedit.extent.clipboard.io.ClipboardReader;
 import com.sk89q.worldedit.extent.clipboard.io.ClipboardWriter;
 import com.sk89q.worldedit.function.EntityFunction;
 import com.sk89q.worldedit.function.operation.ForwardExtentCopy;
@@ -26,6 +25,7 @@ import com.sk89q.worldedit.world.entity.EntityTypes;
 import com.sk89q.worldguard.protection.regions.ProtectedRegion;
 import me.wiefferink.areashop.interfaces.AreaShopInterface;
 import me.wiefferink.areashop.interfaces.GeneralRegionInterface;
+import me.wiefferink.areashop.interfaces.SchematicStore;
 import me.wiefferink.areashop.interfaces.WorldEditInterface;
 import me.wiefferink.areashop.interfaces.WorldEditSelection;
 import org.apache.commons.lang.exception.ExceptionUtils;
@@ -36,10 +36,8 @@ import org.bukkit.entity.Hanging;
 import org.bukkit.entity.Player;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.concurrent.CompletableFuture;
 
@@ -56,22 +54,13 @@ public class FastAsyncWorldEditHandler extends WorldEditInterface {
 
     @Override
     public CompletableFuture<Boolean> restoreRegionBlocksAsync(File rawFile, GeneralRegionInterface regionInterface) {
-        File targetFile = null;
-        for (ClipboardFormat formatOption : ClipboardFormats.getAll()) {
-            for (String extension : formatOption.getFileExtensions()) {
-                File fileOption = new File(rawFile.getAbsolutePath() + "." + extension);
-                if (fileOption.exists()) {
-                    targetFile = fileOption;
-                    break;
-                }
-            }
-        }
-        if (targetFile == null || !targetFile.exists() || !targetFile.isFile()) {
+        File targetFile = findSchematicFile(rawFile);
+        if (targetFile == null) {
             pluginInterface.getLogger().info(() -> "Not restoring region. Schematic not found: " + rawFile);
             return CompletableFuture.completedFuture(false);
         }
         File finalFile = targetFile;
-        ClipboardFormat format = ClipboardFormats.findByFile(targetFile);
+        ClipboardFormat format = clipboardCache.getFormat(targetFile);
         if (format == null) {
             pluginInterface.getLogger().warning(() -> "Could not find a clipboard format for file: " + finalFile.getAbsolutePath());
             return CompletableFuture.completedFuture(false);
@@ -102,12 +91,12 @@ public class FastAsyncWorldEditHandler extends WorldEditInterface {
         CompletableFuture<Boolean> future = new CompletableFuture<>();
         Bukkit.getScheduler().runTaskAsynchronously(pluginInterface.pluginInstance(), () -> {
             Clipboard clipboard;
-            try (InputStream is = new FileInputStream(finalFile);
-                 ClipboardReader reader = format.getReader(is)) {
-                clipboard = reader.read();
+            try {
+                clipboard = clipboardCache.getClipboard(finalFile, format);
                 if (!clipboard.getDimensions().equals(dimensions)) {
                     pluginInterface.getLogger().warning(() -> "Size of the region " + regionInterface.getName() + " is not the same as the schematic to restore!");
                     pluginInterface.debugI(() -> "schematic|region, x:" + clipboard.getDimensions().getX() + "|" + regionInterface.getWidth() + ", y:" + clipboard.getDimensions().getY() + "|" + regionInterface.getHeight() + ", z:" + clipboard.getDimensions().getZ() + "|" + regionInterface.getDepth());
+                    clipboardCache.release(clipboard);
                     future.complete(false);
                     return;
                 }
@@ -125,18 +114,18 @@ public class FastAsyncWorldEditHandler extends WorldEditInterface {
             final EditSession editSession = pluginInterface.getWorldEdit().getWorldEdit().newEditSessionBuilder()
                     .world(world)
                     .build();
-            final Operation operation = new ClipboardHolder(clipboard).createPaste(editSession)
-                    .to(min)
-                    .copyEntities(false) // Don't copy entities as FAWE has bug which doesn't synchronize entity access
-                    .build();
-            future.complete(true);
-            try (editSession; clipboard) {
-                Operations.complete(operation);
+            // The clipboard might be shared with other restores through the cache
+            try (editSession) {
+                synchronized (clipboard) {
+                    paste(clipboard, editSession, min, regionInterface);
+                }
                 future.complete(true);
             } catch (WorldEditException ex) {
                 pluginInterface.getLogger().warning(() -> "An error occurred while restoring schematic of " + regionInterface.getName() + ", enable debug to see the complete stacktrace");
                 pluginInterface.debugI(() -> ExceptionUtils.getStackTrace(ex));
                 future.complete(false);
+            } finally {
+                clipboardCache.release(clipboard);
             }
         });
         return future;
@@ -163,9 +152,7 @@ public class FastAsyncWorldEditHandler extends WorldEditInterface {
         pluginInterface.debugI(() -> String.format("Trying to save region %s to file %s with format %s", regionInterface.getName(), file.getName(), format.getName()));
         CompletableFuture<Boolean> future = new CompletableFuture<>();
         Bukkit.getScheduler().runTaskAsynchronously(pluginInterface.pluginInstance(), () -> {
-            try (OutputStream os = new FileOutputStream(targetFile);
-                 ClipboardWriter writer = format.getWriter(os);
-                 Clipboard clipboard = new BlockArrayClipboard(region)) {
+            try (Clipboard clipboard = new BlockArrayClipboard(region)) {
                 try (EditSession editSession = pluginInterface.getWorldEdit().getWorldEdit().newEditSessionBuilder()
                         .world(world)
                         .build()) {
@@ -174,7 +161,7 @@ public class FastAsyncWorldEditHandler extends WorldEditInterface {
                     copy.setCopyingEntities(false);
                     Operations.complete(copy);
                 }
-                writer.write(clipboard);
+                writeSchematic(file, targetFile, clipboard, format);
                 future.complete(true);
                 return;
             } catch (IOException | WorldEditException ex) {
@@ -191,22 +178,13 @@ public class FastAsyncWorldEditHandler extends WorldEditInterface {
 
     @Override
     public boolean restoreRegionBlocks(File rawFile, GeneralRegionInterface regionInterface) {
-        File targetFile = null;
-        for (ClipboardFormat formatOption : ClipboardFormats.getAll()) {
-            for (String extension : formatOption.getFileExtensions()) {
-                File fileOption = new File(rawFile.getAbsolutePath() + "." + extension);
-                if (fileOption.exists()) {
-                    targetFile = fileOption;
-                    break;
-                }
-            }
-        }
-        if (targetFile == null || !targetFile.exists() || !targetFile.isFile()) {
+        File targetFile = findSchematicFile(rawFile);
+        if (targetFile == null) {
             pluginInterface.getLogger().info(() -> "Not restoring region. Schematic not found: " + rawFile);
             return false;
         }
         File finalFile = targetFile;
-        ClipboardFormat format = ClipboardFormats.findByFile(targetFile);
+        ClipboardFormat format = clipboardCache.getFormat(targetFile);
         if (format == null) {
             pluginInterface.getLogger().warning(() -> "Could not find a clipboard format for file: " + finalFile.getAbsolutePath());
             return false;
@@ -234,19 +212,19 @@ public class FastAsyncWorldEditHandler extends WorldEditInterface {
             pluginInterface.getLogger().warning(() -> "Failed to clear tile entities for region:  " + regionInterface.getName() + ". Will attempt to past anyway");
         }
         BlockVector3 dimensions = regionInterface.computeDimensions();
-        try (InputStream is = new FileInputStream(finalFile);
-             ClipboardReader reader = format.getReader(is)) {
-            Clipboard clipboard = reader.read();
-            if (!clipboard.getDimensions().equals(dimensions)) {
+        Clipboard clipboard = null;
+        try {
+            clipboard = clipboardCache.getClipboard(finalFile, format);
+            BlockVector3 schematicDimensions = clipboard.getDimensions();
+            if (!schematicDimensions.equals(dimensions)) {
                 pluginInterface.getLogger().warning(() -> "Size of the region " + regionInterface.getName() + " is not the same as the schematic to restore!");
-                pluginInterface.debugI(() -> "schematic|region, x:" + clipboard.getDimensions().getX() + "|" + regionInterface.getWidth() + ", y:" + clipboard.getDimensions().getY() + "|" + regionInterface.getHeight() + ", z:" + clipboard.getDimensions().getZ() + "|" + regionInterface.getDepth());
+                pluginInterface.debugI(() -> "schematic|region, x:" + schematicDimensions.getX() + "|" + regionInterface.getWidth() + ", y:" + schematicDimensions.getY() + "|" + regionInterface.getHeight() + ", z:" + schematicDimensions.getZ() + "|" + regionInterface.getDepth());
                 return false;
             }
-            final Operation operation = new ClipboardHolder(clipboard).createPaste(world)
-                    .to(min)
-                    .copyEntities(false)
-                    .build();
-            Operations.complete(operation);
+            // The clipboard might be shared with other restores through the cache
+            synchronized (clipboard) {
+                paste(clipboard, world, min, regionInterface);
+            }
             return true;
         } catch (IOException | WorldEditException ex) {
             pluginInterface.getLogger().warning(() -> "An error occurred while restoring schematic of " + regionInterface.getName() + ", enable debug to see the complete stacktrace");
@@ -254,6 +232,10 @@ public class FastAsyncWorldEditHandler extends WorldEditInterface {
         } catch (Exception ex) {
             pluginInterface.getLogger().warning(() -> "crashed during restore of " + regionInterface.getName());
             pluginInterface.debugI(() -> ExceptionUtils.getStackTrace(ex));
+        } finally {
+            if (clipboard != null) {
+                clipboardCache.release(clipboard);
+            }
         }
         return false;
     }
@@ -276,9 +258,7 @@ public class FastAsyncWorldEditHandler extends WorldEditInterface {
             return false;
         }
         pluginInterface.debugI(() -> String.format("Trying to save region %s to file %s with format %s", regionInterface.getName(), file.getName(), format.getName()));
-        try (OutputStream os = new FileOutputStream(targetFile);
-             ClipboardWriter writer = format.getWriter(os);
-             Clipboard clipboard = new BlockArrayClipboard(region)) {
+        try (Clipboard clipboard = new BlockArrayClipboard(region)) {
             try (EditSession editSession = pluginInterface.getWorldEdit().getWorldEdit().newEditSessionBuilder()
                     .world(world)
                     .build()) {
@@ -286,7 +266,7 @@ public class FastAsyncWorldEditHandler extends WorldEditInterface {
                 copy.setCopyingEntities(true);
                 Operations.complete(copy);
             }
-            writer.write(clipboard);
+            writeSchematic(file, targetFile, clipboard, format);
             return true;
         } catch (IOException | WorldEditException ex) {
             pluginInterface.getLogger().warning(() -> "An error occurred while saving schematic of " + regionInterface.getName() + ", enable debug to see the complete stacktrace");
@@ -298,6 +278,61 @@ public class FastAsyncWorldEditHandler extends WorldEditInterface {
         return false;
     }
 
+    /**
+     * Paste a clipboard, with 'restore.differential' only the blocks that differ from the destination are pasted.
+     * The destination is read while pasting, so it should be safe to read from the current thread: an EditSession
+     * off the main thread, or the world itself on the main thread.
+     * @param clipboard The clipboard to paste
+     * @param destination The extent to paste into
+     * @param min The position the origin of the clipboard is pasted at
+     * @param regionInterface The region that is restored
+     * @throws WorldEditException When pasting failed
+     */
+    private void paste(Clipboard clipboard, Extent destination, BlockVector3 min, GeneralRegionInterface regionInterface) throws WorldEditException {
+        if (!pluginInterface.getConfig().getBoolean("restore.differential", false)) {
+            final Operation operation = new ClipboardHolder(clipboard).createPaste(destination)
+                    .to(min)
+                    .copyEntities(false) // Don't copy entities as FAWE has bug which doesn't synchronize entity access
+                    .build();
+            Operations.complete(operation);
+            return;
+        }
+        // Each block is read before it is pasted, so the destination still shows the old block
+        DifferenceMask mask = new DifferenceMask(clipboard, destination, min);
+        final ForwardExtentCopy copy = new ForwardExtentCopy(clipboard, clipboard.getRegion(), clipboard.getOrigin(), destination, min);
+        copy.setSourceMask(mask);
+        copy.setCopyingEntities(false);
+        Operations.complete(copy);
+        long compared = mask.getCompared();
+        long differing = mask.getDiffering();
+        pluginInterface.debugI(() -> "Differential restore of region " + regionInterface.getName() + " wrote " + differing + " of " + compared
+                + " blocks (" + (compared - differing) + " unchanged blocks skipped)");
+    }
+
+    /**
+     * Write a schematic to the schematic store if there is one, otherwise to its own file.
+     * @param file File to save to, without extension
+     * @param targetFile File to save to when there is no schematic store
+     * @param clipboard The blocks to save
+     * @param format The format to save in
+     * @throws IOException When writing the schematic failed
+     */
+    private void writeSchematic(File file, File targetFile, Clipboard clipboard, ClipboardFormat format) throws IOException {
+        SchematicStore store = schematicStore;
+        try {
+            if (store != null) {
+                store.store(file, clipboard, format);
+                return;
+            }
+            try (OutputStream os = new FileOutputStream(targetFile);
+                 ClipboardWriter writer = format.getWriter(os)) {
+                writer.write(clipboard);
+            }
+        } finally {
+            clipboardCache.invalidate(file);
+        }
+    }
+
     @Override
     public WorldEditSelection getPlayerSelection(Player player) {
         try {
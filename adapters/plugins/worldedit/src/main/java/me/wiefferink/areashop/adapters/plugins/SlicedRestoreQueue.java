@@ -0,0 +1,442 @@
+package me.wiefferink.areashop.adapters.plugins;
+
+import com.sk89q.worldedit.EditSession;
+import com.sk89q.worldedit.WorldEditException;
+import com.sk89q.worldedit.bukkit.BukkitAdapter;
+import com.sk89q.worldedit.extent.clipboard.Clipboard;
+import com.sk89q.worldedit.function.entity.ExtentEntityCopy;
+import com.sk89q.worldedit.function.operation.ForwardExtentCopy;
+import com.sk89q.worldedit.function.operation.Operations;
+import com.sk89q.worldedit.function.visitor.EntityVisitor;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.math.transform.Identity;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import com.sk89q.worldedit.regions.Region;
+import com.sk89q.worldedit.world.World;
+import com.sk89q.worldedit.world.block.BaseBlock;
+import com.sk89q.worldedit.world.block.BlockState;
+import me.wiefferink.areashop.interfaces.AreaShopInterface;
+import org.apache.commons.lang.exception.ExceptionUtils;
+import org.bukkit.Bukkit;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.block.data.BlockData;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pastes clipboards into the world in slices of one chunk section, spread over multiple ticks.
+ * Restores are queued per region, only a limited number of regions is restored at the same time and the time
+ * spent per tick is limited by the 'restore.millisPerTick' setting. Only used from the main thread.
+ * With 'restore.differential' the clipboard is compared with snapshots of the chunks in the background first,
+ * and only the blocks that differ from the world are written.
+ */
+public class SlicedRestoreQueue {
+
+	// Maximum number of differing blocks written in one step
+	private static final int WRITE_BATCH = 4096;
+
+	private final AreaShopInterface pluginInterface;
+	// Restores that did not start yet by lowercase region name, a newer restore of a region replaces the queued one
+	private final Map<String, RestoreJob> queued = new LinkedHashMap<>();
+	private final List<RestoreJob> active = new ArrayList<>();
+	private BukkitTask task = null;
+	// Number of ticks in which slices have been pasted, used to report the number of ticks a restore took
+	private int tickCount = 0;
+	// Set while finishing all restores, the plugin cannot schedule background tasks anymore then
+	private boolean finishing = false;
+	// Bukkit block data by WorldEdit block state, empty if the state has no Bukkit equivalent; used from background threads
+	private final Map<BlockState, Optional<BlockData>> blockDataCache = new ConcurrentHashMap<>();
+	// Blocks compared and blocks skipped because they did not change, over all differential restores
+	private long comparedTotal = 0;
+	private long skippedTotal = 0;
+
+	public SlicedRestoreQueue(AreaShopInterface pluginInterface) {
+		this.pluginInterface = pluginInterface;
+	}
+
+	/**
+	 * Queue pasting a clipboard.
+	 * @param regionName The name of the region that is restored
+	 * @param world The world to paste in
+	 * @param clipboard The clipboard to paste
+	 * @param to The position the origin of the clipboard is pasted at
+	 * @return Future that completes on the main thread with true when the clipboard has been pasted, otherwise false
+	 */
+	public CompletableFuture<Boolean> restore(String regionName, World world, Clipboard clipboard, BlockVector3 to) {
+		String key = regionName.toLowerCase(Locale.ENGLISH);
+		RestoreJob job = new RestoreJob(regionName, world, clipboard, to);
+		RestoreJob replaced = queued.remove(key);
+		if (replaced != null) {
+			pluginInterface.debugI(() -> "Queued restore of region " + regionName + " replaced by a newer restore");
+			replaced.future.complete(false);
+		}
+		queued.put(key, job);
+		pluginInterface.debugI(() -> "Queued " + (job.differential ? "differential restore of region " + regionName + " in " + job.columns.size() + " chunks, "
+				: "restore of region " + regionName + " in " + job.slices.size() + " slices, ")
+				+ active.size() + " active and " + queued.size() + " queued restores");
+		if (task == null) {
+			task = Bukkit.getScheduler().runTaskTimer(pluginInterface.pluginInstance(), this::tick, 1, 1);
+		}
+		return job.future;
+	}
+
+	/**
+	 * Get the number of restores that are active or waiting to start.
+	 * @return The number of restores that did not finish yet
+	 */
+	public int getPendingCount() {
+		return active.size() + queued.size();
+	}
+
+	/**
+	 * Finish all active and queued restores right away, used when the plugin is disabled.
+	 */
+	public void finishAll() {
+		if (task != null) {
+			task.cancel();
+			task = null;
+		}
+		finishing = true;
+		while (!queued.isEmpty() || !active.isEmpty()) {
+			tickCount++;
+			startQueued(Integer.MAX_VALUE);
+			active.removeIf(job -> job.step() == StepResult.FINISHED);
+		}
+		finishing = false;
+	}
+
+	/**
+	 * Paste slices of the active restores until the time for this tick is used, in turns so all active restores progress.
+	 * Stops early when all active restores are waiting for chunks that are compared in the background.
+	 */
+	private void tick() {
+		long start = System.nanoTime();
+		tickCount++;
+		long budget = TimeUnit.MILLISECONDS.toNanos(Math.max(1, pluginInterface.getConfig().getInt("restore.millisPerTick", 10)));
+		int maxActive = Math.max(1, pluginInterface.getConfig().getInt("restore.maxConcurrent", 2));
+		startQueued(maxActive);
+		int index = 0;
+		int waiting = 0;
+		while (!active.isEmpty() && waiting < active.size() && System.nanoTime() - start < budget) {
+			if (index >= active.size()) {
+				index = 0;
+			}
+			StepResult result = active.get(index).step();
+			if (result == StepResult.FINISHED) {
+				active.remove(index);
+				startQueued(maxActive);
+				waiting = 0;
+			} else {
+				index++;
+				waiting = result == StepResult.WAITING ? waiting + 1 : 0;
+			}
+		}
+		if (active.isEmpty() && queued.isEmpty()) {
+			task.cancel();
+			task = null;
+		}
+	}
+
+	/**
+	 * Start queued restores, a region is never restored twice at the same time.
+	 * @param maxActive The maximum number of active restores
+	 */
+	private void startQueued(int maxActive) {
+		Iterator<Map.Entry<String, RestoreJob>> iterator = queued.entrySet().iterator();
+		while (active.size() < maxActive && iterator.hasNext()) {
+			Map.Entry<String, RestoreJob> entry = iterator.next();
+			if (active.stream().anyMatch(job -> job.key.equals(entry.getKey()))) {
+				continue;
+			}
+			iterator.remove();
+			active.add(entry.getValue());
+		}
+	}
+
+	/**
+	 * Get the Bukkit block data of a WorldEdit block state.
+	 * @param state The block state to convert
+	 * @return The block data, or null if the state has no Bukkit equivalent
+	 */
+	private BlockData getBlockData(BlockState state) {
+		// Parsing the state is safe from any thread, unlike the caches of BukkitAdapter
+		return blockDataCache.computeIfAbsent(state, key -> {
+			try {
+				return Optional.of(Bukkit.createBlockData(key.getAsString()));
+			} catch (IllegalArgumentException ex) {
+				return Optional.empty();
+			}
+		}).orElse(null);
+	}
+
+	private enum StepResult {
+		// Work has been done, the restore is not finished yet
+		PROGRESS,
+		// Nothing could be done, the restore waits for a chunk comparison in the background
+		WAITING,
+		FINISHED
+	}
+
+	/**
+	 * A chunk column of the destination, limited to the part that is restored.
+	 * @param chunkX The x coordinate of the chunk
+	 * @param chunkZ The z coordinate of the chunk
+	 * @param min The minimum point in the world
+	 * @param max The maximum point in the world
+	 */
+	private record ChunkColumn(int chunkX, int chunkZ, BlockVector3 min, BlockVector3 max) {
+	}
+
+	/**
+	 * The positions in the clipboard that differ from the world in a chunk column.
+	 * @param positions The clipboard positions of the blocks to write, bottom to top
+	 * @param compared The number of compared blocks
+	 */
+	private record ColumnDifferences(List<BlockVector3> positions, int compared) {
+	}
+
+	private record Comparison(ChunkColumn column, CompletableFuture<ColumnDifferences> differences) {
+	}
+
+	private class RestoreJob {
+		private final String regionName;
+		private final String key;
+		private final World world;
+		private final Clipboard clipboard;
+		private final BlockVector3 to;
+		private final BlockVector3 offset;
+		private final boolean differential;
+		private final List<Region> slices = new ArrayList<>();
+		private final List<ChunkColumn> columns = new ArrayList<>();
+		private final CompletableFuture<Boolean> future = new CompletableFuture<>();
+		private final org.bukkit.World bukkitWorld;
+		private int next = 0;
+		private int nextColumn = 0;
+		private int comparedColumns = 0;
+		// Comparison of the chunk that is written next, null if it did not start yet
+		private Comparison comparison = null;
+		private List<BlockVector3> differences = null;
+		private int nextDifference = 0;
+		private long compared = 0;
+		private long written = 0;
+		private int ticks = 0;
+		private int lastTick = -1;
+		private int reportedPercentage = 0;
+		private long started = 0;
+		private long busy = 0;
+
+		private RestoreJob(String regionName, World world, Clipboard clipboard, BlockVector3 to) {
+			this.regionName = regionName;
+			this.key = regionName.toLowerCase(Locale.ENGLISH);
+			this.world = world;
+			this.clipboard = clipboard;
+			this.to = to;
+			this.offset = to.subtract(clipboard.getOrigin());
+			this.differential = pluginInterface.getConfig().getBoolean("restore.differential", false);
+			this.bukkitWorld = BukkitAdapter.adapt(world);
+			// Split along the chunk section borders of the destination, so each slice changes a single chunk section
+			BlockVector3 min = clipboard.getRegion().getMinimumPoint().add(offset);
+			BlockVector3 max = clipboard.getRegion().getMaximumPoint().add(offset);
+			for (int x = min.getX() >> 4; x <= max.getX() >> 4; x++) {
+				for (int z = min.getZ() >> 4; z <= max.getZ() >> 4; z++) {
+					if (differential) {
+						columns.add(new ChunkColumn(x, z,
+								BlockVector3.at(Math.max(min.getX(), x << 4), min.getY(), Math.max(min.getZ(), z << 4)),
+								BlockVector3.at(Math.min(max.getX(), (x << 4) + 15), max.getY(), Math.min(max.getZ(), (z << 4) + 15))));
+						continue;
+					}
+					for (int y = min.getY() >> 4; y <= max.getY() >> 4; y++) {
+						BlockVector3 sliceMin = BlockVector3.at(Math.max(min.getX(), x << 4), Math.max(min.getY(), y << 4), Math.max(min.getZ(), z << 4));
+						BlockVector3 sliceMax = BlockVector3.at(Math.min(max.getX(), (x << 4) + 15), Math.min(max.getY(), (y << 4) + 15), Math.min(max.getZ(), (z << 4) + 15));
+						slices.add(new CuboidRegion(sliceMin.subtract(offset), sliceMax.subtract(offset)));
+					}
+				}
+			}
+		}
+
+		/**
+		 * Paste the next slice or the next differing blocks, or the entities after all blocks.
+		 * @return The state of the restore after this step
+		 */
+		private StepResult step() {
+			long start = System.nanoTime();
+			if (started == 0) {
+				started = start;
+			}
+			if (lastTick != tickCount) {
+				lastTick = tickCount;
+				ticks++;
+			}
+			try {
+				StepResult result = differential ? writeDifferences() : pasteSlice();
+				if (result == StepResult.FINISHED) {
+					pasteEntities();
+				}
+				busy += System.nanoTime() - start;
+				if (result != StepResult.FINISHED) {
+					return result;
+				}
+			} catch (WorldEditException | RuntimeException ex) {
+				pluginInterface.getLogger().warning(() -> "An error occurred while restoring schematic of " + regionName + ", enable debug to see the complete stacktrace");
+				pluginInterface.debugI(() -> ExceptionUtils.getStackTrace(ex));
+				future.complete(false);
+				return StepResult.FINISHED;
+			}
+			if (differential) {
+				comparedTotal += compared;
+				skippedTotal += compared - written;
+				pluginInterface.debugI(() -> "Restored region " + regionName + " in " + ticks + " ticks, "
+						+ TimeUnit.NANOSECONDS.toMillis(busy) + "ms of work over " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) + "ms, "
+						+ "wrote " + written + " of " + compared + " blocks (" + (compared - written) + " unchanged blocks skipped, "
+						+ skippedTotal + " of " + comparedTotal + " blocks skipped in total)");
+			} else {
+				pluginInterface.debugI(() -> "Restored region " + regionName + " in " + ticks + " ticks, "
+						+ TimeUnit.NANOSECONDS.toMillis(busy) + "ms of work over " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) + "ms");
+			}
+			future.complete(true);
+			return StepResult.FINISHED;
+		}
+
+		/**
+		 * Paste the next slice.
+		 * @return FINISHED when all slices have been pasted, otherwise PROGRESS
+		 * @throws WorldEditException When pasting failed
+		 */
+		private StepResult pasteSlice() throws WorldEditException {
+			if (next >= slices.size()) {
+				return StepResult.FINISHED;
+			}
+			try (EditSession editSession = newEditSession()) {
+				ForwardExtentCopy copy = new ForwardExtentCopy(clipboard, slices.get(next), clipboard.getOrigin(), editSession, to);
+				copy.setCopyingEntities(false);
+				Operations.complete(copy);
+			}
+			next++;
+			reportProgress(next, slices.size(), "slices");
+			return StepResult.PROGRESS;
+		}
+
+		/**
+		 * Write the next batch of blocks that differ from the world, comparing the next chunk once the previous one is written.
+		 * @return FINISHED when all chunks have been compared and written, WAITING when the next chunk is still being compared, otherwise PROGRESS
+		 * @throws WorldEditException When writing failed
+		 */
+		private StepResult writeDifferences() throws WorldEditException {
+			if (differences == null || nextDifference >= differences.size()) {
+				if (comparison == null) {
+					if (nextColumn >= columns.size()) {
+						return StepResult.FINISHED;
+					}
+					// The snapshot is only taken right before the chunk is written, a snapshot taken earlier would
+					// miss blocks changed in the meantime and leave them unrestored
+					ChunkColumn column = columns.get(nextColumn++);
+					comparison = new Comparison(column, compare(column));
+				}
+				if (!comparison.differences().isDone()) {
+					if (!finishing) {
+						return StepResult.WAITING;
+					}
+					// Background tasks might never run anymore, compare again right here
+					comparison = new Comparison(comparison.column(), compare(comparison.column()));
+				}
+				ColumnDifferences result = comparison.differences().join();
+				comparison = null;
+				compared += result.compared();
+				differences = result.positions();
+				nextDifference = 0;
+				comparedColumns++;
+				reportProgress(comparedColumns, columns.size(), "chunks");
+			}
+			int end = Math.min(differences.size(), nextDifference + WRITE_BATCH);
+			try (EditSession editSession = newEditSession()) {
+				for (; nextDifference < end; nextDifference++) {
+					BlockVector3 position = differences.get(nextDifference);
+					editSession.setBlock(position.add(offset), clipboard.getFullBlock(position));
+					written++;
+				}
+			}
+			return StepResult.PROGRESS;
+		}
+
+		/**
+		 * Take a snapshot of a chunk and compare it with the clipboard in the background.
+		 * @param column The chunk column to compare
+		 * @return Future that completes with the blocks that differ
+		 */
+		private CompletableFuture<ColumnDifferences> compare(ChunkColumn column) {
+			ChunkSnapshot snapshot = bukkitWorld.getChunkAt(column.chunkX(), column.chunkZ()).getChunkSnapshot(false, false, false);
+			if (finishing) {
+				return CompletableFuture.completedFuture(findDifferences(column, snapshot));
+			}
+			return CompletableFuture.supplyAsync(() -> findDifferences(column, snapshot),
+					runnable -> Bukkit.getScheduler().runTaskAsynchronously(pluginInterface.pluginInstance(), runnable));
+		}
+
+		/**
+		 * Find the blocks of the clipboard that differ from a chunk snapshot, safe to use from any thread.
+		 * Blocks with NBT data like chests are always written, the snapshot does not contain their contents.
+		 * @param column The chunk column to compare
+		 * @param snapshot Snapshot of the chunk
+		 * @return The clipboard positions that should be written
+		 */
+		private ColumnDifferences findDifferences(ChunkColumn column, ChunkSnapshot snapshot) {
+			List<BlockVector3> positions = new ArrayList<>();
+			int count = 0;
+			for (int y = column.min().getY(); y <= column.max().getY(); y++) {
+				for (int x = column.min().getX(); x <= column.max().getX(); x++) {
+					for (int z = column.min().getZ(); z <= column.max().getZ(); z++) {
+						BlockVector3 position = BlockVector3.at(x, y, z).subtract(offset);
+						BaseBlock block = clipboard.getFullBlock(position);
+						BlockData expected = getBlockData(block.toImmutableState());
+						if (expected == null || block.hasNbtData() || !expected.equals(snapshot.getBlockData(x & 15, y, z & 15))) {
+							positions.add(position);
+						}
+						count++;
+					}
+				}
+			}
+			return new ColumnDifferences(positions, count);
+		}
+
+		/**
+		 * Paste the entities of the clipboard.
+		 * @throws WorldEditException When pasting failed
+		 */
+		private void pasteEntities() throws WorldEditException {
+			try (EditSession editSession = newEditSession()) {
+				ExtentEntityCopy entityCopy = new ExtentEntityCopy(clipboard, clipboard.getOrigin().toVector3(), editSession, to.toVector3(), new Identity());
+				Operations.complete(new EntityVisitor(clipboard.getEntities().iterator(), entityCopy));
+			}
+		}
+
+		private EditSession newEditSession() {
+			return pluginInterface.getWorldEdit().getWorldEdit().newEditSessionBuilder()
+					.world(world)
+					.build();
+		}
+
+		/**
+		 * Log the progress of the restore every 10 percent.
+		 * @param done The number of finished parts
+		 * @param total The total number of parts
+		 * @param parts What the parts are called
+		 */
+		private void reportProgress(int done, int total, String parts) {
+			int percentage = done * 100 / total;
+			if (percentage / 10 > reportedPercentage / 10) {
+				reportedPercentage = percentage;
+				pluginInterface.debugI(() -> "Restoring region " + regionName + ": " + done + "/" + total + " " + parts + " (" + percentage + "%)");
+			}
+		}
+	}
+}
@@ -9,8 +9,6 @@ import com.sk89q.worldedit.extent.clipboard.BlockArrayClipboard;
 import com.sk89q.worldedit.extent.clipboard.Clipboard;
 import com.sk89q.worldedit.extent.clipboard.io.BuiltInClipboardFormat;
 import com.sk89q.worldedit.extent.clipboard.io.ClipboardFormat;
-import com.sk89q.worldedit.extent.clipboard.io.ClipboardFormats;
-import com.sk89q.worldedit.extent.clipboard.io.ClipboardReader;
 import com.sk89q.worldedit.extent.clipboard.io.ClipboardWriter;
 import com.sk89q.worldedit.function.EntityFunction;
 import com.sk89q.worldedit.function.operation.ForwardExtentCopy;
@@ -27,23 +25,27 @@ import com.sk89q.worldedit.world.entity.EntityTypes;
 import com.sk89q.worldguard.protection.regions.ProtectedRegion;
 import me.wiefferink.areashop.interfaces.AreaShopInterface;
 import me.wiefferink.areashop.interfaces.GeneralRegionInterface;
+import me.wiefferink.areashop.interfaces.SchematicStore;
 import me.wiefferink.areashop.interfaces.WorldEditInterface;
 import me.wiefferink.areashop.interfaces.WorldEditSelection;
 import org.apache.commons.lang.exception.ExceptionUtils;
+import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 public class WorldEditHandler extends WorldEditInterface {
 
+	private final SlicedRestoreQueue restoreQueue;
+
 	public WorldEditHandler(AreaShopInterface pluginInterface) {
 		super(pluginInterface);
+		this.restoreQueue = new SlicedRestoreQueue(pluginInterface);
 	}
 
 	@Override
@@ -60,39 +62,105 @@ public class WorldEditHandler extends WorldEditInterface {
 		}
 	}
 
+	@Override
+	public boolean supportsAsyncOperations() {
+		return isSlicedRestore();
+	}
+
+	@Override
+	public void shutdown() {
+		restoreQueue.finishAll();
+	}
+
 	@Override
 	public boolean restoreRegionBlocks(File rawFile, GeneralRegionInterface regionInterface) {
-		File targetFile = null;
-		for (ClipboardFormat formatOption : ClipboardFormats.getAll()) {
-			for (String extension : formatOption.getFileExtensions()) {
-				File fileOption = new File(rawFile.getAbsolutePath() + "." + extension);
-				if (fileOption.exists()) {
-					targetFile = fileOption;
-					break;
-				}
-			}
+		RestoreSource source = prepareRestore(rawFile, regionInterface);
+		if (source == null) {
+			return false;
 		}
-		if (targetFile == null || !targetFile.exists() || !targetFile.isFile()) {
-			pluginInterface.getLogger().info(() -> "Not restoring region. Schematic not found: " + rawFile);
+		Clipboard clipboard = readClipboard(source, regionInterface);
+		if (clipboard == null) {
 			return false;
 		}
+		try {
+			final Operation operation = new ClipboardHolder(clipboard).createPaste(source.world())
+					.to(source.min())
+					.copyEntities(true)
+					.build();
+			Operations.complete(operation);
+			return true;
+		} catch (WorldEditException ex) {
+			pluginInterface.getLogger().warning(() ->"An error occurred while restoring schematic of " + regionInterface.getName() + ", enable debug to see the complete stacktrace");
+			pluginInterface.debugI(() -> ExceptionUtils.getStackTrace(ex));
+		} catch (Exception ex) {
+			pluginInterface.getLogger().warning(() -> "crashed during restore of " + regionInterface.getName());
+			pluginInterface.debugI(() -> ExceptionUtils.getStackTrace(ex));
+		}
+		return false;
+	}
+
+	@Override
+	public CompletableFuture<Boolean> restoreRegionBlocksAsync(File rawFile, GeneralRegionInterface regionInterface) {
+		if (!isSlicedRestore()) {
+			return CompletableFuture.completedFuture(restoreRegionBlocks(rawFile, regionInterface));
+		}
+		RestoreSource source = prepareRestore(rawFile, regionInterface);
+		if (source == null) {
+			return CompletableFuture.completedFuture(false);
+		}
+		// Read the schematic in the background, the blocks are pasted in slices on the main thread
+		CompletableFuture<Boolean> future = new CompletableFuture<>();
+		Bukkit.getScheduler().runTaskAsynchronously(pluginInterface.pluginInstance(), () -> {
+			Clipboard clipboard = readClipboard(source, regionInterface);
+			if (clipboard == null || !pluginInterface.pluginInstance().isEnabled()) {
+				future.complete(false);
+				return;
+			}
+			Bukkit.getScheduler().runTask(pluginInterface.pluginInstance(), () ->
+					restoreQueue.restore(regionInterface.getName(), source.world(), clipboard, source.min())
+							.thenAccept(future::complete)
+			);
+		});
+		return future;
+	}
+
+	/**
+	 * Check if schematics should be restored in slices over multiple ticks.
+	 * @return true if restores are sliced, false if a restore pastes everything at once
+	 */
+	private boolean isSlicedRestore() {
+		return pluginInterface.getConfig().getBoolean("restore.sliced", true);
+	}
+
+	/**
+	 * Find the schematic of a region and check if it can be restored, clears entities when configured.
+	 * @param rawFile File to restore from, without extension
+	 * @param regionInterface Region to restore
+	 * @return The schematic and where to paste it, or null if it cannot be restored
+	 */
+	private RestoreSource prepareRestore(File rawFile, GeneralRegionInterface regionInterface) {
+		File targetFile = findSchematicFile(rawFile);
+		if (targetFile == null) {
+			pluginInterface.getLogger().info(() -> "Not restoring region. Schematic not found: " + rawFile);
+			return null;
+		}
 		File finalFile = targetFile;
-		ClipboardFormat format = ClipboardFormats.findByFile(targetFile);
+		ClipboardFormat format = clipboardCache.getFormat(targetFile);
 		if (format == null) {
 			pluginInterface.getLogger().warning(() -> "Could not find a clipboard format for file: " + finalFile.getAbsolutePath());
-			return false;
+			return null;
 		}
 		BlockVector3 min = regionInterface.getRegion().getMinimumPoint();
 		final World world = BukkitAdapter.adapt(regionInterface.getWorld());
 		if (world == null) {
 			pluginInterface.getLogger().warning(() -> "Did not restore region " + regionInterface.getName() + ", world not found: " + regionInterface.getWorldName());
-			return false;
+			return null;
 		}
 		long volume = regionInterface.getRegion().volume();
 		int maxBlocks = pluginInterface.getConfig().getInt("maximumBlocks", Integer.MAX_VALUE);
 		if (volume > maxBlocks) {
 			pluginInterface.getLogger().warning((() -> "Region is bigger than the max allowed block change size! Volume: " + volume + " Limit: " + maxBlocks));
-			return false;
+			return null;
 		}
 		pluginInterface.debugI(() -> String.format("Attempting to restore using format: %s", format.getName()));
 		// Bug in which schematic pasting doesn't clear tile entities properly
@@ -103,29 +171,32 @@ public class WorldEditHandler extends WorldEditInterface {
 		if (pluginInterface.getConfig().getBoolean("forceClearEntities", false) && failedClearEntities(world, region, regionInterface)) {
 			pluginInterface.getLogger().warning(() -> "Failed to clear tile entities for region:  " + regionInterface.getName() + ". Will attempt to past anyway");
 		}
-		BlockVector3 dimensions = regionInterface.computeDimensions();
-		try (InputStream is = new FileInputStream(finalFile);
-			 ClipboardReader reader = format.getReader(is)) {
-			Clipboard clipboard = reader.read();
-			if (!clipboard.getDimensions().equals(dimensions)) {
+		return new RestoreSource(finalFile, format, world, min, regionInterface.computeDimensions());
+	}
+
+	/**
+	 * Read the schematic to restore, can be called from any thread.
+	 * @param source The schematic and where to paste it
+	 * @param regionInterface Region to restore
+	 * @return The clipboard, or null if it could not be read or does not match the size of the region
+	 */
+	private Clipboard readClipboard(RestoreSource source, GeneralRegionInterface regionInterface) {
+		try {
+			Clipboard clipboard = clipboardCache.getClipboard(source.file(), source.format());
+			if (!clipboard.getDimensions().equals(source.dimensions())) {
 				pluginInterface.getLogger().warning(() -> "Size of the region " + regionInterface.getName() + " is not the same as the schematic to restore!");
 				pluginInterface.debugI("schematic|region, x:" + clipboard.getDimensions().getX() + "|" + regionInterface.getWidth() + ", y:" + clipboard.getDimensions().getY() + "|" + regionInterface.getHeight() + ", z:" + clipboard.getDimensions().getZ() + "|" + regionInterface.getDepth());
-				return false;
+				return null;
 			}
-			final Operation operation = new ClipboardHolder(clipboard).createPaste(world)
-					.to(min)
-					.copyEntities(true)
-					.build();
-			Operations.complete(operation);
-			return true;
-		} catch (IOException | WorldEditException ex) {
+			return clipboard;
+		} catch (IOException ex) {
 			pluginInterface.getLogger().warning(() ->"An error occurred while restoring schematic of " + regionInterface.getName() + ", enable debug to see the complete stacktrace");
 			pluginInterface.debugI(() -> ExceptionUtils.getStackTrace(ex));
 		} catch (Exception ex) {
 			pluginInterface.getLogger().warning(() -> "crashed during restore of " + regionInterface.getName());
 			pluginInterface.debugI(() -> ExceptionUtils.getStackTrace(ex));
 		}
-		return false;
+		return null;
 	}
 
 	@Override
@@ -155,9 +226,16 @@ public class WorldEditHandler extends WorldEditInterface {
 			pluginInterface.getLogger().warning(() -> "An error occurred while saving schematic of " + regionInterface.getName() + ", enable debug to see the complete stacktrace");
 			pluginInterface.debugI(() -> ExceptionUtils.getStackTrace(ex));
 		}
-		try (OutputStream os = new FileOutputStream(targetFile);
-			 ClipboardWriter writer = format.getWriter(os)) {
-			writer.write(clipboard);
+		SchematicStore store = schematicStore;
+		try {
+			if (store != null) {
+				store.store(file, clipboard, format);
+				return true;
+			}
+			try (OutputStream os = new FileOutputStream(targetFile);
+				 ClipboardWriter writer = format.getWriter(os)) {
+				writer.write(clipboard);
+			}
 			return true;
 		} catch (IOException ex) {
 			pluginInterface.getLogger().warning(() -> "An error occurred while saving schematic of " + regionInterface.getName() + ", enable debug to see the complete stacktrace");
@@ -165,6 +243,8 @@ public class WorldEditHandler extends WorldEditInterface {
 		} catch (Exception ex) {
 			pluginInterface.getLogger().warning(() -> "crashed during save of " + regionInterface.getName());
 			pluginInterface.debugI(() -> ExceptionUtils.getStackTrace(ex));
+		} finally {
+			clipboardCache.invalidate(file);
 		}
 		return false;
 	}
@@ -196,26 +276,15 @@ public class WorldEditHandler extends WorldEditInterface {
 			return true;
 		}
 	}
-}
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
 
+	/**
+	 * Schematic to restore and where to paste it.
+	 * @param file The schematic file
+	 * @param format The format of the schematic file
+	 * @param world The world to paste in
+	 * @param min The position to paste the origin of the schematic at
+	 * @param dimensions The expected dimensions of the schematic
+	 */
+	private record RestoreSource(File file, ClipboardFormat format, World world, BlockVector3 min, BlockVector3 dimensions) {
+	}
+}
@@ -0,0 +1,216 @@
+package me.wiefferink.areashop.interfaces;
+
+import com.sk89q.worldedit.extent.clipboard.Clipboard;
+import com.sk89q.worldedit.extent.clipboard.io.ClipboardFormat;
+import com.sk89q.worldedit.extent.clipboard.io.ClipboardFormats;
+import com.sk89q.worldedit.extent.clipboard.io.ClipboardReader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the schematics used for restoring, so restoring the same schematic again does not touch the disk.
+ * Remembers which file and format a schematic name resolves to, and keeps the most recently used clipboards in memory
+ * up to 'schematics.cacheSize' megabytes (at most a tenth of the maximum heap size).
+ * Clipboards are cached by file, a clipboard is read again when its file changed.
+ * Cached clipboards are shared, they should only be read from. Safe to use from multiple threads.
+ */
+public class ClipboardCache {
+
+	// Estimated memory use per block and per entity of a clipboard in bytes
+	private static final long BYTES_PER_BLOCK = 8;
+	private static final long BYTES_PER_ENTITY = 512;
+
+	private final AreaShopInterface pluginInterface;
+	// Resolved file by the path of the schematic without extension
+	private final Map<String, File> resolved = new ConcurrentHashMap<>();
+	// Format by file, with the modification time the format has been determined for
+	private final Map<String, CachedFormat> formats = new ConcurrentHashMap<>();
+	// Clipboards by file path, least recently used first
+	private final LinkedHashMap<String, CachedClipboard> clipboards = new LinkedHashMap<>(16, 0.75f, true);
+	private long usedBytes = 0;
+	private long hits = 0;
+	private long misses = 0;
+
+	public ClipboardCache(AreaShopInterface pluginInterface) {
+		this.pluginInterface = pluginInterface;
+	}
+
+	/**
+	 * Get the file a schematic resolved to before.
+	 * @param rawFile The schematic file without extension
+	 * @return The file, or null if it is not known or does not exist anymore
+	 */
+	public File getResolvedFile(File rawFile) {
+		String key = rawFile.getAbsolutePath();
+		File file = resolved.get(key);
+		if (file != null && !file.isFile()) {
+			resolved.remove(key, file);
+			return null;
+		}
+		return file;
+	}
+
+	/**
+	 * Remember the file a schematic resolved to.
+	 * @param rawFile The schematic file without extension
+	 * @param file The file to restore from
+	 */
+	public void putResolvedFile(File rawFile, File file) {
+		resolved.put(rawFile.getAbsolutePath(), file);
+	}
+
+	/**
+	 * Forget all files schematics resolved to, used when the schematic store changed.
+	 */
+	public void clearResolvedFiles() {
+		resolved.clear();
+	}
+
+	/**
+	 * Get the format of a schematic file.
+	 * @param file The schematic file
+	 * @return The format of the file, or null if it is not a known format
+	 */
+	public ClipboardFormat getFormat(File file) {
+		String key = file.getAbsolutePath();
+		long modified = file.lastModified();
+		CachedFormat cached = formats.get(key);
+		if (cached != null && cached.modified() == modified) {
+			return cached.format();
+		}
+		ClipboardFormat format = ClipboardFormats.findByFile(file);
+		if (format != null) {
+			formats.put(key, new CachedFormat(format, modified));
+		}
+		return format;
+	}
+
+	/**
+	 * Get the clipboard of a schematic file, reading it when it is not cached or the file changed.
+	 * @param file The schematic file
+	 * @param format The format of the file
+	 * @return The clipboard, should not be changed because it might be shared with other restores
+	 * @throws IOException When reading the file failed
+	 */
+	public Clipboard getClipboard(File file, ClipboardFormat format) throws IOException {
+		String key = file.getAbsolutePath();
+		long modified = file.lastModified();
+		long length = file.length();
+		synchronized (this) {
+			CachedClipboard cached = clipboards.get(key);
+			if (cached != null && cached.modified() == modified && cached.length() == length) {
+				hits++;
+				return cached.clipboard();
+			}
+			misses++;
+		}
+		Clipboard clipboard;
+		try (InputStream is = new FileInputStream(file);
+			 ClipboardReader reader = format.getReader(is)) {
+			clipboard = reader.read();
+		}
+		long size = clipboard.getRegion().getVolume() * BYTES_PER_BLOCK + clipboard.getEntities().size() * BYTES_PER_ENTITY;
+		long maxSize = getMaxSize();
+		if (size > maxSize) {
+			return clipboard;
+		}
+		// Closed outside of the lock, closing waits for restores that are using the clipboard
+		List<Clipboard> evicted = new ArrayList<>();
+		synchronized (this) {
+			CachedClipboard previous = clipboards.put(key, new CachedClipboard(clipboard, modified, length, size));
+			usedBytes += size;
+			if (previous != null) {
+				usedBytes -= previous.size();
+				evicted.add(previous.clipboard());
+			}
+			Iterator<CachedClipboard> iterator = clipboards.values().iterator();
+			while (usedBytes > maxSize && iterator.hasNext()) {
+				CachedClipboard eldest = iterator.next();
+				iterator.remove();
+				usedBytes -= eldest.size();
+				evicted.add(eldest.clipboard());
+			}
+			pluginInterface.debugI("Cached schematic " + file.getName() + ", using " + (usedBytes >> 20) + "MB for " + clipboards.size() + " schematics, " + hits + " hits and " + misses + " misses");
+		}
+		evicted.forEach(this::close);
+		return clipboard;
+	}
+
+	/**
+	 * Release a clipboard after using it, closes it when it is not cached.
+	 * @param clipboard The clipboard that is not used anymore
+	 */
+	public void release(Clipboard clipboard) {
+		synchronized (this) {
+			for (CachedClipboard cached : clipboards.values()) {
+				if (cached.clipboard() == clipboard) {
+					return;
+				}
+			}
+		}
+		close(clipboard);
+	}
+
+	/**
+	 * Forget a schematic, used when it has been saved.
+	 * @param rawFile The schematic file without extension
+	 */
+	public void invalidate(File rawFile) {
+		File file = resolved.remove(rawFile.getAbsolutePath());
+		if (file == null) {
+			return;
+		}
+		formats.remove(file.getAbsolutePath());
+		CachedClipboard cached;
+		synchronized (this) {
+			cached = clipboards.remove(file.getAbsolutePath());
+			if (cached != null) {
+				usedBytes -= cached.size();
+			}
+		}
+		if (cached != null) {
+			close(cached.clipboard());
+		}
+	}
+
+	/**
+	 * Get the maximum memory to use for cached clipboards.
+	 * @return The maximum size in bytes
+	 */
+	private long getMaxSize() {
+		long configured = Math.max(0, pluginInterface.getConfig().getLong("schematics.cacheSize", 64)) << 20;
+		return Math.min(configured, Runtime.getRuntime().maxMemory() / 10);
+	}
+
+	/**
+	 * Close a clipboard if it holds resources, like the disk backed clipboards of FastAsyncWorldEdit.
+	 * Restores hold the lock of a shared clipboard while pasting it, so this waits until they are done.
+	 * @param clipboard The clipboard to close
+	 */
+	private void close(Clipboard clipboard) {
+		if (clipboard instanceof AutoCloseable closeable) {
+			synchronized (clipboard) {
+				try {
+					closeable.close();
+				} catch (Exception e) {
+					pluginInterface.debugI("Could not close clipboard: " + e.getMessage());
+				}
+			}
+		}
+	}
+
+	private record CachedFormat(ClipboardFormat format, long modified) {
+	}
+
+	private record CachedClipboard(Clipboard clipboard, long modified, long length, long size) {
+	}
+}
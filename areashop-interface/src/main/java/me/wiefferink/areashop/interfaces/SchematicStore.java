@@ -0,0 +1,370 @@
+package me.wiefferink.areashop.interfaces;
+
+import com.sk89q.jnbt.Tag;
+import com.sk89q.worldedit.entity.BaseEntity;
+import com.sk89q.worldedit.entity.Entity;
+import com.sk89q.worldedit.extent.clipboard.Clipboard;
+import com.sk89q.worldedit.extent.clipboard.io.ClipboardFormat;
+import com.sk89q.worldedit.extent.clipboard.io.ClipboardFormats;
+import com.sk89q.worldedit.extent.clipboard.io.ClipboardWriter;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.math.Vector3;
+import com.sk89q.worldedit.world.block.BaseBlock;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Stores schematics by the hash of their content, so regions with the same blocks share a single file.
+ * The schematics are kept in the 'store' folder of the schematic folder, 'index.txt' maps schematic names
+ * (the path relative to the schematic folder, without extension) to the stored files.
+ * A schematic file saved the old way (name + extension) takes precedence over the store, saving a schematic into the
+ * store removes such a file. Stored files that are not used by any name anymore are deleted.
+ * Safe to use from multiple threads.
+ */
+public class SchematicStore {
+
+	private static final String INDEX_FILE = "index.txt";
+	// Copy of an index that could not be read, never deleted by the store
+	private static final String UNREADABLE_INDEX_FILE = "index.txt.unreadable";
+	// NBT keys that depend on the location of a block or entity or are not copied, ignored for the hash
+	private static final Set<String> IGNORED_BLOCK_KEYS = Set.of("x", "y", "z");
+	private static final Set<String> IGNORED_ENTITY_KEYS = Set.of("UUID", "UUIDMost", "UUIDLeast", "Pos", "TileX", "TileY", "TileZ", "WorldUUIDMost", "WorldUUIDLeast");
+
+	private final File schematicFolder;
+	private final File storeFolder;
+	private final File indexFile;
+	private final Logger logger;
+	// Stored file name by schematic name
+	private final Map<String, String> index = new HashMap<>();
+	// Number of names using a stored file
+	private final Map<String, Integer> references = new HashMap<>();
+	// False when the index could not be read or is missing while there are stored files, unused files are unknown then
+	private boolean indexComplete = true;
+
+	/**
+	 * Constructor, reads the index and deletes stored files that are not used (only if the index could be read).
+	 * @param schematicFolder The folder with the schematics
+	 * @param logger Logger to report problems to
+	 */
+	public SchematicStore(File schematicFolder, Logger logger) {
+		this.schematicFolder = schematicFolder;
+		this.storeFolder = new File(schematicFolder, "store");
+		this.indexFile = new File(storeFolder, INDEX_FILE);
+		this.logger = logger;
+		if (!storeFolder.isDirectory() && !storeFolder.mkdirs()) {
+			logger.warning(() -> "Could not create the schematic store folder: " + storeFolder.getAbsolutePath());
+		}
+		readIndex();
+		if (indexComplete) {
+			int removed = collectGarbage();
+			if (removed > 0) {
+				logger.info(() -> "Removed " + removed + " unused schematics from the schematic store");
+			}
+		}
+	}
+
+	/**
+	 * Get the stored file of a schematic.
+	 * @param rawFile The schematic file without extension
+	 * @return The stored file, or null if the schematic is not in the store
+	 */
+	public synchronized File resolve(File rawFile) {
+		String stored = index.get(getName(rawFile));
+		if (stored == null) {
+			return null;
+		}
+		File file = new File(storeFolder, stored);
+		return file.isFile() ? file : null;
+	}
+
+	/**
+	 * Save a schematic into the store.
+	 * The content is hashed first, when a schematic with the same content is stored already it is reused.
+	 * @param rawFile The schematic file without extension
+	 * @param clipboard The blocks to save
+	 * @param format The format to save in
+	 * @throws IOException When writing the schematic or the index failed
+	 */
+	public void store(File rawFile, Clipboard clipboard, ClipboardFormat format) throws IOException {
+		String stored = hash(clipboard, format) + "." + format.getPrimaryFileExtension();
+		File storedFile = new File(storeFolder, stored);
+		// Serialize outside of the lock, a file with the same hash always has the same content
+		byte[] content = storedFile.isFile() ? null : serialize(clipboard, format);
+		String name = getName(rawFile);
+		synchronized (this) {
+			// Might have been deleted in the meantime when its last user got removed
+			if (!storedFile.isFile()) {
+				writeAtomically(storedFile, content != null ? content : serialize(clipboard, format));
+			}
+			String previous = index.put(name, stored);
+			if (!stored.equals(previous)) {
+				references.merge(stored, 1, Integer::sum);
+				release(previous);
+				writeIndex();
+			}
+		}
+		// The schematic saved the old way would take precedence
+		for (ClipboardFormat formatOption : ClipboardFormats.getAll()) {
+			for (String extension : formatOption.getFileExtensions()) {
+				File legacy = new File(rawFile.getAbsolutePath() + "." + extension);
+				if (legacy.isFile() && !legacy.delete()) {
+					logger.warning(() -> "Could not delete schematic " + legacy.getAbsolutePath() + ", it will be used instead of the stored schematic");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Remove a schematic from the store, the stored file is deleted when no other schematic uses it.
+	 * @param rawFile The schematic file without extension
+	 * @throws IOException When writing the index failed
+	 */
+	public synchronized void remove(File rawFile) throws IOException {
+		String previous = index.remove(getName(rawFile));
+		if (previous != null) {
+			release(previous);
+			writeIndex();
+		}
+	}
+
+	/**
+	 * Delete stored files that are not used by any schematic and files left behind by interrupted writes.
+	 * Does nothing when the index could not be read, the stored files might still be used then.
+	 * @return The number of deleted files
+	 */
+	public synchronized int collectGarbage() {
+		if (!indexComplete) {
+			logger.warning(() -> "Not removing unused schematics from the schematic store, the index " + indexFile.getAbsolutePath() + " could not be read");
+			return 0;
+		}
+		File[] files = storeFolder.listFiles();
+		if (files == null) {
+			return 0;
+		}
+		int removed = 0;
+		for (File file : files) {
+			if (file.getName().equals(INDEX_FILE) || file.getName().equals(UNREADABLE_INDEX_FILE) || references.containsKey(file.getName())) {
+				continue;
+			}
+			if (file.delete()) {
+				removed++;
+			} else {
+				logger.warning(() -> "Could not delete unused stored schematic: " + file.getAbsolutePath());
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * Get the number of schematic names in the store.
+	 * @return The number of schematics
+	 */
+	public synchronized int getSchematicCount() {
+		return index.size();
+	}
+
+	/**
+	 * Get the number of different schematics in the store.
+	 * @return The number of stored files
+	 */
+	public synchronized int getStoredCount() {
+		return references.size();
+	}
+
+	/**
+	 * Hash the content of a clipboard: the blocks, their data and the entities relative to the clipboard.
+	 * @param clipboard The clipboard to hash
+	 * @param format The format the clipboard will be saved in
+	 * @return The hash as hexadecimal string
+	 */
+	public static String hash(Clipboard clipboard, ClipboardFormat format) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+		update(digest, format.getName());
+		BlockVector3 dimensions = clipboard.getDimensions();
+		update(digest, dimensions.getX() + "," + dimensions.getY() + "," + dimensions.getZ());
+		BlockVector3 min = clipboard.getMinimumPoint();
+		BlockVector3 origin = clipboard.getOrigin().subtract(min);
+		update(digest, origin.getX() + "," + origin.getY() + "," + origin.getZ());
+		for (BlockVector3 position : clipboard.getRegion()) {
+			BaseBlock block = clipboard.getFullBlock(position);
+			update(digest, block.getAsString());
+			if (block.hasNbtData()) {
+				update(digest, withoutKeys(block.getNbtData().getValue(), IGNORED_BLOCK_KEYS));
+			}
+		}
+		List<? extends Entity> entities = clipboard.getEntities();
+		for (Entity entity : entities) {
+			BaseEntity state = entity.getState();
+			if (state == null) {
+				continue;
+			}
+			Vector3 position = entity.getLocation().toVector().subtract(min.toVector3());
+			update(digest, state.getType().getId() + "@" + position.getX() + "," + position.getY() + "," + position.getZ());
+			if (state.hasNbtData()) {
+				update(digest, withoutKeys(state.getNbtData().getValue(), IGNORED_ENTITY_KEYS));
+			}
+		}
+		StringBuilder result = new StringBuilder();
+		for (byte b : digest.digest()) {
+			result.append(String.format("%02x", b));
+		}
+		return result.toString();
+	}
+
+	private static void update(MessageDigest digest, String value) {
+		digest.update(value.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+	}
+
+	private static String withoutKeys(Map<String, Tag> values, Collection<String> ignored) {
+		Map<String, Tag> sorted = new TreeMap<>(values);
+		sorted.keySet().removeAll(ignored);
+		return sorted.toString();
+	}
+
+	/**
+	 * Write a clipboard in the given format and compress it.
+	 * @param clipboard The clipboard to write
+	 * @param format The format to write in
+	 * @return The compressed schematic
+	 * @throws IOException When writing failed
+	 */
+	private static byte[] serialize(Clipboard clipboard, ClipboardFormat format) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try (ClipboardWriter writer = format.getWriter(output)) {
+			writer.write(clipboard);
+		}
+		return compress(output.toByteArray());
+	}
+
+	/**
+	 * Compress a schematic as much as possible, schematics written as gzip are recompressed with the best compression.
+	 * @param schematic The schematic as written by the format
+	 * @return The compressed schematic, still readable by the format
+	 * @throws IOException When the schematic could not be decompressed
+	 */
+	private static byte[] compress(byte[] schematic) throws IOException {
+		if (schematic.length < 2 || (schematic[0] & 0xff) != 0x1f || (schematic[1] & 0xff) != 0x8b) {
+			return schematic;
+		}
+		byte[] raw;
+		try (GZIPInputStream input = new GZIPInputStream(new ByteArrayInputStream(schematic))) {
+			raw = input.readAllBytes();
+		}
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		try (OutputStream output = new GZIPOutputStream(result) {
+			{
+				def.setLevel(Deflater.BEST_COMPRESSION);
+			}
+		}) {
+			output.write(raw);
+		}
+		return result.size() < schematic.length ? result.toByteArray() : schematic;
+	}
+
+	/**
+	 * Get the name of a schematic as used in the index.
+	 * @param rawFile The schematic file without extension
+	 * @return The path relative to the schematic folder
+	 */
+	private String getName(File rawFile) {
+		try {
+			return schematicFolder.toPath().toAbsolutePath().normalize()
+					.relativize(rawFile.toPath().toAbsolutePath().normalize())
+					.toString().replace(File.separatorChar, '/');
+		} catch (IllegalArgumentException e) {
+			return rawFile.getAbsolutePath();
+		}
+	}
+
+	/**
+	 * Drop a reference to a stored file, deleting it when it is not used anymore.
+	 * @param stored The stored file name, or null
+	 */
+	private void release(String stored) {
+		if (stored == null) {
+			return;
+		}
+		Integer remaining = references.computeIfPresent(stored, (key, count) -> count > 1 ? count - 1 : null);
+		if (remaining == null) {
+			File file = new File(storeFolder, stored);
+			if (file.exists() && !file.delete()) {
+				logger.warning(() -> "Could not delete unused stored schematic: " + file.getAbsolutePath());
+			}
+		}
+	}
+
+	private void readIndex() {
+		if (!indexFile.isFile()) {
+			File[] files = storeFolder.listFiles((folder, name) -> !name.equals(UNREADABLE_INDEX_FILE));
+			if (files != null && files.length > 0) {
+				indexComplete = false;
+				logger.warning(() -> "The schematic store index " + indexFile.getAbsolutePath() + " is missing, keeping the " + files.length + " stored files");
+			}
+			return;
+		}
+		try {
+			for (String line : Files.readAllLines(indexFile.toPath(), StandardCharsets.UTF_8)) {
+				int separator = line.lastIndexOf('\t');
+				if (separator <= 0) {
+					continue;
+				}
+				String stored = line.substring(separator + 1);
+				index.put(line.substring(0, separator), stored);
+				references.merge(stored, 1, Integer::sum);
+			}
+		} catch (IOException e) {
+			indexComplete = false;
+			logger.warning(() -> "Could not read the schematic store index " + indexFile.getAbsolutePath() + ", keeping all stored files: " + e.getMessage());
+			// Keep a copy, the index is written again when a schematic is stored
+			try {
+				Files.copy(indexFile.toPath(), new File(storeFolder, UNREADABLE_INDEX_FILE).toPath(), StandardCopyOption.REPLACE_EXISTING);
+			} catch (IOException copyException) {
+				logger.warning(() -> "Could not copy the unreadable schematic store index: " + copyException.getMessage());
+			}
+		}
+	}
+
+	private void writeIndex() throws IOException {
+		StringBuilder content = new StringBuilder();
+		for (Map.Entry<String, String> entry : new TreeMap<>(index).entrySet()) {
+			content.append(entry.getKey()).append('\t').append(entry.getValue()).append('\n');
+		}
+		writeAtomically(indexFile, content.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static void writeAtomically(File file, byte[] content) throws IOException {
+		File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+		Files.write(temp.toPath(), content);
+		try {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+}
@@ -1,21 +1,102 @@
 package me.wiefferink.areashop.interfaces;
 
+import com.sk89q.worldedit.extent.clipboard.io.ClipboardFormat;
+import com.sk89q.worldedit.extent.clipboard.io.ClipboardFormats;
 import org.bukkit.entity.Player;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.concurrent.CompletableFuture;
 
 public abstract class WorldEditInterface {
 	protected final AreaShopInterface pluginInterface;
+	// Store for schematics by content, null if schematics are saved as separate files
+	protected volatile SchematicStore schematicStore = null;
+	protected final ClipboardCache clipboardCache;
 
 	public WorldEditInterface(AreaShopInterface pluginInterface) {
 		this.pluginInterface = pluginInterface;
+		this.clipboardCache = new ClipboardCache(pluginInterface);
 	}
 
 	public boolean supportsAsyncOperations() {
 		return false;
 	}
 
+	/**
+	 * Set the store to save schematics in.
+	 * @param schematicStore The store to save schematics in, or null to save schematics as separate files
+	 */
+	public void setSchematicStore(SchematicStore schematicStore) {
+		if (this.schematicStore == schematicStore) {
+			return;
+		}
+		this.schematicStore = schematicStore;
+		// Schematics might resolve to a different file now
+		clipboardCache.clearResolvedFiles();
+	}
+
+	/**
+	 * Get the store schematics are saved in.
+	 * @return The store, or null if schematics are saved as separate files
+	 */
+	public SchematicStore getSchematicStore() {
+		return schematicStore;
+	}
+
+	/**
+	 * Remove a schematic from the schematic store, used when the region it belongs to is deleted.
+	 * Schematics saved as separate files are left alone.
+	 * @param rawFile The schematic file without extension
+	 */
+	public void removeStoredSchematic(File rawFile) {
+		SchematicStore store = schematicStore;
+		if (store == null) {
+			return;
+		}
+		clipboardCache.invalidate(rawFile);
+		try {
+			store.remove(rawFile);
+		} catch (IOException e) {
+			pluginInterface.getLogger().warning(() -> "Could not remove schematic " + rawFile.getAbsolutePath() + " from the schematic store: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Find the file to restore a schematic from.
+	 * A file with the extension of one of the formats goes first, otherwise the file in the schematic store is used.
+	 * The result is cached until the schematic is saved again or the file is removed.
+	 * @param rawFile The schematic file without extension
+	 * @return The file to restore from, or null if there is none
+	 */
+	protected File findSchematicFile(File rawFile) {
+		File result = clipboardCache.getResolvedFile(rawFile);
+		if (result != null) {
+			return result;
+		}
+		for (ClipboardFormat formatOption : ClipboardFormats.getAll()) {
+			for (String extension : formatOption.getFileExtensions()) {
+				File fileOption = new File(rawFile.getAbsolutePath() + "." + extension);
+				if (fileOption.isFile()) {
+					clipboardCache.putResolvedFile(rawFile, fileOption);
+					return fileOption;
+				}
+			}
+		}
+		SchematicStore store = schematicStore;
+		result = store == null ? null : store.resolve(rawFile);
+		if (result != null) {
+			clipboardCache.putResolvedFile(rawFile, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Finish operations that are spread over multiple ticks, called when the plugin is disabled.
+	 */
+	public void shutdown() {
+	}
+
 	/**
 	 * Different way to restore blocks per implementation, newer ones support entities as well.
 	 * Why: the schematic api has changed between WorldEdit 5 and 6, and the schematic format changed between 6 and 7